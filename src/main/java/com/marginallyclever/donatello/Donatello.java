@@ -105,7 +105,7 @@ public class Donatello extends JPanel {
     private final Point popupPoint = new Point();
 
     private final UpdateClock updateClock = new UpdateClock(1000/60);
-    private boolean keepGoing = false;
+    private volatile boolean keepGoing = false;
 
     /**
      * Default constructor
@@ -169,7 +169,7 @@ public class Donatello extends JPanel {
         for( Node n : selectedNodes) {
             paintArea.paintNodeBorder(g, n);
 
-            for( NodeConnection c : model.getConnections() ) {
+            for( NodeConnection c : model.getConnectionsAttachedTo(n) ) {
                 if(c.getOutNode()==n) in.add(c);
                 if(c.getInNode()==n) out.add(c);
             }
@@ -280,6 +280,8 @@ public class Donatello extends JPanel {
         AbstractAction playAction = new AbstractAction("Play") {
             @Override
             public void actionPerformed(ActionEvent e) {
+                // painting reads the values published at the end of each tick instead of the live ones.
+                model.setPublishSnapshots(true);
                 keepGoing=true;
             }
         };
@@ -287,6 +289,7 @@ public class Donatello extends JPanel {
             @Override
             public void actionPerformed(ActionEvent e) {
                 keepGoing=false;
+                model.setPublishSnapshots(false);
             }
         };
 
@@ -1,5 +1,6 @@
 package com.marginallyclever.donatello;
 
+import com.marginallyclever.nodegraphcore.GraphSnapshot;
 import com.marginallyclever.nodegraphcore.PrintWithGraphics;
 import com.marginallyclever.nodegraphcore.Node;
 import com.marginallyclever.nodegraphcore.NodeConnection;
@@ -102,6 +103,11 @@ public class NodeGraphViewPanel extends JPanel {
      */
     private final NodeGraph model;
 
+    /**
+     * The values being painted.  Only used on the event dispatch thread, during {@link #paintComponent(Graphics)}.
+     */
+    private GraphSnapshot snapshot;
+
     private final Point2D camera = new Point2D();
 
     private final Point previousMouse = new Point();
@@ -191,17 +197,34 @@ public class NodeGraphViewPanel extends JPanel {
 
         g2.transform(getTransform());
 
-        paintNodesInBackground(g);
+        snapshot = getSnapshot();
+        try {
+            paintNodesInBackground(g);
 
-        for(Node n : model.getNodes()) paintNode(g2,n);
+            for(Node n : snapshot.getNodes()) paintNode(g2,n);
 
-        g2.setColor(CONNECTION_COLOR);
-        for(NodeConnection c : model.getConnections()) paintConnection(g2,c);
+            g2.setColor(CONNECTION_COLOR);
+            for(NodeConnection c : snapshot.getConnections()) paintConnection(g2,c);
 
-        //paintCursor(g2);
-        //paintOrigin(g2);
+            //paintCursor(g2);
+            //paintOrigin(g2);
 
-        firePaintEvent(g2);
+            firePaintEvent(g2);
+        } finally {
+            snapshot = null;
+        }
+    }
+
+    /**
+     * Returns the latest {@link GraphSnapshot} of the model, so that painting never sees a tick half done.  If the
+     * model does not publish snapshots, or the structure has changed since the last one, a new one is taken here.
+     * {@link NodeGraph#takeSnapshot()} waits for the running tick to end, so it is never torn.
+     * @return a snapshot of the model.
+     */
+    private GraphSnapshot getSnapshot() {
+        GraphSnapshot s = model.getSnapshot();
+        if(s==null || s.getStructureVersion()!=model.getStructureVersion()) s = model.takeSnapshot();
+        return s;
     }
 
     private void paintCursor(Graphics2D g2) {
@@ -249,9 +272,9 @@ public class NodeGraphViewPanel extends JPanel {
      * @param g the {@link Graphics} context.
      */
     private void paintNodesInBackground(Graphics g) {
-        for(Node n : model.getNodes()) {
+        for(Node n : snapshot.getNodes()) {
             if(n instanceof PrintWithGraphics) {
-                ((PrintWithGraphics) n).print(g);
+                ((PrintWithGraphics) n).print(g,snapshot);
             }
         }
     }
@@ -261,7 +284,7 @@ public class NodeGraphViewPanel extends JPanel {
      */
     public void updatePaintAreaBounds() {
         Rectangle r = this.getBounds();
-        for(Node n : model.getNodes()) {
+        for(Node n : getSnapshot().getNodes()) {
             n.updateBounds();
             Rectangle other = new Rectangle(n.getRectangle());
             //other.grow(100,100);
@@ -341,11 +364,12 @@ public class NodeGraphViewPanel extends JPanel {
         Rectangle insideBox = getNodeInternalBounds(box);
 
         // label
-        g.setColor(v.getIsDirty()?NODE_COLOR_FONT_DIRTY : NODE_COLOR_FONT_CLEAN);
+        boolean dirty = (snapshot!=null) ? snapshot.getIsDirty(v) : v.getIsDirty();
+        g.setColor(dirty?NODE_COLOR_FONT_DIRTY : NODE_COLOR_FONT_CLEAN);
         paintText(g,v.getName(),insideBox,ALIGN_LEFT,ALIGN_CENTER);
 
         // value
-        Object vObj = v.getValue();
+        Object vObj = (snapshot!=null) ? snapshot.getValue(v) : v.getValue();
         if(vObj != null) {
             String val;
             int MAX_CHARS = 10;
@@ -1,24 +1,69 @@
 package com.marginallyclever.donatello;
 
-import java.util.ArrayList;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 import java.util.List;
-import java.util.Timer;
-import java.util.TimerTask;
+import java.util.concurrent.*;
 
 /**
- * UpdateClock notifies all listeners at the scheduled interval.
+ * UpdateClock notifies all listeners at the scheduled interval.<br>
+ * <br>
+ * Ticks are scheduled against a fixed timeline, so the clock does not drift.  When the listeners take longer than
+ * one period the tick overruns.  The ticks missed in the meantime are skipped rather than queued, and the next tick
+ * runs at the next point on the timeline, so a slow tick never leaves the clock behind for good.
  * @author Dan Royer
  * @since 2022-03-19
  */
-public class UpdateClock extends TimerTask {
-    private final Timer myTimer = new Timer("myTimer");
-    private final List<UpdateClockListener> listeners = new ArrayList<>();
-    private final int frequency;
+public class UpdateClock {
+    private static final Logger logger = LoggerFactory.getLogger(UpdateClock.class);
+
+    /**
+     * Weight of the newest interval in the moving average behind {@link #getAchievedRate()}.
+     */
+    private static final double RATE_SMOOTHING = 0.1;
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r->{
+        Thread t = new Thread(r,"UpdateClock");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final List<UpdateClockListener> listeners = new CopyOnWriteArrayList<>();
+
+    private volatile long periodNanos;
+
+    /**
+     * When the next tick is due, in {@link System#nanoTime()}.  Only touched by the scheduler thread.
+     */
+    private long nextTickNanos;
+
+    private long lastTickNanos;
+
+    private double averageIntervalNanos;
+
+    private ScheduledFuture<?> pending;
 
-    public UpdateClock(int hz) {
+    private volatile long tickCount;
+
+    private volatile long overrunCount;
+
+    private volatile long skippedCount;
+
+    private volatile double achievedRate;
+
+    /**
+     * @param periodMillis the time between ticks, in milliseconds.  Must be at least 1.
+     * @throws IllegalArgumentException if periodMillis is less than 1.
+     */
+    public UpdateClock(int periodMillis) throws IllegalArgumentException {
         super();
-        this.frequency = hz;
-        myTimer.schedule(this,0,frequency);
+        if(periodMillis<1) throw new IllegalArgumentException("periodMillis must be at least 1.");
+        this.periodNanos = TimeUnit.MILLISECONDS.toNanos(periodMillis);
+        scheduler.execute(()->{
+            nextTickNanos = System.nanoTime();
+            scheduleNext();
+        });
     }
 
     public void addListener(UpdateClockListener ear) {
@@ -29,14 +74,108 @@ public class UpdateClock extends TimerTask {
         listeners.remove(ear);
     }
 
-    @Override
-    public void run() {
+    /**
+     * Changes the time between ticks.  The next tick is due one new period after the last one.
+     * @param periodMillis the time between ticks, in milliseconds.  Must be at least 1.
+     * @throws IllegalArgumentException if periodMillis is less than 1.
+     */
+    public void setPeriodMillis(long periodMillis) throws IllegalArgumentException {
+        if(periodMillis<1) throw new IllegalArgumentException("periodMillis must be at least 1.");
+        periodNanos = TimeUnit.MILLISECONDS.toNanos(periodMillis);
+        try {
+            scheduler.execute(()->{
+                if(pending==null || !pending.cancel(false)) return;
+                nextTickNanos = (tickCount==0 ? System.nanoTime() : lastTickNanos+periodNanos);
+                scheduleNext();
+            });
+        } catch(RejectedExecutionException ignored) {
+            // stopped.
+        }
+    }
+
+    /**
+     * Returns the time between ticks, in milliseconds.
+     * @return the time between ticks, in milliseconds.
+     */
+    public long getPeriodMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(periodNanos);
+    }
+
+    /**
+     * Returns the number of ticks that have run.
+     * @return the number of ticks that have run.
+     */
+    public long getTickCount() {
+        return tickCount;
+    }
+
+    /**
+     * Returns the number of ticks that finished after the next one was due.
+     * @return the number of ticks that overran.
+     */
+    public long getOverrunCount() {
+        return overrunCount;
+    }
+
+    /**
+     * Returns the number of ticks that were skipped because an earlier tick overran.
+     * @return the number of ticks skipped.
+     */
+    public long getSkippedCount() {
+        return skippedCount;
+    }
+
+    /**
+     * Returns the recent number of ticks per second.
+     * @return the recent number of ticks per second, or 0 before the second tick.
+     */
+    public double getAchievedRate() {
+        return achievedRate;
+    }
+
+    /**
+     * Runs on the scheduler thread.
+     */
+    private void tick() {
+        long start = System.nanoTime();
+        if(tickCount>0) {
+            long interval = start-lastTickNanos;
+            averageIntervalNanos = (tickCount==1) ? interval : averageIntervalNanos+RATE_SMOOTHING*(interval-averageIntervalNanos);
+            achievedRate = averageIntervalNanos>0 ? 1e9/averageIntervalNanos : 0;
+        }
+        lastTickNanos = start;
+        tickCount++;
+
         for( UpdateClockListener ear : listeners ) {
-            ear.updateClockEvent();
+            try {
+                ear.updateClockEvent();
+            } catch(Exception e) {
+                logger.warn("listener failed: {}",e.toString());
+            }
+        }
+
+        long period = periodNanos;
+        nextTickNanos += period;
+        long now = System.nanoTime();
+        if(now>nextTickNanos) {
+            // overran.  skip every tick that is already late and run at the next point on the timeline.
+            overrunCount++;
+            long missed = (now-nextTickNanos)/period+1;
+            skippedCount += missed;
+            nextTickNanos += missed*period;
+        }
+        scheduleNext();
+    }
+
+    private void scheduleNext() {
+        try {
+            pending = scheduler.schedule(this::tick,Math.max(0,nextTickNanos-System.nanoTime()),TimeUnit.NANOSECONDS);
+        } catch(RejectedExecutionException ignored) {
+            // stopped.
         }
     }
 
     public void stop() {
-        myTimer.cancel();
+        scheduler.shutdownNow();
     }
 }
@@ -40,10 +40,13 @@ public class FoldGraphAction extends AbstractAction implements EditorAction {
     public void actionPerformed(ActionEvent e) {
         NodeGraph preserveCopyBehaviour = editor.getCopiedGraph().deepCopy();
 
-        cutGraphAction.actionPerformed(e);
-        NodeGraph justCut = editor.getCopiedGraph().deepCopy();
-        Node n = editor.getGraph().add(new Subgraph(justCut));
-        n.setPosition(editor.getPopupPoint());
+        // cut and add as one edit, so that a running graph never sees the selection missing.
+        editor.getGraph().edit(()->{
+            cutGraphAction.actionPerformed(e);
+            NodeGraph justCut = editor.getCopiedGraph().deepCopy();
+            Node n = editor.getGraph().add(new Subgraph(justCut));
+            n.setPosition(editor.getPopupPoint());
+        });
 
         editor.setCopiedGraph(preserveCopyBehaviour);
     }
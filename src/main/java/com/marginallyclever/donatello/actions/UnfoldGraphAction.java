@@ -46,18 +46,21 @@ public class UnfoldGraphAction extends AbstractAction implements EditorAction {
             }
         }
 
-        for(Node n : toBeDeleted) {
-            NodeGraph inner = ((Subgraph)n).getGraph();
-            // add the subgraph to this graph.
-            editor.getGraph().add(inner);
-            // make sure it is selected
-            newSelection.addAll(inner.getNodes());
-            // position it relative to the Subgraph it is replacing
-            positionNodesRelativeTo(inner,n.getRectangle().x,n.getRectangle().y);
-            // make sure to delete the Subgraph and clean up.
-            editor.getGraph().remove(n);
-            inner.clear();
-        }
+        NodeGraph graph = editor.getGraph();
+        graph.edit(()->{
+            for(Node n : toBeDeleted) {
+                NodeGraph inner = ((Subgraph)n).getGraph();
+                // add the subgraph to this graph.
+                graph.add(inner);
+                // make sure it is selected
+                newSelection.addAll(inner.getNodes());
+                // position it relative to the Subgraph it is replacing
+                positionNodesRelativeTo(inner,n.getRectangle().x,n.getRectangle().y);
+                // make sure to delete the Subgraph and clean up.
+                graph.remove(n);
+                inner.clear();
+            }
+        });
 
         // the list of selected nodes is all old nodes - subgraphs + newly expanded nodes.
         wasSelected.removeAll(toBeDeleted);
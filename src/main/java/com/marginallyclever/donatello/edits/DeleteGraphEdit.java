@@ -34,9 +34,8 @@ public class DeleteGraphEdit extends SignificantUndoableEdit {
 
     protected void doIt() {
         NodeGraph g = editor.getGraph();
-        for(Node n : nodes) g.remove(n);
-        for(NodeConnection c : exteriorConnections) g.remove(c);
-        for(NodeConnection c : interiorConnections) g.remove(c);
+        // removing the nodes also removes every connection attached to them.
+        g.removeNodes(nodes);
         editor.setSelectedNodes(null);
         editor.repaint();
     }
@@ -44,9 +43,11 @@ public class DeleteGraphEdit extends SignificantUndoableEdit {
     @Override
     public void undo() throws CannotUndoException {
         NodeGraph g = editor.getGraph();
-        for(Node n : nodes) g.add(n);
-        for(NodeConnection c : exteriorConnections) g.add(c);
-        for(NodeConnection c : interiorConnections) g.add(c);
+        g.edit(()->{
+            for(Node n : nodes) g.add(n);
+            for(NodeConnection c : exteriorConnections) g.add(c);
+            for(NodeConnection c : interiorConnections) g.add(c);
+        });
         editor.setSelectedNodes(nodes);
         editor.repaint();
         super.undo();
@@ -29,15 +29,16 @@ public class IsolateGraphEdit extends SignificantUndoableEdit {
     }
 
     private void doIt() {
-        NodeGraph graph = editor.getGraph();
-        graph.getConnections().removeAll(connections);
+        editor.getGraph().removeConnections(connections);
         editor.repaint();
     }
 
     @Override
     public void undo() throws CannotUndoException {
         NodeGraph g = editor.getGraph();
-        for(NodeConnection c : connections) g.add(c);
+        g.edit(()->{
+            for(NodeConnection c : connections) g.add(c);
+        });
         editor.repaint();
         super.undo();
     }
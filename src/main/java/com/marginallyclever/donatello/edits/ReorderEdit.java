@@ -5,7 +5,6 @@ import com.marginallyclever.donatello.Donatello;
 
 import javax.swing.undo.CannotRedoException;
 import javax.swing.undo.CannotUndoException;
-import java.util.List;
 
 public class ReorderEdit extends SignificantUndoableEdit {
     private final String name;
@@ -28,17 +27,13 @@ public class ReorderEdit extends SignificantUndoableEdit {
     }
 
     public void doIt() {
-        List<Node> list = editor.getGraph().getNodes();
-        list.remove(node);
-        list.add(to,node);
+        editor.getGraph().moveNode(node,to);
         editor.repaint();
     }
 
     @Override
     public void undo() throws CannotUndoException {
-        List<Node> list = editor.getGraph().getNodes();
-        list.remove(node);
-        list.add(from,node);
+        editor.getGraph().moveNode(node,from);
         editor.repaint();
         super.undo();
     }
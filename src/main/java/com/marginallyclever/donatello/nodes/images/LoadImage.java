@@ -1,19 +1,25 @@
 package com.marginallyclever.donatello.nodes.images;
 
+import com.marginallyclever.nodegraphcore.AsyncNode;
 import com.marginallyclever.nodegraphcore.Node;
 import com.marginallyclever.nodegraphcore.NodeVariable;
 
 import javax.imageio.ImageIO;
 import java.awt.image.BufferedImage;
 import java.io.File;
+import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 
 /**
- * This {@link Node} can load a Swing {@link BufferedImage}.
+ * This {@link Node} can load a Swing {@link BufferedImage}.  Inside a graph the file is read on the I/O pool so
+ * the rest of the graph does not wait for the disk.
  * @author Dan Royer
  * @since 2022-02-23
  */
-public class LoadImage extends Node {
+public class LoadImage extends Node implements AsyncNode {
     private final NodeVariable<String> filename = NodeVariable.newInstance("filename",String.class," ",true,false);
     private final NodeVariable<BufferedImage> contents = NodeVariable.newInstance("contents", BufferedImage.class, new BufferedImage(1,1,BufferedImage.TYPE_INT_ARGB),false,true);
     private final NodeVariable<Number> width = NodeVariable.newInstance("width",Number.class,0,false,true);
@@ -45,21 +51,50 @@ public class LoadImage extends Node {
     }
 
     @Override
-    public void update() {
-        try {
-            String filenameValue = filename.getValue();
-            if(filenameValue!=null && !filenameValue.isEmpty()) {
-                File f = new File(filenameValue);
-                if (f.exists()) {
-                    BufferedImage image = ImageIO.read(f);
-                    contents.setValue(image);
-                    width.setValue(image.getWidth());
-                    height.setValue(image.getHeight());
-                    cleanAllInputs();
-                }
+    public void update() throws IOException {
+        String filenameValue = filename.getValue();
+        if(!isBlank(filenameValue)) setImage(read(filenameValue));
+        cleanAllInputs();
+    }
+
+    /**
+     * Reads the file on the I/O pool.  If it cannot be read the future fails, and the graph tries again after a
+     * backoff.  See {@link com.marginallyclever.nodegraphcore.NodeFailure}.
+     */
+    @Override
+    public CompletableFuture<Runnable> updateAsync(Executor ioPool) {
+        String filenameValue = filename.getValue();
+        cleanAllInputs();
+        if(isBlank(filenameValue)) return CompletableFuture.completedFuture(null);
+        return CompletableFuture.supplyAsync(()->{
+            try {
+                BufferedImage image = read(filenameValue);
+                return ()->setImage(image);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
             }
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
+        },ioPool);
+    }
+
+    private static boolean isBlank(String filenameValue) {
+        return filenameValue==null || filenameValue.isBlank();
+    }
+
+    /**
+     * Returns the image in the given file.
+     * @throws IOException if there is no such file or it is not an image.
+     */
+    private static BufferedImage read(String filenameValue) throws IOException {
+        File f = new File(filenameValue);
+        if(!f.exists()) throw new FileNotFoundException(filenameValue);
+        BufferedImage image = ImageIO.read(f);
+        if(image==null) throw new IOException(filenameValue+" is not an image");
+        return image;
+    }
+
+    private void setImage(BufferedImage image) {
+        contents.setValue(image);
+        width.setValue(image.getWidth());
+        height.setValue(image.getHeight());
     }
 }
@@ -1,5 +1,6 @@
 package com.marginallyclever.donatello.nodes.images;
 
+import com.marginallyclever.nodegraphcore.GraphSnapshot;
 import com.marginallyclever.nodegraphcore.PrintWithGraphics;
 import com.marginallyclever.nodegraphcore.Node;
 import com.marginallyclever.nodegraphcore.NodeVariable;
@@ -54,4 +55,12 @@ public class PrintImage extends Node implements PrintWithGraphics {
     public void print(Graphics g) {
         g.drawImage((BufferedImage)image.getValue(),px.getValue().intValue(),py.getValue().intValue(),null);
     }
+
+    @Override
+    public void print(Graphics g, GraphSnapshot snapshot) {
+        BufferedImage img = (BufferedImage)snapshot.getValue(image);
+        Number x = (Number)snapshot.getValue(px);
+        Number y = (Number)snapshot.getValue(py);
+        g.drawImage(img,x.intValue(),y.intValue(),null);
+    }
 }
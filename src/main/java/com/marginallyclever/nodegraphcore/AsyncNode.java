@@ -0,0 +1,22 @@
+package com.marginallyclever.nodegraphcore;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * {@link Node}s with this interface do slow, blocking work - usually reading files or the network - away from the
+ * thread that runs {@link NodeGraph#update()}.  The rest of the graph keeps ticking while the work is in flight, and
+ * {@link Node}s downstream run on the first tick after the result arrives.<br>
+ * <br>
+ * {@link Node#update()} must still do the same work synchronously, for callers that need an answer right away.
+ */
+public interface AsyncNode {
+    /**
+     * Called on the update thread when the {@link Node} is dirty.  Read the inputs and clean them here, then start
+     * the slow work on the given pool.  Do not touch any {@link NodeVariable} from the pool.
+     * @param ioPool where blocking work should run.
+     * @return a future that completes with the code that writes the results into the outputs.  That code is run on
+     * the update thread at the start of a later {@link NodeGraph#update()}.
+     */
+    CompletableFuture<Runnable> updateAsync(Executor ioPool);
+}
@@ -0,0 +1,204 @@
+package com.marginallyclever.nodegraphcore;
+
+import java.lang.reflect.Array;
+import java.util.*;
+
+/**
+ * {@link BatchEvaluator} runs a {@link NodeGraph} over many rows of input at once.  Each {@link SupergraphInput}
+ * can be given a column of values, and every output of every {@link Node} becomes a column of results.<br>
+ * <br>
+ * {@link Node}s that implement {@link BatchFunction} process a whole column in one call.  Any other {@link Node} is
+ * updated once per row and its {@link NodeVariable}s are restored afterwards.  {@link Node}s without outputs, such
+ * as printers, are skipped.  Inputs that are not connected use their current value on every row.
+ */
+public class BatchEvaluator {
+    private final ExecutionPlan plan;
+
+    /**
+     * Prepares to evaluate the given graph.  Later changes to the structure of the graph are not seen by this
+     * evaluator.
+     * @param graph the graph to evaluate.
+     * @throws IllegalArgumentException if the graph contains a cycle or a delay connection.
+     */
+    public BatchEvaluator(NodeGraph graph) throws IllegalArgumentException {
+        super();
+        this.plan = graph.getExecutionPlan();
+        for(NodeConnection c : plan.getRemainingConnections()) {
+            if(plan.indexOf(c.getInNode())>=0 && plan.indexOf(c.getOutNode())>=0) {
+                throw new IllegalArgumentException("batch evaluation needs a graph without cycles or delay connections.");
+            }
+        }
+    }
+
+    /**
+     * Evaluates every row.  {@link NodeGraph#evaluateBatch(Map)} also keeps the graph from being updated meanwhile,
+     * since {@link Node}s that are updated row by row are changed while this runs.
+     * @param inputs a column of values for some {@link SupergraphInput}s of the graph.  Each column must be the
+     *               right type for the output of its {@link Node} and all columns must be the same length.
+     * @return a column of results for every output {@link NodeVariable} of every {@link Node} evaluated.
+     * @throws IllegalArgumentException if the inputs are empty, of different lengths, or the wrong type.
+     * @throws IllegalStateException if a {@link Node} fails to update.
+     */
+    public Map<NodeVariable<?>,Object> evaluate(Map<Node,Object> inputs) throws IllegalArgumentException, IllegalStateException {
+        int rows = checkInputs(inputs);
+
+        Map<NodeVariable<?>,Object> columns = new LinkedHashMap<>();
+        for(Map.Entry<Node,Object> e : inputs.entrySet()) {
+            columns.put(getOnlyOutput(e.getKey()),e.getValue());
+        }
+
+        for(Node n : plan.getOrder()) {
+            if(inputs.containsKey(n)) continue;
+            List<NodeVariable<?>> in = new ArrayList<>();
+            List<NodeVariable<?>> out = new ArrayList<>();
+            for(NodeVariable<?> v : n.getVariables()) {
+                if(v.getHasInput()) in.add(v);
+                if(v.getHasOutput()) out.add(v);
+            }
+            if(out.isEmpty()) continue;
+
+            Object[] inputColumns = new Object[in.size()];
+            for(int i=0;i<in.size();++i) {
+                inputColumns[i] = getInputColumn(n,in.get(i),columns,rows);
+            }
+            Object[] outputColumns = new Object[out.size()];
+            for(int i=0;i<out.size();++i) {
+                outputColumns[i] = newColumn(out.get(i).getTypeClass(),rows);
+            }
+
+            if(in.isEmpty()) {
+                for(int i=0;i<out.size();++i) fill(outputColumns[i],out.get(i).getValue(),rows);
+            } else if(n instanceof BatchFunction) {
+                ((BatchFunction)n).updateBatch(inputColumns,outputColumns,rows);
+            } else {
+                updateRowByRow(n,in,out,inputColumns,outputColumns,rows);
+            }
+
+            for(int i=0;i<out.size();++i) columns.put(out.get(i),outputColumns[i]);
+        }
+        return columns;
+    }
+
+    /**
+     * Returns the number of rows.
+     */
+    private int checkInputs(Map<Node,Object> inputs) throws IllegalArgumentException {
+        if(inputs.isEmpty()) throw new IllegalArgumentException("at least one input column is required.");
+        int rows = -1;
+        for(Map.Entry<Node,Object> e : inputs.entrySet()) {
+            Node n = e.getKey();
+            if(!(n instanceof SupergraphInput) || plan.indexOf(n)<0) {
+                throw new IllegalArgumentException(n.getUniqueName()+" is not a SupergraphInput of this graph.");
+            }
+            NodeVariable<?> v = getOnlyOutput(n);
+            Object column = e.getValue();
+            if(column==null || column.getClass()!=newColumn(v.getTypeClass(),0).getClass()) {
+                throw new IllegalArgumentException(n.getUniqueName()+" needs a column of "+v.getTypeName()+".");
+            }
+            int length = Array.getLength(column);
+            if(rows==-1) rows = length;
+            else if(rows!=length) throw new IllegalArgumentException("all input columns must be the same length.");
+        }
+        return rows;
+    }
+
+    private NodeVariable<?> getOnlyOutput(Node n) throws IllegalArgumentException {
+        NodeVariable<?> found = null;
+        for(NodeVariable<?> v : n.getVariables()) {
+            if(v.getHasOutput()) {
+                if(found!=null) throw new IllegalArgumentException(n.getUniqueName()+" has more than one output.");
+                found = v;
+            }
+        }
+        if(found==null) throw new IllegalArgumentException(n.getUniqueName()+" has no output.");
+        return found;
+    }
+
+    /**
+     * Returns the column feeding the given input: the upstream column if it is connected, otherwise the current
+     * value repeated on every row.
+     */
+    private Object getInputColumn(Node n,NodeVariable<?> v,Map<NodeVariable<?>,Object> columns,int rows) {
+        Object upstream = null;
+        for(NodeConnection c : plan.getConnectionsInto(n)) {
+            if(c.getOutVariable()==v && c.isInputValid()) upstream = columns.get(c.getInVariable());
+        }
+        if(upstream==null) {
+            Object column = newColumn(v.getTypeClass(),rows);
+            fill(column,v.getValue(),rows);
+            return column;
+        }
+
+        Object column = newColumn(v.getTypeClass(),0);
+        if(column.getClass()==upstream.getClass()) return upstream;
+        column = newColumn(v.getTypeClass(),rows);
+        for(int i=0;i<rows;++i) set(column,i,get(upstream,i));
+        return column;
+    }
+
+    /**
+     * Updates the given {@link Node} once per row, then puts every one of its {@link NodeVariable}s back exactly as it
+     * was.  The {@link Node} is taken out of its graph meanwhile so that it is not put on the worklist.
+     */
+    private void updateRowByRow(Node n,List<NodeVariable<?>> in,List<NodeVariable<?>> out,Object[] inputColumns,Object[] outputColumns,int rows) throws IllegalStateException {
+        List<NodeVariable<?>> all = n.getVariables();
+        Object[] savedValues = new Object[all.size()];
+        boolean[] savedDirty = new boolean[all.size()];
+        int[] savedChanges = new int[all.size()];
+        for(int i=0;i<all.size();++i) {
+            savedValues[i] = all.get(i).getValue();
+            savedDirty[i] = all.get(i).getIsDirty();
+            savedChanges[i] = all.get(i).getChangeCount();
+        }
+        NodeGraph parent = n.getParentGraph();
+        n.setParentGraph(null);
+
+        try {
+            for(int row=0;row<rows;++row) {
+                for(int i=0;i<in.size();++i) in.get(i).setValue(get(inputColumns[i],row));
+                n.update();
+                for(int i=0;i<out.size();++i) set(outputColumns[i],row,out.get(i).getValue());
+            }
+        } catch(Exception e) {
+            throw new IllegalStateException(n.getUniqueName()+" failed: "+e.getMessage(),e);
+        } finally {
+            // put back exactly what was there, nulls included, without telling anyone.
+            for(int i=0;i<all.size();++i) all.get(i).restoreQuietly(savedValues[i],savedDirty[i],savedChanges[i]);
+            n.setParentGraph(parent);
+        }
+    }
+
+    /**
+     * Returns a new column for values of the given type.
+     * @param type the type of the values.
+     * @param rows the number of rows.
+     * @return a <code>double[]</code>, <code>boolean[]</code> or <code>Object[]</code>.
+     */
+    public static Object newColumn(Class<?> type,int rows) {
+        if(type==Number.class) return new double[rows];
+        if(type==Boolean.class) return new boolean[rows];
+        return new Object[rows];
+    }
+
+    private static void fill(Object column,Object value,int rows) {
+        if(column instanceof double[]) {
+            Arrays.fill((double[])column,0,rows,(value instanceof Number) ? ((Number)value).doubleValue() : 0);
+        } else if(column instanceof boolean[]) {
+            Arrays.fill((boolean[])column,0,rows,(value instanceof Boolean) && (Boolean)value);
+        } else {
+            Arrays.fill((Object[])column,0,rows,value);
+        }
+    }
+
+    private static Object get(Object column,int row) {
+        if(column instanceof double[]) return ((double[])column)[row];
+        if(column instanceof boolean[]) return ((boolean[])column)[row];
+        return ((Object[])column)[row];
+    }
+
+    private static void set(Object column,int row,Object value) {
+        if(column instanceof double[]) ((double[])column)[row] = (value instanceof Number) ? ((Number)value).doubleValue() : 0;
+        else if(column instanceof boolean[]) ((boolean[])column)[row] = (value instanceof Boolean) && (Boolean)value;
+        else ((Object[])column)[row] = value;
+    }
+}
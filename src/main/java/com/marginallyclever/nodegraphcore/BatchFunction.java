@@ -0,0 +1,16 @@
+package com.marginallyclever.nodegraphcore;
+
+/**
+ * {@link Node}s with this interface can process many rows of input at once.  See {@link BatchEvaluator}.
+ * Columns of {@link Number} are <code>double[]</code>, columns of {@link Boolean} are <code>boolean[]</code>, and
+ * columns of any other type are <code>Object[]</code>.
+ */
+public interface BatchFunction {
+    /**
+     * Computes <code>rows</code> rows of output.  Must not read or change the {@link NodeVariable}s of the node.
+     * @param inputs one column for each input {@link NodeVariable}, in variable order.
+     * @param outputs one column for each output {@link NodeVariable}, in variable order, to be filled.
+     * @param rows the number of rows to compute.
+     */
+    void updateBatch(Object[] inputs, Object[] outputs, int rows);
+}
@@ -0,0 +1,80 @@
+package com.marginallyclever.nodegraphcore;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * A {@link NodeVariable} of {@link Boolean} that stores a <code>boolean</code>.  {@link #getBoolean()} and
+ * {@link #setBoolean(boolean)} never allocate or unbox, and {@link NodeConnection}s between two
+ * {@link BooleanVariable}s copy the primitive directly.
+ */
+public class BooleanVariable extends NodeVariable<Boolean> {
+    private boolean primitive;
+
+    /**
+     * Constructor for subclasses to call.  See also
+     * {@link NodeVariable#newBoolean(String, boolean, boolean, boolean)}.
+     * @param name the variable name
+     * @param startingValue the starting value
+     * @param hasInput does this variable have an input?
+     * @param hasOutput does this variable have an input?
+     */
+    protected BooleanVariable(String name,boolean startingValue,boolean hasInput,boolean hasOutput) {
+        super(name,Boolean.class,startingValue,hasInput,hasOutput);
+        this.primitive = startingValue;
+    }
+
+    @Override
+    public BooleanVariable createInverse() {
+        return new BooleanVariable(name,primitive,!hasInput,!hasOutput);
+    }
+
+    /**
+     * Returns the value without unboxing.
+     * @return the value.
+     */
+    public boolean getBoolean() {
+        return primitive;
+    }
+
+    /**
+     * Sets the value and marks this variable dirty.
+     * @param v the new value.
+     */
+    public void setBoolean(boolean v) {
+        primitive = v;
+        value = v;
+        isDirty = true;
+        notifyOwner();
+    }
+
+    @Override
+    public void setValue(Object arg0) {
+        if(isValidType(arg0)) setBoolean((Boolean)arg0);
+    }
+
+    @Override
+    protected boolean transferFrom(NodeVariable<?> from) {
+        if(!(from instanceof BooleanVariable)) return false;
+        setBoolean(((BooleanVariable)from).primitive);
+        return true;
+    }
+
+    @Override
+    void restoreQuietly(Object arg0,boolean dirty,int changes) {
+        super.restoreQuietly(arg0,dirty,changes);
+        primitive = (arg0 instanceof Boolean) && (Boolean)arg0;
+    }
+
+    @Override
+    public void copyFrom(NodeVariable<?> other) throws IllegalArgumentException {
+        super.copyFrom(other);
+        primitive = (value!=null) && value;
+    }
+
+    @Override
+    public void parseJSON(JSONObject jo) throws JSONException, ClassCastException {
+        super.parseJSON(jo);
+        primitive = (value!=null) && value;
+    }
+}
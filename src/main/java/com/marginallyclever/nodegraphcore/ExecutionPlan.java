@@ -0,0 +1,364 @@
+package com.marginallyclever.nodegraphcore;
+
+import java.util.*;
+
+/**
+ * {@link ExecutionPlan} is a snapshot of the order in which the {@link Node}s of a {@link NodeGraph} should be
+ * updated so that values travel from every source to every sink in a single pass.  It is built by
+ * {@link NodeGraph#getExecutionPlan()} and cached until the graph structure changes.<br>
+ * <br>
+ * Delay connections (see {@link NodeConnection#isDelay()}) are left out of the order and applied after the pass,
+ * so a feedback loop closed by a delay connection is not a cycle.
+ */
+public class ExecutionPlan {
+    /**
+     * {@link Node}s in topological order.  Nodes caught in a cycle are appended at the end in list order.
+     */
+    private final List<Node> order = new ArrayList<>();
+
+    /**
+     * The position of each {@link Node} in {@link #order}.
+     */
+    private final Map<Node,Integer> index = new HashMap<>();
+
+    /**
+     * For each {@link Node}, the {@link NodeConnection}s that deliver values into it from earlier in the order.
+     */
+    private final Map<Node,List<NodeConnection>> forwardConnections = new HashMap<>();
+
+    /**
+     * For each {@link Node}, the {@link NodeConnection}s that carry its outputs to {@link Node}s later in the order.
+     */
+    private final Map<Node,List<NodeConnection>> outboundConnections = new HashMap<>();
+
+    /**
+     * {@link NodeConnection}s that cannot be applied before their downstream {@link Node} runs - because they are
+     * delay connections, close a cycle, or one end is not part of the graph.  They are applied after the pass.
+     */
+    private final List<NodeConnection> remainingConnections = new ArrayList<>();
+
+    /**
+     * {@link Node}s grouped by dependency level.  Level 0 has no inbound forward connections.  Every {@link Node}
+     * in level k depends only on {@link Node}s in levels below k.
+     */
+    private final List<List<Node>> levels = new ArrayList<>();
+
+    /**
+     * Strongly connected groups of {@link Node}s that are joined without delay connections.
+     */
+    private final List<List<Node>> cycles = new ArrayList<>();
+
+    /**
+     * {@link PureFunction} {@link Node}s whose inputs come only from other constant {@link Node}s or from their own
+     * unconnected inputs.  They only need to be updated when one of them is edited.
+     */
+    private final Set<Node> constants = new HashSet<>();
+
+    /**
+     * The constant {@link Node}s in topological order.
+     */
+    private final List<Node> constantOrder = new ArrayList<>();
+
+    /**
+     * Everything in {@link #order} that is not constant, in topological order.
+     */
+    private final List<Node> dynamicOrder = new ArrayList<>();
+
+    /**
+     * True when the constant {@link Node}s must be updated again.  Set by {@link #constantChanged(Node)}.
+     */
+    private volatile boolean foldPending = true;
+
+    /**
+     * Build a plan from the given lists.  The lists are not modified and are not retained.
+     * @param nodes the {@link Node}s to order.
+     * @param connections the {@link NodeConnection}s between them.
+     */
+    public ExecutionPlan(List<Node> nodes, List<NodeConnection> connections) {
+        super();
+        sortTopologically(nodes,connections);
+        assignConnections(connections);
+        assignLevels();
+        findConstants();
+        findCycles(connections);
+    }
+
+    /**
+     * Kahn's algorithm.  Sources are visited in list order so that the plan is stable.
+     */
+    private void sortTopologically(List<Node> nodes, List<NodeConnection> connections) {
+        Map<Node,Integer> inDegree = new HashMap<>();
+        Map<Node,List<Node>> downstream = new HashMap<>();
+        for(Node n : nodes) {
+            inDegree.put(n,0);
+            downstream.put(n,new ArrayList<>());
+        }
+        for(NodeConnection c : connections) {
+            Node from = c.getInNode();
+            Node to = c.getOutNode();
+            if(from==null || to==null || from==to || c.isDelay()) continue;
+            if(!inDegree.containsKey(from) || !inDegree.containsKey(to)) continue;
+            downstream.get(from).add(to);
+            inDegree.put(to,inDegree.get(to)+1);
+        }
+
+        ArrayDeque<Node> ready = new ArrayDeque<>();
+        for(Node n : nodes) {
+            if(inDegree.get(n)==0) ready.add(n);
+        }
+        while(!ready.isEmpty()) {
+            Node n = ready.poll();
+            order.add(n);
+            for(Node d : downstream.get(n)) {
+                int remaining = inDegree.get(d)-1;
+                inDegree.put(d,remaining);
+                if(remaining==0) ready.add(d);
+            }
+        }
+
+        if(order.size()<nodes.size()) {
+            // whatever is left is part of (or downstream of) a cycle.
+            for(Node n : nodes) {
+                if(inDegree.get(n)>0) order.add(n);
+            }
+        }
+    }
+
+    private void assignConnections(List<NodeConnection> connections) {
+        for(int i=0;i<order.size();++i) index.put(order.get(i),i);
+
+        for(NodeConnection c : connections) {
+            Integer from = index.get(c.getInNode());
+            Integer to = index.get(c.getOutNode());
+            if(from!=null && to!=null && from<to && !c.isDelay()) {
+                forwardConnections.computeIfAbsent(c.getOutNode(),k->new ArrayList<>()).add(c);
+                outboundConnections.computeIfAbsent(c.getInNode(),k->new ArrayList<>()).add(c);
+            } else {
+                remainingConnections.add(c);
+            }
+        }
+    }
+
+    private void assignLevels() {
+        Map<Node,Integer> levelOf = new HashMap<>();
+        for(Node n : order) {
+            int level = 0;
+            for(NodeConnection c : getConnectionsInto(n)) {
+                level = Math.max(level, levelOf.get(c.getInNode())+1);
+            }
+            levelOf.put(n,level);
+            while(levels.size()<=level) levels.add(new ArrayList<>());
+            levels.get(level).add(n);
+        }
+    }
+
+    private void findConstants() {
+        Set<Node> cycleTargets = new HashSet<>();
+        for(NodeConnection c : remainingConnections) cycleTargets.add(c.getOutNode());
+
+        for(Node n : order) {
+            boolean constant = (n instanceof PureFunction) && !cycleTargets.contains(n);
+            if(constant) {
+                for(NodeConnection c : getConnectionsInto(n)) {
+                    if(!constants.contains(c.getInNode())) {
+                        constant = false;
+                        break;
+                    }
+                }
+            }
+            if(constant) {
+                constants.add(n);
+                constantOrder.add(n);
+            } else {
+                dynamicOrder.add(n);
+            }
+        }
+    }
+
+    /**
+     * Tarjan's strongly connected components, without recursion so that long chains cannot overflow the stack.
+     * Only groups of two or more {@link Node}s, or a {@link Node} connected to itself, are kept.
+     */
+    private void findCycles(List<NodeConnection> connections) {
+        Map<Node,List<Node>> downstream = new HashMap<>();
+        Set<Node> selfLoops = new HashSet<>();
+        for(NodeConnection c : connections) {
+            Node from = c.getInNode();
+            Node to = c.getOutNode();
+            if(c.isDelay() || !index.containsKey(from) || !index.containsKey(to)) continue;
+            if(from==to) selfLoops.add(from);
+            else downstream.computeIfAbsent(from,k->new ArrayList<>()).add(to);
+        }
+
+        Map<Node,Integer> visitIndex = new HashMap<>();
+        Map<Node,Integer> lowLink = new HashMap<>();
+        Set<Node> onStack = new HashSet<>();
+        ArrayDeque<Node> stack = new ArrayDeque<>();
+        // each frame is a node and the position of the next downstream node to visit.
+        ArrayDeque<Object[]> frames = new ArrayDeque<>();
+
+        for(Node root : order) {
+            if(visitIndex.containsKey(root)) continue;
+            frames.push(new Object[]{root,0});
+            while(!frames.isEmpty()) {
+                Object[] frame = frames.peek();
+                Node n = (Node)frame[0];
+                int next = (Integer)frame[1];
+                if(next==0 && !visitIndex.containsKey(n)) {
+                    visitIndex.put(n,visitIndex.size());
+                    lowLink.put(n,visitIndex.get(n));
+                    stack.push(n);
+                    onStack.add(n);
+                }
+
+                List<Node> children = downstream.getOrDefault(n,Collections.emptyList());
+                if(next<children.size()) {
+                    frame[1] = next+1;
+                    Node d = children.get(next);
+                    if(!visitIndex.containsKey(d)) {
+                        frames.push(new Object[]{d,0});
+                    } else if(onStack.contains(d)) {
+                        lowLink.put(n,Math.min(lowLink.get(n),visitIndex.get(d)));
+                    }
+                    continue;
+                }
+
+                frames.pop();
+                if(!frames.isEmpty()) {
+                    Node parent = (Node)frames.peek()[0];
+                    lowLink.put(parent,Math.min(lowLink.get(parent),lowLink.get(n)));
+                }
+                if(lowLink.get(n).equals(visitIndex.get(n))) {
+                    List<Node> component = new ArrayList<>();
+                    Node m;
+                    do {
+                        m = stack.pop();
+                        onStack.remove(m);
+                        component.add(m);
+                    } while(m!=n);
+                    if(component.size()>1 || selfLoops.contains(n)) {
+                        component.sort(Comparator.comparingInt(index::get));
+                        cycles.add(Collections.unmodifiableList(component));
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the {@link Node}s in the order they should be updated.
+     * @return the {@link Node}s in the order they should be updated.
+     */
+    public List<Node> getOrder() {
+        return Collections.unmodifiableList(order);
+    }
+
+    /**
+     * Returns the position of the given {@link Node} in {@link #getOrder()}, or -1 if it is not part of this plan.
+     * @param n the subject
+     * @return the position of the given {@link Node} in {@link #getOrder()}, or -1.
+     */
+    public int indexOf(Node n) {
+        Integer i = index.get(n);
+        return i==null ? -1 : i;
+    }
+
+    /**
+     * Returns the {@link NodeConnection}s to apply immediately before the given {@link Node} is updated.
+     * @param n the subject
+     * @return the {@link NodeConnection}s to apply immediately before the given {@link Node} is updated.
+     */
+    public List<NodeConnection> getConnectionsInto(Node n) {
+        List<NodeConnection> list = forwardConnections.get(n);
+        return list==null ? Collections.emptyList() : Collections.unmodifiableList(list);
+    }
+
+    /**
+     * Returns the {@link NodeConnection}s that carry the outputs of the given {@link Node} to {@link Node}s later in
+     * the order.
+     * @param n the subject
+     * @return the {@link NodeConnection}s that carry the outputs of the given {@link Node} forward.
+     */
+    public List<NodeConnection> getConnectionsOutOf(Node n) {
+        List<NodeConnection> list = outboundConnections.get(n);
+        return list==null ? Collections.emptyList() : Collections.unmodifiableList(list);
+    }
+
+    /**
+     * Returns the {@link Node}s grouped by dependency level, lowest level first.  {@link Node}s in the same level do
+     * not depend on each other and may be updated in parallel.
+     * @return the {@link Node}s grouped by dependency level.
+     */
+    public List<List<Node>> getLevels() {
+        return Collections.unmodifiableList(levels);
+    }
+
+    /**
+     * Returns the {@link NodeConnection}s that must be applied after all {@link Node}s have been updated.
+     * @return the {@link NodeConnection}s that must be applied after all {@link Node}s have been updated.
+     */
+    public List<NodeConnection> getRemainingConnections() {
+        return Collections.unmodifiableList(remainingConnections);
+    }
+
+    /**
+     * Returns every group of {@link Node}s that form a cycle without a delay connection.  The result of updating a
+     * cycle depends on the order of the {@link Node}s in the graph.  Each group is in plan order.
+     * @return every cycle in the plan.  Empty if there are none.
+     */
+    public List<List<Node>> getCycles() {
+        return Collections.unmodifiableList(cycles);
+    }
+
+    /**
+     * Returns true if the given {@link Node} is constant.  A constant {@link Node} is a {@link PureFunction} that is
+     * not part of a cycle and whose connected inputs all come from other constant {@link Node}s.  Its outputs
+     * change only when someone edits one of the constant {@link Node}s.
+     * @param n the subject
+     * @return true if the given {@link Node} is constant.
+     */
+    public boolean isConstant(Node n) {
+        return constants.contains(n);
+    }
+
+    /**
+     * Returns the constant {@link Node}s in the order they should be updated.
+     * @return the constant {@link Node}s in the order they should be updated.
+     */
+    public List<Node> getConstantOrder() {
+        return Collections.unmodifiableList(constantOrder);
+    }
+
+    /**
+     * Returns the {@link Node}s that are not constant, in the order they should be updated.
+     * @return the {@link Node}s that are not constant, in the order they should be updated.
+     */
+    public List<Node> getDynamicOrder() {
+        return Collections.unmodifiableList(dynamicOrder);
+    }
+
+    /**
+     * Called by {@link NodeGraph#markDirty(Node)}.  If the {@link Node} is constant the constants will be folded
+     * again on the next tick.
+     * @param n the {@link Node} that became dirty.
+     */
+    void constantChanged(Node n) {
+        if(constants.contains(n)) foldPending = true;
+    }
+
+    /**
+     * Returns true if the constant {@link Node}s have not been updated since the plan was built or since one of
+     * them was edited.
+     * @return true if the constant {@link Node}s need to be updated.
+     */
+    public boolean isFoldPending() {
+        return foldPending;
+    }
+
+    /**
+     * Tells the plan that every constant {@link Node} has just been updated.
+     */
+    public void foldDone() {
+        foldPending = false;
+    }
+}
@@ -0,0 +1,136 @@
+package com.marginallyclever.nodegraphcore;
+
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * {@link GraphInstance} is one set of values for a {@link GraphTemplate}.  It is addressed with the
+ * {@link NodeVariable}s of the shared graph from {@link GraphTemplate#getGraph()}.
+ */
+public class GraphInstance {
+    private final GraphTemplate template;
+
+    final Object[] values;
+
+    final boolean[] dirty;
+
+    /**
+     * True for each value that became dirty during a tick and has not been taken with {@link #takeChange(NodeVariable)}.
+     */
+    final boolean[] changed;
+
+    /**
+     * The {@link AsyncNode}s with work in flight for this instance.
+     */
+    final Set<Node> pendingAsync = ConcurrentHashMap.newKeySet();
+
+    /**
+     * The code that writes the results of finished {@link AsyncNode} work, run at the start of the next tick.
+     */
+    final Queue<Runnable> asyncCompletions = new ConcurrentLinkedQueue<>();
+
+    /**
+     * The working copy that started the {@link AsyncNode} work in flight, or null.  Guarded by the template.
+     */
+    Object lane;
+
+    GraphInstance(GraphTemplate template,Object[] values,boolean[] dirty) {
+        super();
+        this.template = template;
+        this.values = values;
+        this.dirty = dirty;
+        this.changed = new boolean[values.length];
+    }
+
+    /**
+     * Returns a new instance of the same template with a copy of the values of this one.
+     * @return a new instance.
+     */
+    public GraphInstance copy() {
+        Object[] v = values.clone();
+        for(int i=0;i<v.length;++i) v[i] = ValueCopier.copy(Object.class,v[i]);
+        return new GraphInstance(template,v,dirty.clone());
+    }
+
+    /**
+     * Returns the template of this instance.
+     * @return the template of this instance.
+     */
+    public GraphTemplate getTemplate() {
+        return template;
+    }
+
+    /**
+     * Returns the value this instance holds for the given variable.
+     * @param v a variable of the shared graph.
+     * @return the value this instance holds for the given variable.
+     * @throws IllegalArgumentException if the variable is not part of the shared graph.
+     */
+    public Object getValue(NodeVariable<?> v) throws IllegalArgumentException {
+        return values[template.indexOf(v)];
+    }
+
+    /**
+     * Sets the value this instance holds for the given variable and marks it dirty.
+     * @param v a variable of the shared graph.
+     * @param value the new value.
+     * @throws IllegalArgumentException if the variable is not part of the shared graph or the value is the wrong type.
+     */
+    public void setValue(NodeVariable<?> v,Object value) throws IllegalArgumentException {
+        int i = template.indexOf(v);
+        if(!v.isValidType(value)) throw new IllegalArgumentException(v.getName()+" cannot hold "+value);
+        values[i] = value;
+        dirty[i] = true;
+    }
+
+    /**
+     * Returns true if any value in this instance is dirty or an {@link AsyncNode} is still working for it.
+     * @return true if the next {@link #update()} has anything to do.
+     */
+    public boolean isDirty() {
+        if(hasAsyncWork()) return true;
+        for(boolean d : dirty) {
+            if(d) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Returns true if the value for the given variable became dirty during a tick since the last call.  Catches a
+     * value that was changed in place, which still equals itself.
+     * @param v a variable of the shared graph.
+     * @return true if the value for the given variable has changed since the last call.
+     * @throws IllegalArgumentException if the variable is not part of the shared graph.
+     */
+    boolean takeChange(NodeVariable<?> v) throws IllegalArgumentException {
+        int i = template.indexOf(v);
+        boolean c = changed[i];
+        changed[i] = false;
+        return c;
+    }
+
+    /**
+     * Returns true if an {@link AsyncNode} is still working for this instance or its results are not yet written.
+     * @return true if an {@link AsyncNode} is still working for this instance.
+     */
+    boolean hasAsyncWork() {
+        return !pendingAsync.isEmpty() || !asyncCompletions.isEmpty();
+    }
+
+    /**
+     * Writes the results of every {@link AsyncNode} that has finished for this instance since the last call.
+     */
+    void runAsyncCompletions() {
+        Runnable r;
+        while((r=asyncCompletions.poll())!=null) r.run();
+    }
+
+    /**
+     * Runs one tick of this instance.
+     */
+    public void update() {
+        template.update(this);
+    }
+}
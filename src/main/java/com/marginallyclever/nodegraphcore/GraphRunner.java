@@ -0,0 +1,220 @@
+package com.marginallyclever.nodegraphcore;
+
+import com.marginallyclever.nodegraphcore.compiler.CompiledExecutor;
+import com.marginallyclever.nodegraphcore.executors.*;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * {@link GraphRunner} loads a graph file and runs it without a display, then reports how fast it ran.<br>
+ * <br>
+ * Usage: <code>GraphRunner file.graph [--ticks N] [--until-quiescent] [--warmup N] [--executor name]</code>
+ * <ul>
+ * <li><code>--ticks N</code> runs N ticks.  With <code>--until-quiescent</code> it is the most ticks to run.  The
+ * default is 1000.</li>
+ * <li><code>--until-quiescent</code> stops as soon as nothing in the graph is dirty.</li>
+ * <li><code>--warmup N</code> runs N ticks first that are not measured.  The default is 0.</li>
+ * <li><code>--executor name</code> is one of sequential (the default), level, dataflow, pull, pipelined, critical
+ * or compiled.</li>
+ * </ul>
+ * The report gives ticks per second, the 50th and 99th percentile tick latency, and the number of {@link Node}s
+ * updated per tick.  With the pipelined executor the latency is the time to start a tick, not to finish it.
+ */
+public class GraphRunner {
+    private final NodeGraph graph;
+
+    /**
+     * @param graph the graph to run.
+     */
+    public GraphRunner(NodeGraph graph) {
+        super();
+        if(graph==null) throw new IllegalArgumentException("graph cannot be null.");
+        this.graph = graph;
+    }
+
+    /**
+     * Runs the graph and measures every tick.
+     * @param maxTicks the number of ticks to run, or the most ticks to run if untilQuiescent is true.
+     * @param untilQuiescent true to stop as soon as {@link NodeGraph#isQuiescent()}.
+     * @return the measurements.
+     * @throws IllegalArgumentException if maxTicks is negative.
+     */
+    public Report run(int maxTicks,boolean untilQuiescent) throws IllegalArgumentException {
+        if(maxTicks<0) throw new IllegalArgumentException("maxTicks cannot be negative.");
+        NodeGraphExecutor executor = graph.getExecutor();
+        long[] tickNanos = new long[maxTicks];
+        long updatesBefore = executor.getUpdateCount();
+        long start = System.nanoTime();
+        int ticks = 0;
+        while(ticks<maxTicks && !(untilQuiescent && graph.isQuiescent())) {
+            long t0 = System.nanoTime();
+            graph.update();
+            tickNanos[ticks++] = System.nanoTime()-t0;
+        }
+        executor.flush();
+        long totalNanos = System.nanoTime()-start;
+        return new Report(Arrays.copyOf(tickNanos,ticks),totalNanos,executor.getUpdateCount()-updatesBefore);
+    }
+
+    /**
+     * Returns a new executor by name.
+     * @param name one of sequential, level, dataflow, pull, pipelined, critical or compiled.
+     * @return a new executor.
+     * @throws IllegalArgumentException if the name is not known.
+     */
+    public static NodeGraphExecutor createExecutor(String name) throws IllegalArgumentException {
+        switch(name.toLowerCase(Locale.ROOT)) {
+            case "sequential": return new SequentialExecutor();
+            case "level": return new LevelParallelExecutor();
+            case "dataflow": return new DataflowExecutor();
+            case "pull": return new PullExecutor();
+            case "pipelined": return new PipelinedExecutor();
+            case "critical": return new CriticalPathExecutor();
+            case "compiled": return new CompiledExecutor();
+            default: throw new IllegalArgumentException("unknown executor "+name);
+        }
+    }
+
+    /**
+     * Loads a graph from a file.  The {@link NodeFactory} and {@link DAO4JSONFactory} must already be loaded.
+     * @param filename the file to read.
+     * @return the graph.
+     * @throws IOException if the file cannot be read.
+     */
+    public static NodeGraph load(String filename) throws IOException {
+        String text = new String(Files.readAllBytes(Paths.get(filename)),StandardCharsets.UTF_8);
+        NodeGraph graph = new NodeGraph();
+        graph.parseJSON(new JSONObject(text));
+        return graph;
+    }
+
+    /**
+     * The measurements of one run.
+     */
+    public static class Report {
+        private final long[] sortedTickNanos;
+        private final long totalNanos;
+        private final long updates;
+
+        Report(long[] tickNanos,long totalNanos,long updates) {
+            this.sortedTickNanos = tickNanos.clone();
+            Arrays.sort(this.sortedTickNanos);
+            this.totalNanos = totalNanos;
+            this.updates = updates;
+        }
+
+        /**
+         * Returns the number of ticks run.
+         * @return the number of ticks run.
+         */
+        public int getTicks() {
+            return sortedTickNanos.length;
+        }
+
+        /**
+         * Returns the ticks per second over the whole run.
+         * @return the ticks per second over the whole run.
+         */
+        public double getTicksPerSecond() {
+            return totalNanos==0 ? 0 : getTicks()*1e9/totalNanos;
+        }
+
+        /**
+         * Returns the tick latency below which the given fraction of ticks fall, in nanoseconds.
+         * @param p a fraction between 0 and 1.
+         * @return the tick latency at that percentile, in nanoseconds, or 0 if no ticks were run.
+         */
+        public long getPercentileNanos(double p) {
+            if(sortedTickNanos.length==0) return 0;
+            int i = (int)Math.ceil(p*sortedTickNanos.length)-1;
+            return sortedTickNanos[Math.max(0,Math.min(sortedTickNanos.length-1,i))];
+        }
+
+        /**
+         * Returns the total number of {@link Node}s updated.  See {@link NodeGraphExecutor#getUpdateCount()}.
+         * @return the total number of {@link Node}s updated.
+         */
+        public long getUpdates() {
+            return updates;
+        }
+
+        /**
+         * Returns the average number of {@link Node}s updated per tick.
+         * @return the average number of {@link Node}s updated per tick.
+         */
+        public double getUpdatesPerTick() {
+            return getTicks()==0 ? 0 : (double)updates/getTicks();
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT,
+                    "ticks=%d, ticks/sec=%.1f, p50=%.3f ms, p99=%.3f ms, nodes/tick=%.1f",
+                    getTicks(),
+                    getTicksPerSecond(),
+                    getPercentileNanos(0.50)/1e6,
+                    getPercentileNanos(0.99)/1e6,
+                    getUpdatesPerTick());
+        }
+    }
+
+    /**
+     * Main entry point.
+     * @param args command line arguments.  See {@link GraphRunner}.
+     */
+    public static void main(String[] args) {
+        String filename = null;
+        int ticks = 1000;
+        int warmup = 0;
+        boolean untilQuiescent = false;
+        String executorName = "sequential";
+        try {
+            for(int i=0;i<args.length;++i) {
+                switch(args[i]) {
+                    case "--ticks": ticks = Integer.parseInt(args[++i]); break;
+                    case "--warmup": warmup = Integer.parseInt(args[++i]); break;
+                    case "--until-quiescent": untilQuiescent = true; break;
+                    case "--executor": executorName = args[++i]; break;
+                    default:
+                        if(args[i].startsWith("--") || filename!=null) throw new IllegalArgumentException("unexpected argument "+args[i]);
+                        filename = args[i];
+                }
+            }
+            if(filename==null) throw new IllegalArgumentException("no graph file given.");
+        } catch(IllegalArgumentException|ArrayIndexOutOfBoundsException e) {
+            System.err.println(e.getMessage());
+            System.err.println("usage: GraphRunner file.graph [--ticks N] [--until-quiescent] [--warmup N] [--executor sequential|level|dataflow|pull|pipelined|critical|compiled]");
+            System.exit(2);
+            return;
+        }
+
+        NodeFactory.loadRegistries();
+        DAO4JSONFactory.loadRegistries();
+
+        NodeGraphExecutor executor = null;
+        try {
+            NodeGraph graph = load(filename);
+            executor = createExecutor(executorName);
+            graph.setExecutor(executor);
+            GraphRunner runner = new GraphRunner(graph);
+            if(warmup>0) runner.run(warmup,false);
+            Report report = runner.run(ticks,untilQuiescent);
+            System.out.println(filename+" ("+graph.getNodes().size()+" nodes, "+executorName+"): "+report);
+        } catch(Exception e) {
+            System.err.println("failed: "+e.getMessage());
+            System.exit(1);
+        } finally {
+            if(executor instanceof AutoCloseable) {
+                try {
+                    ((AutoCloseable)executor).close();
+                } catch(Exception ignored) {}
+            }
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package com.marginallyclever.nodegraphcore;
+
+import java.util.*;
+
+/**
+ * {@link GraphSnapshot} is an immutable view of a {@link NodeGraph} between ticks: the {@link Node}s, the
+ * {@link NodeConnection}s, and the value and dirty flag of every {@link NodeVariable}.  A thread that evaluates the
+ * graph publishes one at the end of each tick with {@link NodeGraph#publishSnapshot()}, and a painter on another
+ * thread reads the latest with {@link NodeGraph#getSnapshot()}.  Neither waits for the other and the painter never
+ * sees a tick half done.<br>
+ * <br>
+ * The values inside each {@link Subgraph} that has a private inner graph are kept too, so a {@link Subgraph} can be
+ * painted from the same snapshot.<br>
+ * <br>
+ * Values are held by reference.  A value that is changed in place, such as an image, is not copied.
+ */
+public class GraphSnapshot {
+    private final long structureVersion;
+
+    private final List<Node> nodes;
+
+    private final List<NodeConnection> connections;
+
+    private final Map<NodeVariable<?>,Integer> indexOf;
+
+    private final Object[] values;
+
+    private final boolean[] dirty;
+
+    GraphSnapshot(NodeGraph graph) {
+        super();
+        this.structureVersion = graph.getStructureVersion();
+        this.nodes = Collections.unmodifiableList(copyOf(graph.getNodes()));
+        this.connections = Collections.unmodifiableList(copyOf(graph.getConnections()));
+
+        indexOf = new IdentityHashMap<>();
+        List<Object> valueList = new ArrayList<>();
+        List<Boolean> dirtyList = new ArrayList<>();
+        addValues(nodes,valueList,dirtyList);
+        values = valueList.toArray();
+        dirty = new boolean[dirtyList.size()];
+        for(int i=0;i<dirty.length;++i) dirty[i] = dirtyList.get(i);
+    }
+
+    private void addValues(List<Node> list,List<Object> valueList,List<Boolean> dirtyList) {
+        for(Node n : list) {
+            for(NodeVariable<?> v : copyOf(n.getVariables())) {
+                if(indexOf.containsKey(v)) continue;
+                indexOf.put(v,valueList.size());
+                valueList.add(v.getValue());
+                dirtyList.add(v.getIsDirty());
+            }
+            if(n instanceof Subgraph) {
+                NodeGraph inner = ((Subgraph)n).getPrivateGraph();
+                if(inner!=null) addValues(copyOf(inner.getNodes()),valueList,dirtyList);
+            }
+        }
+    }
+
+    /**
+     * Copies a list without an iterator, so an edit on another thread cannot throw.  Entries caught mid-edit are
+     * left out.
+     */
+    private static <T> List<T> copyOf(List<T> list) {
+        List<T> copy = new ArrayList<>(list.size());
+        for(Object o : list.toArray()) {
+            if(o!=null) {
+                @SuppressWarnings("unchecked") T t = (T)o;
+                copy.add(t);
+            }
+        }
+        return copy;
+    }
+
+    /**
+     * Returns the value of {@link NodeGraph#getStructureVersion()} when this snapshot was taken.  If it no longer
+     * matches, {@link Node}s or {@link NodeConnection}s have been added or removed since.
+     * @return the structure version when this snapshot was taken.
+     */
+    public long getStructureVersion() {
+        return structureVersion;
+    }
+
+    /**
+     * Returns the {@link Node}s of the graph when this snapshot was taken.
+     * @return an unmodifiable list.
+     */
+    public List<Node> getNodes() {
+        return nodes;
+    }
+
+    /**
+     * Returns the {@link NodeConnection}s of the graph when this snapshot was taken.
+     * @return an unmodifiable list.
+     */
+    public List<NodeConnection> getConnections() {
+        return connections;
+    }
+
+    /**
+     * Returns the value the given variable had when this snapshot was taken.
+     * @param v the subject
+     * @return the value, or the current value if the variable was not in the graph when this snapshot was taken.
+     */
+    public Object getValue(NodeVariable<?> v) {
+        Integer i = indexOf.get(v);
+        return i==null ? v.getValue() : values[i];
+    }
+
+    /**
+     * Returns the dirty flag the given variable had when this snapshot was taken.
+     * @param v the subject
+     * @return the dirty flag, or the current one if the variable was not in the graph when this snapshot was taken.
+     */
+    public boolean getIsDirty(NodeVariable<?> v) {
+        Integer i = indexOf.get(v);
+        return i==null ? v.getIsDirty() : dirty[i];
+    }
+}
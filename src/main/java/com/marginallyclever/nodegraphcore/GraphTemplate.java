@@ -0,0 +1,323 @@
+package com.marginallyclever.nodegraphcore;
+
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * {@link GraphTemplate} shares one {@link NodeGraph} between many {@link GraphInstance}s.  The {@link Node}s,
+ * {@link NodeConnection}s and {@link ExecutionPlan} exist once.  Each {@link GraphInstance} holds only an array of
+ * values and an array of dirty flags, one of each per {@link NodeVariable}.<br>
+ * <br>
+ * To update an instance its values are copied into a working copy of the graph, every dirty {@link Node} is updated
+ * in plan order, and the values are copied back out.  The first working copy is the shared graph itself.  When every
+ * working copy is busy because several threads update instances at once, the template makes another, so there are
+ * only ever as many copies as threads that update at the same time.  {@link Node}s are run the same way as by a
+ * {@link NodeGraphExecutor}: a failed {@link Node} backs off, and the work of an {@link AsyncNode} is started on the
+ * I/O pool and its result written into the instance that started it.<br>
+ * <br>
+ * The template takes over the graph it is given.  Do not change the structure of that graph afterwards.
+ */
+public class GraphTemplate {
+    private final NodeGraph graph;
+
+    private final NodeVariable<?>[] variables;
+
+    private final Map<NodeVariable<?>,Integer> indexOf = new IdentityHashMap<>();
+
+    /**
+     * Where each variable is: the position of its {@link Node} in {@link NodeGraph#getNodes()}, and its position in
+     * that {@link Node}.  The same in every working copy.
+     */
+    private final int[] nodeOf;
+
+    private final int[] variableOf;
+
+    private final Object[] initialValues;
+
+    private final boolean[] initialDirty;
+
+    /**
+     * Every working copy.  Guarded by itself.
+     */
+    private final List<Lane> lanes = new ArrayList<>();
+
+    /**
+     * Creates a template from the current state of the given graph.  Every new {@link GraphInstance} starts with the
+     * values and dirty flags the graph has now.
+     * @param graph the graph to share.
+     */
+    public GraphTemplate(NodeGraph graph) {
+        super();
+        if(graph==null) throw new IllegalArgumentException("graph cannot be null.");
+        this.graph = graph;
+        ExecutionPlan plan = graph.getExecutionPlan();
+
+        Map<Node,Integer> position = new IdentityHashMap<>();
+        List<Node> nodes = graph.getNodes();
+        for(int k=0;k<nodes.size();++k) position.put(nodes.get(k),k);
+
+        List<NodeVariable<?>> list = new ArrayList<>();
+        List<Integer> nodeList = new ArrayList<>();
+        List<Integer> variableList = new ArrayList<>();
+        for(Node n : plan.getOrder()) {
+            for(int j=0;j<n.getNumVariables();++j) {
+                list.add(n.getVariable(j));
+                nodeList.add(position.get(n));
+                variableList.add(j);
+            }
+        }
+        variables = list.toArray(new NodeVariable<?>[0]);
+        nodeOf = new int[variables.length];
+        variableOf = new int[variables.length];
+        initialValues = new Object[variables.length];
+        initialDirty = new boolean[variables.length];
+        for(int i=0;i<variables.length;++i) {
+            indexOf.put(variables[i],i);
+            nodeOf[i] = nodeList.get(i);
+            variableOf[i] = variableList.get(i);
+            // copied, so that later changes to the graph do not reach new instances.
+            initialValues[i] = ValueCopier.copy(variables[i].getTypeClass(),variables[i].getValue());
+            initialDirty[i] = variables[i].getIsDirty();
+        }
+        lanes.add(new Lane(graph));
+    }
+
+    /**
+     * Returns a new instance with the values the graph had when this template was made.  Each instance gets its own
+     * copy of every value, so a value changed in place, such as an image, is never shared.
+     * @return a new instance.
+     */
+    public GraphInstance newInstance() {
+        Object[] values = new Object[initialValues.length];
+        for(int i=0;i<values.length;++i) values[i] = ValueCopier.copy(variables[i].getTypeClass(),initialValues[i]);
+        return new GraphInstance(this,values,initialDirty.clone());
+    }
+
+    /**
+     * Returns the shared graph.  Use its {@link Node}s and {@link NodeVariable}s to address values in a
+     * {@link GraphInstance}.  Their values are those of whichever instance used them last.
+     * @return the shared graph.
+     */
+    public NodeGraph getGraph() {
+        return graph;
+    }
+
+    /**
+     * Returns the number of values each instance holds.
+     * @return the number of values each instance holds.
+     */
+    public int getVariableCount() {
+        return variables.length;
+    }
+
+    /**
+     * Returns the number of working copies of the graph, including the shared graph itself.
+     * @return the number of working copies of the graph.
+     */
+    public int getWorkingCopyCount() {
+        synchronized(lanes) {
+            return lanes.size();
+        }
+    }
+
+    /**
+     * Returns the position of the given {@link NodeVariable} in the value arrays of an instance.
+     * @param v a variable of the shared graph.
+     * @return the position of the variable.
+     * @throws IllegalArgumentException if the variable is not part of the shared graph.
+     */
+    int indexOf(NodeVariable<?> v) throws IllegalArgumentException {
+        Integer i = indexOf.get(v);
+        if(i==null) throw new IllegalArgumentException(v.getName()+" is not part of this template.");
+        return i;
+    }
+
+    /**
+     * Runs one tick of the given instance.
+     * @param instance an instance of this template.
+     */
+    void update(GraphInstance instance) {
+        Lane lane = borrow(instance);
+        try {
+            lane.load(instance);
+            lane.countChanges();
+            instance.runAsyncCompletions();
+            lane.instance = instance;
+            lane.update(lane.graph,lane.plan);
+            lane.save(instance);
+        } finally {
+            lane.instance = null;
+            giveBack(lane,instance);
+        }
+    }
+
+    /**
+     * Loads the values of the given instance into a working copy of the graph and passes it to the action.
+     * @param instance an instance of this template.
+     * @param action what to do with the graph.  Do not keep it.
+     */
+    void withValues(GraphInstance instance,Consumer<NodeGraph> action) {
+        Lane lane = borrow(instance);
+        try {
+            lane.load(instance);
+            action.accept(lane.graph);
+        } finally {
+            giveBack(lane,instance);
+        }
+    }
+
+    /**
+     * Returns a new {@link NodeGraph} with the structure of this template and the values of the given instance.
+     * The {@link Node}s of the copy are in the same order as those of {@link #getGraph()}.
+     * @param instance an instance of this template.
+     * @return a new {@link NodeGraph}.
+     */
+    public NodeGraph copyOf(GraphInstance instance) {
+        Lane lane = borrow(null);
+        NodeGraph copy;
+        try {
+            copy = lane.graph.deepCopy();
+        } finally {
+            giveBack(lane,null);
+        }
+        List<Node> to = copy.getNodes();
+        for(int i=0;i<variables.length;++i) {
+            NodeVariable<?> v = to.get(nodeOf[i]).getVariable(variableOf[i]);
+            v.restoreValue(ValueCopier.copy(v.getTypeClass(),instance.values[i]));
+            v.setIsDirty(instance.dirty[i]);
+        }
+        return copy;
+    }
+
+    /**
+     * Takes a working copy that no other thread is using, making one if needed.  An instance with {@link AsyncNode}
+     * work in flight always gets the copy that started the work, because the results are written into that copy.
+     * @param instance the instance to run, or null.
+     * @return a working copy.
+     */
+    private Lane borrow(GraphInstance instance) {
+        boolean interrupted = false;
+        try {
+            synchronized(lanes) {
+                Lane pinned = (instance!=null) ? (Lane)instance.lane : null;
+                if(pinned!=null) {
+                    while(pinned.busy) {
+                        try {
+                            lanes.wait();
+                        } catch(InterruptedException e) {
+                            interrupted = true;
+                        }
+                    }
+                    pinned.busy = true;
+                    return pinned;
+                }
+                for(Lane lane : lanes) {
+                    if(!lane.busy) {
+                        lane.busy = true;
+                        return lane;
+                    }
+                }
+                Lane lane = new Lane(graph.deepCopy());
+                lane.busy = true;
+                lanes.add(lane);
+                return lane;
+            }
+        } finally {
+            if(interrupted) Thread.currentThread().interrupt();
+        }
+    }
+
+    private void giveBack(Lane lane,GraphInstance instance) {
+        synchronized(lanes) {
+            if(instance!=null) instance.lane = instance.hasAsyncWork() ? lane : null;
+            lane.busy = false;
+            lanes.notifyAll();
+        }
+    }
+
+    /**
+     * A working copy of the shared graph, and the executor that runs instances on it.
+     */
+    private class Lane extends NodeGraphExecutor {
+        final NodeGraph graph;
+
+        final ExecutionPlan plan;
+
+        final NodeVariable<?>[] variables;
+
+        /**
+         * The {@link NodeVariable#getChangeCount()} of each variable at the start of the tick.
+         */
+        final int[] changeCounts;
+
+        /**
+         * True while a thread is using this copy.  Guarded by {@link #lanes}.
+         */
+        boolean busy;
+
+        /**
+         * The instance being updated, so that {@link AsyncNode} work is kept with it.
+         */
+        GraphInstance instance;
+
+        Lane(NodeGraph graph) {
+            super();
+            this.graph = graph;
+            this.plan = graph.getExecutionPlan();
+            List<Node> nodes = graph.getNodes();
+            variables = new NodeVariable<?>[nodeOf.length];
+            changeCounts = new int[nodeOf.length];
+            for(int i=0;i<variables.length;++i) {
+                variables[i] = nodes.get(nodeOf[i]).getVariable(variableOf[i]);
+            }
+        }
+
+        /**
+         * Copies the values of the given instance into this working copy.  Nulls are copied too, so nothing is left
+         * over from the last instance.
+         */
+        void load(GraphInstance instance) {
+            for(int i=0;i<variables.length;++i) {
+                variables[i].restoreValue(instance.values[i]);
+                variables[i].setIsDirty(instance.dirty[i]);
+            }
+        }
+
+        void countChanges() {
+            for(int i=0;i<variables.length;++i) changeCounts[i] = variables[i].getChangeCount();
+        }
+
+        /**
+         * Copies the values of this working copy into the given instance and notes which became dirty since
+         * {@link #countChanges()}.
+         */
+        void save(GraphInstance instance) {
+            for(int i=0;i<variables.length;++i) {
+                instance.values[i] = variables[i].getValue();
+                instance.dirty[i] = variables[i].getIsDirty();
+                if(variables[i].getChangeCount()!=changeCounts[i]) instance.changed[i] = true;
+            }
+        }
+
+        @Override
+        public void update(NodeGraph graph, ExecutionPlan plan) {
+            for(Node n : plan.getOrder()) {
+                for(NodeConnection c : plan.getConnectionsInto(n)) c.applyIfDirty();
+                updateNode(n);
+            }
+            for(NodeConnection c : plan.getRemainingConnections()) c.applyIfDirty();
+            for(Node n : plan.getOrder()) n.cleanAllOutputs();
+            // a working copy is never ticked on its own, so its worklist is not needed.
+            graph.drainWorklist();
+        }
+
+        @Override
+        protected void updateNode(Node n) {
+            if(!(n instanceof AsyncNode)) {
+                super.updateNode(n);
+            } else if(n.isDirty() && !n.isBackingOff()) {
+                NodeGraph.startAsync(n,GraphTemplate.this.graph.getIOPool(),instance.pendingAsync,instance.asyncCompletions);
+            }
+        }
+    }
+}
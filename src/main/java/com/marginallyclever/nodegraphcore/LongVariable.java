@@ -0,0 +1,100 @@
+package com.marginallyclever.nodegraphcore;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * A {@link NodeVariable} of {@link Number} that stores a <code>long</code>.  {@link #getLong()} and
+ * {@link #setLong(long)} never allocate, and {@link NodeConnection}s between two {@link LongVariable}s copy
+ * the primitive directly.  {@link #getValue()} boxes the value on each call, unless it was set with
+ * {@link #setValue(Object)}, in which case it returns exactly what was given.
+ */
+public class LongVariable extends NodeVariable<Number> {
+    private long primitive;
+
+    /**
+     * Constructor for subclasses to call.  See also {@link NodeVariable#newLong(String, long, boolean, boolean)}.
+     * @param name the variable name
+     * @param startingValue the starting value
+     * @param hasInput does this variable have an input?
+     * @param hasOutput does this variable have an input?
+     */
+    protected LongVariable(String name,long startingValue,boolean hasInput,boolean hasOutput) {
+        super(name,Number.class,null,hasInput,hasOutput);
+        this.primitive = startingValue;
+    }
+
+    @Override
+    public LongVariable createInverse() {
+        LongVariable v = new LongVariable(name,primitive,!hasInput,!hasOutput);
+        v.value = value;
+        return v;
+    }
+
+    /**
+     * Returns the value without boxing.
+     * @return the value.
+     */
+    public long getLong() {
+        return primitive;
+    }
+
+    /**
+     * Sets the value without boxing and marks this variable dirty.
+     * @param v the new value.
+     */
+    public void setLong(long v) {
+        primitive = v;
+        value = null;
+        isDirty = true;
+        notifyOwner();
+    }
+
+    /**
+     * Never writes, so any thread may call it while another updates the graph.
+     */
+    @Override
+    public Number getValue() {
+        Number boxed = value;
+        return (boxed!=null) ? boxed : (Number)primitive;
+    }
+
+    @Override
+    public void setValue(Object arg0) {
+        if(isValidType(arg0)) {
+            primitive = ((Number)arg0).longValue();
+            value = (Number)arg0;
+            isDirty = true;
+            notifyOwner();
+        }
+    }
+
+    @Override
+    protected boolean transferFrom(NodeVariable<?> from) {
+        if(!(from instanceof LongVariable)) return false;
+        LongVariable d = (LongVariable)from;
+        primitive = d.primitive;
+        value = d.value;
+        isDirty = true;
+        notifyOwner();
+        return true;
+    }
+
+    @Override
+    void restoreQuietly(Object arg0,boolean dirty,int changes) {
+        super.restoreQuietly(arg0,dirty,changes);
+        primitive = (arg0!=null) ? ((Number)arg0).longValue() : 0;
+    }
+
+    @Override
+    public void copyFrom(NodeVariable<?> other) throws IllegalArgumentException {
+        super.copyFrom(other);
+        primitive = (value!=null) ? value.longValue() : 0;
+    }
+
+    @Override
+    public void parseJSON(JSONObject jo) throws JSONException, ClassCastException {
+        super.parseJSON(jo);
+        primitive = (value!=null) ? value.longValue() : 0;
+    }
+}
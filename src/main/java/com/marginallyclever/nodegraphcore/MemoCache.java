@@ -0,0 +1,193 @@
+package com.marginallyclever.nodegraphcore;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * {@link MemoCache} remembers the outputs of a {@link PureFunction} {@link Node} for the most recent sets of input
+ * values.  When a {@link Node} becomes dirty but its inputs match a remembered set, the outputs are restored and
+ * {@link Node#update()} is not called.<br>
+ * <br>
+ * Caches are opt-in and shared by every {@link Node} of one type.  Turn one on with {@link #enable(Class, int)}.
+ * Input values are compared with {@link Object#equals(Object)}, so a cache is only useful for types whose values are
+ * immutable or compared by identity.
+ */
+public class MemoCache {
+    private static final Map<Class<? extends Node>,MemoCache> caches = new ConcurrentHashMap<>();
+
+    private final int capacity;
+
+    private final LinkedHashMap<Key,Object[]> entries;
+
+    private long hits;
+
+    private long misses;
+
+    /**
+     * Creates a cache that holds at most <code>capacity</code> sets of inputs, evicting the least recently used.
+     * @param capacity the maximum number of entries.  Must be at least 1.
+     * @throws IllegalArgumentException if capacity is less than 1.
+     */
+    public MemoCache(int capacity) throws IllegalArgumentException {
+        super();
+        if(capacity<1) throw new IllegalArgumentException("capacity must be at least 1.");
+        this.capacity = capacity;
+        this.entries = new LinkedHashMap<>(16,0.75f,true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Object[]> eldest) {
+                return size() > MemoCache.this.capacity;
+            }
+        };
+    }
+
+    /**
+     * Turns on memoization for one type of {@link Node}, replacing any previous cache for that type.
+     * @param type the type of {@link Node}.  Must implement {@link PureFunction}.
+     * @param capacity the maximum number of entries.
+     * @return the new cache.
+     * @throws IllegalArgumentException if the type is not a {@link PureFunction} or capacity is less than 1.
+     */
+    public static MemoCache enable(Class<? extends Node> type,int capacity) throws IllegalArgumentException {
+        if(!PureFunction.class.isAssignableFrom(type)) {
+            throw new IllegalArgumentException(type.getName()+" is not a PureFunction.");
+        }
+        MemoCache cache = new MemoCache(capacity);
+        caches.put(type,cache);
+        return cache;
+    }
+
+    /**
+     * Turns off memoization for one type of {@link Node}.
+     * @param type the type of {@link Node}.
+     */
+    public static void disable(Class<? extends Node> type) {
+        caches.remove(type);
+    }
+
+    /**
+     * Returns the cache for one type of {@link Node}, or null if memoization is off for that type.
+     * @param type the type of {@link Node}.
+     * @return the cache for one type of {@link Node}, or null.
+     */
+    public static MemoCache get(Class<? extends Node> type) {
+        return caches.get(type);
+    }
+
+    /**
+     * Updates the given {@link Node} through this cache.  Called by {@link Node#updateIfNotDirty()}.
+     * @param n the {@link Node} to update.
+     * @throws Exception if {@link Node#update()} fails.
+     */
+    void update(Node n) throws Exception {
+        List<NodeVariable<?>> variables = n.getVariables();
+        Key key = new Key(variables);
+
+        Object[] found;
+        synchronized(this) {
+            found = entries.get(key);
+            if(found!=null) hits++;
+            else misses++;
+        }
+
+        if(found!=null) {
+            int j=0;
+            for(NodeVariable<?> v : variables) {
+                if(v.getHasOutput()) v.restoreValue(found[j++]);
+            }
+            n.cleanAllInputs();
+            return;
+        }
+
+        n.update();
+        List<Object> outputs = new ArrayList<>();
+        for(NodeVariable<?> v : variables) {
+            if(v.getHasOutput()) outputs.add(v.getValue());
+        }
+        synchronized(this) {
+            entries.put(key,outputs.toArray());
+        }
+    }
+
+    /**
+     * Returns the maximum number of entries.
+     * @return the maximum number of entries.
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Returns the number of entries.
+     * @return the number of entries.
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Returns the number of updates that were skipped.
+     * @return the number of updates that were skipped.
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * Returns the number of updates that had to call {@link Node#update()}.
+     * @return the number of updates that had to call {@link Node#update()}.
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * Removes every entry and resets the counters.
+     */
+    public synchronized void clear() {
+        entries.clear();
+        hits = 0;
+        misses = 0;
+    }
+
+    /**
+     * The input values of one update.  Inputs that store primitives are kept as raw bits, so making a key does not
+     * box them.
+     */
+    private static final class Key {
+        private final long[] bits;
+        private final Object[] references;
+        private final int hash;
+
+        Key(List<NodeVariable<?>> variables) {
+            int count = 0;
+            for(NodeVariable<?> v : variables) {
+                if(v.getHasInput()) count++;
+            }
+            bits = new long[count];
+            references = new Object[count];
+            int i = 0;
+            for(NodeVariable<?> v : variables) {
+                if(!v.getHasInput()) continue;
+                if(v instanceof DoubleVariable) bits[i] = Double.doubleToLongBits(((DoubleVariable)v).getDouble());
+                else if(v instanceof LongVariable) bits[i] = ((LongVariable)v).getLong();
+                else if(v instanceof BooleanVariable) bits[i] = ((BooleanVariable)v).getBoolean() ? 1 : 0;
+                else references[i] = v.getValue();
+                i++;
+            }
+            hash = 31*Arrays.hashCode(bits)+Arrays.hashCode(references);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if(this==o) return true;
+            if(!(o instanceof Key)) return false;
+            Key other = (Key)o;
+            return hash==other.hash && Arrays.equals(bits,other.bits) && Arrays.equals(references,other.references);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -4,6 +4,8 @@ import com.marginallyclever.nodegraphcore.json.RectangleDAO4JSON;
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.awt.*;
 import java.util.ArrayList;
@@ -16,6 +18,8 @@ import java.util.List;
  * @since 2022-02-01
  */
 public abstract class Node {
+    private static final Logger logger = LoggerFactory.getLogger(Node.class);
+
     /**
      * The default height of the title bar.
      */
@@ -36,6 +40,16 @@ public abstract class Node {
 
     private final List<NodeVariable<?>> variables = new ArrayList<>();
 
+    /**
+     * The {@link NodeGraph} that owns this node and is told when it becomes dirty.  May be null.
+     */
+    private NodeGraph graph;
+
+    /**
+     * The error state of the last update, or null if it succeeded.
+     */
+    private volatile NodeFailure failure;
+
     /**
      * Default constructor
      * @param name the name of the class of this type of Node, for serialization and user selection.
@@ -137,11 +151,88 @@ public abstract class Node {
 
     /**
      * Runs {@link Node#update()} only if the node is considered dirty.  It is up to individual nodes to decide
-     * if they are done (no longer dirty)
+     * if they are done (no longer dirty).<br>
+     * If this is a {@link PureFunction} and a {@link MemoCache} is enabled for its type, the cache is consulted first.
      */
     public void updateIfNotDirty() throws Exception {
         if(!isDirty()) return;
-        update();
+        MemoCache cache = (this instanceof PureFunction) ? MemoCache.get(getClass()) : null;
+        if(cache!=null) cache.update(this);
+        else update();
+    }
+
+    /**
+     * Returns the error state of this node, or null if its last update succeeded.
+     * @return the error state of this node, or null.
+     */
+    public NodeFailure getFailure() {
+        return failure;
+    }
+
+    /**
+     * Returns true if the last update of this node failed and it should not be tried again yet.  See
+     * {@link NodeFailure}.
+     * @return true if this node should not be tried again yet.
+     */
+    public boolean isBackingOff() {
+        NodeFailure f = failure;
+        return f!=null && !f.mayRetry(this,System.currentTimeMillis());
+    }
+
+    /**
+     * Records that an update of this node threw.  The first failure in a row and the one that quarantines the node
+     * are logged as warnings, the rest only at debug level.  The backoff comes from the owning {@link NodeGraph}.
+     * @param e what the update threw.
+     */
+    public void recordFailure(Throwable e) {
+        NodeGraph g = graph;
+        NodeFailure previous = failure;
+        NodeFailure f = NodeFailure.next(previous,this,e,System.currentTimeMillis(),
+                g==null ? NodeGraph.DEFAULT_FAILURE_RETRY_MILLIS : g.getFailureRetryMillis(),
+                g==null ? NodeGraph.DEFAULT_FAILURE_MAX_RETRY_MILLIS : g.getFailureMaxRetryMillis(),
+                g==null ? NodeGraph.DEFAULT_FAILURE_QUARANTINE_COUNT : g.getFailureQuarantineCount());
+        failure = f;
+        if(f.isQuarantined() && (previous==null || !previous.isQuarantined())) {
+            logger.warn("{} quarantined after {} failures: {}",getUniqueName(),f.getCount(),e.toString());
+        } else if(f.getCount()==1) {
+            logger.warn("{} failed: {}",getUniqueName(),e.toString());
+        } else {
+            logger.debug("{} failed {} times: {}",getUniqueName(),f.getCount(),e.toString());
+        }
+    }
+
+    /**
+     * Forgets any failure of this node so that it is tried on the next tick, if it is dirty.
+     */
+    public void clearFailure() {
+        if(failure==null) return;
+        failure = null;
+        if(isDirty()) markDirty();
+    }
+
+    /**
+     * Returns the {@link NodeGraph} that owns this node, or null.
+     * @return the {@link NodeGraph} that owns this node, or null.
+     */
+    public NodeGraph getParentGraph() {
+        return graph;
+    }
+
+    /**
+     * Sets the {@link NodeGraph} that owns this node.  Managed by {@link NodeGraph}.
+     * @param graph the new owner.  May be null.
+     */
+    void setParentGraph(NodeGraph graph) {
+        this.graph = graph;
+    }
+
+    /**
+     * Tells the owning {@link NodeGraph}, if any, that this node needs attention on the next update.
+     * Called whenever one of its {@link NodeVariable}s becomes dirty.
+     */
+    void markDirty() {
+        NodeGraph g = graph;
+        if(g!=null) g.markDirty(this);
     }
 
     /**
@@ -198,6 +289,7 @@ public abstract class Node {
      */
     protected void addVariable(NodeVariable<?> v) {
         variables.add(v);
+        v.setOwner(this);
     }
 
     /**
@@ -206,6 +298,7 @@ public abstract class Node {
      */
     protected void removeVariable(NodeVariable<?> v) {
         variables.remove(v);
+        if(v.getOwner()==this) v.setOwner(null);
     }
 
     /**
@@ -301,6 +394,37 @@ public abstract class Node {
         rectangle.y += dy;
     }
 
+    /**
+     * Returns a copy of this {@link Node} made with {@link #create()} and {@link #copyFrom(Node)}.  The copy has the
+     * same unique ID and does not belong to any {@link NodeGraph}.
+     * @return a copy of this {@link Node}.
+     */
+    public Node deepCopy() {
+        Node copy = create();
+        copy.copyFrom(this);
+        return copy;
+    }
+
+    /**
+     * Makes this {@link Node} a copy of another of the same type: unique ID, label, bounds and every
+     * {@link NodeVariable}.  Override this to copy any other state, and call the super method.
+     * @param other the {@link Node} to copy.
+     * @throws IllegalArgumentException if the other {@link Node} is a different type or has a different number of
+     * variables.
+     */
+    protected void copyFrom(Node other) throws IllegalArgumentException {
+        if(!name.equals(other.name)) throw new IllegalArgumentException("Node types do not match: "+name+", "+other.name);
+        if(other.variables.size()!=variables.size()) {
+            throw new IllegalArgumentException("bad number of node variables.  Expected "+variables.size()+" found "+other.variables.size());
+        }
+        uniqueID = other.uniqueID;
+        label = other.label;
+        rectangle.setBounds(other.rectangle);
+        for(int i=0;i<variables.size();++i) {
+            variables.get(i).copyFrom(other.variables.get(i));
+        }
+    }
+
     public JSONObject toJSON() throws JSONException {
         JSONObject jo = new JSONObject();
         jo.put("name",name);
@@ -4,6 +4,7 @@ import org.json.JSONException;
 import org.json.JSONObject;
 
 import java.awt.*;
+import java.util.Map;
 import java.util.Objects;
 
 /**
@@ -22,6 +23,11 @@ public class NodeConnection {
     private Node outNode;
     private int outVariableIndex=-1;
 
+    /**
+     * True if the value crosses to the next tick instead of being delivered in the same tick.
+     */
+    private boolean delay;
+
     /**
      * public Constructor for subclasses to call.
      */
@@ -48,17 +54,51 @@ public class NodeConnection {
      */
     public NodeConnection(NodeConnection another) {
         this(another.inNode,another.inVariableIndex,another.outNode,another.outVariableIndex);
+        this.delay = another.delay;
+    }
+
+    /**
+     * Construct this {@link NodeConnection} with the given parameters.
+     * @param inNode the input {@link Node}
+     * @param inVariableIndex the {@link NodeVariable} index
+     * @param outNode the output {@link Node}
+     * @param outVariableIndex the output {@link NodeVariable} index
+     * @param delay true if the value should cross to the next tick.  See {@link #isDelay()}.
+     */
+    public NodeConnection(Node inNode,int inVariableIndex,Node outNode,int outVariableIndex,boolean delay) {
+        this(inNode,inVariableIndex,outNode,outVariableIndex);
+        this.delay = delay;
+    }
+
+    /**
+     * Returns true if this is a delay (feedback) connection.  A delay connection is applied after every
+     * {@link Node} has been updated, so the downstream {@link Node} sees the value on the next tick.  Delay
+     * connections are ignored when the {@link ExecutionPlan} is ordered, so they can close a feedback loop without
+     * making a cycle.
+     * @return true if this is a delay connection.
+     */
+    public boolean isDelay() {
+        return delay;
+    }
+
+    /**
+     * Sets whether this is a delay connection.  If this {@link NodeConnection} is already part of a
+     * {@link NodeGraph}, call {@link NodeGraph#invalidateExecutionPlan()} afterwards.
+     * @param delay true if the value should cross to the next tick.
+     */
+    public void setDelay(boolean delay) {
+        this.delay = delay;
     }
 
     /**
      * Send the value of upstream variables to downstream variables if the upstream is dirty.
      */
     public void applyIfDirty() {
-        if(!isValidDataType()) return;
+        if(!isInputValid() || !isOutputValid()) return;
 
         NodeVariable<?> in = getInputVariable();
         if(in.getIsDirty()) {
-            getOutputVariable().setValue(in.getValue());
+            transfer(in,getOutputVariable());
         }
     }
 
@@ -66,10 +106,18 @@ public class NodeConnection {
      * Send the value of upstream variables to downstream variables, dirty or not.
      */
     public void apply() {
-        if(!isValidDataType()) return;
+        if(!isInputValid() || !isOutputValid()) return;
 
-        NodeVariable<?> in = getInputVariable();
-        getOutputVariable().setValue(in.getValue());
+        transfer(getInputVariable(),getOutputVariable());
+    }
+
+    /**
+     * Copies primitives directly when both ends store them, otherwise passes the boxed value if the types match.
+     */
+    private static void transfer(NodeVariable<?> in, NodeVariable<?> out) {
+        if(out.transferFrom(in)) return;
+        Object value = in.getValue();
+        if(out.isValidType(value)) out.setValue(value);
     }
 
     /**
@@ -162,6 +210,7 @@ public class NodeConnection {
                 ", inVariableIndex=" + inVariableIndex +
                 ", outNode=" + (outNode==null ? "null" : outNode.getUniqueName()) +
                 ", outVariableIndex=" + outVariableIndex +
+                (delay ? ", delay=true" : "") +
                 '}';
     }
 
@@ -203,6 +252,7 @@ public class NodeConnection {
     public void set(NodeConnection nodeConnection) {
         setInput(nodeConnection.inNode,nodeConnection.inVariableIndex);
         setOutput(nodeConnection.outNode,nodeConnection.outVariableIndex);
+        delay = nodeConnection.delay;
     }
 
     @Override
@@ -251,6 +301,39 @@ public class NodeConnection {
         return (outNode==null) ? null : outNode.getVariable(outVariableIndex);
     }
 
+    /**
+     * Returns a copy of this {@link NodeConnection} attached to the copies of its {@link Node}s.  An end whose
+     * {@link Node} has no copy is left empty.  No value is sent through the copy.
+     * @param copies each original {@link Node} and its copy.
+     * @return the new {@link NodeConnection}.
+     */
+    public NodeConnection copy(Map<Node,Node> copies) {
+        NodeConnection c = new NodeConnection();
+        c.inNode = (inNode==null) ? null : copies.get(inNode);
+        c.inVariableIndex = inVariableIndex;
+        c.outNode = (outNode==null) ? null : copies.get(outNode);
+        c.outVariableIndex = outVariableIndex;
+        c.delay = delay;
+        return c;
+    }
+
+    /**
+     * Returns a new {@link NodeConnection} from the input end of one connection to the output end of another.  It
+     * is a delay connection if either of them is.  No value is sent through it.
+     * @param from supplies the input end.
+     * @param to supplies the output end.
+     * @return the new {@link NodeConnection}.
+     */
+    static NodeConnection join(NodeConnection from,NodeConnection to) {
+        NodeConnection c = new NodeConnection();
+        c.inNode = from.inNode;
+        c.inVariableIndex = from.inVariableIndex;
+        c.outNode = to.outNode;
+        c.outVariableIndex = to.outVariableIndex;
+        c.delay = from.delay || to.delay;
+        return c;
+    }
+
     public JSONObject toJSON() throws JSONException {
         JSONObject jo = new JSONObject();
         if(inNode!=null) {
@@ -261,6 +344,7 @@ public class NodeConnection {
             jo.put("outNode", outNode.getUniqueName());
             jo.put("outVariableIndex", outVariableIndex);
         }
+        if(delay) jo.put("delay",true);
         return jo;
     }
 
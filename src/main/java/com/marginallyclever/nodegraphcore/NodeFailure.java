@@ -0,0 +1,141 @@
+package com.marginallyclever.nodegraphcore;
+
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * {@link NodeFailure} is the error state of a {@link Node} whose last update threw.  It is replaced, never changed,
+ * so it can be read from any thread.<br>
+ * <br>
+ * After each failure the {@link Node} is not tried again until a delay has passed.  The delay starts at
+ * {@link NodeGraph#getFailureRetryMillis()} and doubles with each failure in a row, up to
+ * {@link NodeGraph#getFailureMaxRetryMillis()}.  After {@link NodeGraph#getFailureQuarantineCount()} failures in a
+ * row the {@link Node} is quarantined and is not tried again by time at all.  Either way it is tried on the next tick
+ * if the value of one of its inputs changes, or when {@link Node#clearFailure()} is called.
+ */
+public class NodeFailure {
+    private final Throwable exception;
+
+    private final int count;
+
+    private final long lastFailureMillis;
+
+    private final long retryAtMillis;
+
+    private final boolean quarantined;
+
+    /**
+     * The hash codes of the values of the inputs when the {@link Node} failed.  The values themselves are not kept,
+     * since they might be large images.  A value whose class does not override {@link Object#hashCode()} is told
+     * apart by identity.
+     */
+    private final int[] inputs;
+
+    private NodeFailure(Throwable exception,int count,long lastFailureMillis,long retryAtMillis,boolean quarantined,int[] inputs) {
+        super();
+        this.exception = exception;
+        this.count = count;
+        this.lastFailureMillis = lastFailureMillis;
+        this.retryAtMillis = retryAtMillis;
+        this.quarantined = quarantined;
+        this.inputs = inputs;
+    }
+
+    /**
+     * Returns the state after one more failure of the given {@link Node}.
+     * @param previous the state before, or null if the last update succeeded.
+     * @param n the {@link Node} that failed.
+     * @param exception what it threw.
+     * @param now the time of the failure, in milliseconds.
+     * @param retryMillis the first delay.
+     * @param maxRetryMillis the longest delay.
+     * @param quarantineCount the number of failures in a row that quarantine the {@link Node}.
+     * @return the new state.
+     */
+    static NodeFailure next(NodeFailure previous,Node n,Throwable exception,long now,long retryMillis,long maxRetryMillis,int quarantineCount) {
+        int count = (previous==null) ? 1 : previous.count+1;
+        long delay = retryMillis;
+        for(int i=1;i<count && delay<maxRetryMillis;++i) delay*=2;
+        delay = Math.min(delay,maxRetryMillis);
+        boolean quarantined = count>=quarantineCount;
+        return new NodeFailure(exception,count,now,quarantined ? Long.MAX_VALUE : now+delay,quarantined,inputsOf(n));
+    }
+
+    private static int[] inputsOf(Node n) {
+        List<NodeVariable<?>> list = n.getVariables();
+        int[] hashes = new int[list.size()];
+        for(int i=0;i<hashes.length;++i) {
+            NodeVariable<?> v = list.get(i);
+            if(v.getHasInput()) hashes[i] = Objects.hashCode(v.getValue());
+        }
+        return hashes;
+    }
+
+    /**
+     * Returns true if the given {@link Node} may be tried again: the delay has passed or an input has changed.  A
+     * change that keeps the same hash code is not seen, and the {@link Node} waits for the delay instead.
+     * @param n the {@link Node} that failed.
+     * @param now the current time, in milliseconds.
+     * @return true if the given {@link Node} may be tried again.
+     */
+    boolean mayRetry(Node n,long now) {
+        if(now>=retryAtMillis) return true;
+        List<NodeVariable<?>> list = n.getVariables();
+        if(list.size()!=inputs.length) return true;
+        for(int i=0;i<inputs.length;++i) {
+            NodeVariable<?> v = list.get(i);
+            if(v.getHasInput() && inputs[i]!=Objects.hashCode(v.getValue())) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Returns what the {@link Node} threw the last time it failed.
+     * @return what the {@link Node} threw the last time it failed.
+     */
+    public Throwable getException() {
+        return exception;
+    }
+
+    /**
+     * Returns the number of failures in a row.
+     * @return the number of failures in a row.
+     */
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * Returns the time of the last failure, in milliseconds since the epoch.
+     * @return the time of the last failure, in milliseconds since the epoch.
+     */
+    public long getLastFailureMillis() {
+        return lastFailureMillis;
+    }
+
+    /**
+     * Returns the time after which the {@link Node} is tried again, in milliseconds since the epoch.
+     * @return the time after which the {@link Node} is tried again, or {@link Long#MAX_VALUE} if quarantined.
+     */
+    public long getRetryAtMillis() {
+        return retryAtMillis;
+    }
+
+    /**
+     * Returns true if the {@link Node} has failed too many times in a row to be tried again by time.
+     * @return true if the {@link Node} is quarantined.
+     */
+    public boolean isQuarantined() {
+        return quarantined;
+    }
+
+    @Override
+    public String toString() {
+        return "NodeFailure{" +
+                "exception=" + exception +
+                ", count=" + count +
+                ", lastFailureMillis=" + lastFailureMillis +
+                ", quarantined=" + quarantined +
+                '}';
+    }
+}
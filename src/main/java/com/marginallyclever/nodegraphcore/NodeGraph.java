@@ -1,5 +1,6 @@
 package com.marginallyclever.nodegraphcore;
 
+import com.marginallyclever.nodegraphcore.executors.SequentialExecutor;
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
@@ -8,26 +9,148 @@ import org.slf4j.LoggerFactory;
 
 import java.awt.*;
 import java.security.InvalidParameterException;
-import java.util.ArrayList;
 import java.util.List;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /**
- * {@link NodeGraph} contains the {@link Node}s, and {@link NodeConnection}s
+ * {@link NodeGraph} contains the {@link Node}s, and {@link NodeConnection}s<br>
+ * <br>
+ * A {@link NodeGraph} may be edited on one thread while it is updated on another.  {@link #update()} holds a read
+ * lock while it runs a tick.  Every method that changes the structure holds a write lock and first waits for any
+ * tick the {@link NodeGraphExecutor} is still running in the background, so an edit never lands in a running tick.
+ * Use {@link #edit(Runnable)} to make several changes at once, such as a paste.  The structure cannot be changed from
+ * inside a tick, such as from {@link Node#update()}: those methods throw {@link IllegalStateException} instead of
+ * waiting forever for the tick to end.
  * @author Dan Royer
  * @since 2022-02-01
  */
 public class NodeGraph {
     private static final Logger logger = LoggerFactory.getLogger(NodeGraph.class);
 
+    /**
+     * The default first delay before a failed {@link Node} is tried again, in milliseconds.
+     */
+    public static final long DEFAULT_FAILURE_RETRY_MILLIS = 100;
+
+    /**
+     * The default longest delay before a failed {@link Node} is tried again, in milliseconds.
+     */
+    public static final long DEFAULT_FAILURE_MAX_RETRY_MILLIS = 30000;
+
+    /**
+     * The default number of failures in a row that quarantine a {@link Node}.
+     */
+    public static final int DEFAULT_FAILURE_QUARANTINE_COUNT = 10;
+
     /**
      * The list of all {@link Node} in this graph.
      */
-    private final List<Node> nodes = new ArrayList<>();
+    private final List<Node> nodes = new CopyOnWriteArrayList<>();
 
     /**
      * The list of all {@link NodeConnection} in this graph.
      */
-    private final List<NodeConnection> connections = new ArrayList<>();
+    private final List<NodeConnection> connections = new CopyOnWriteArrayList<>();
+
+    /**
+     * Held for writing by every change to the structure, and for reading by {@link #update()} and anything that
+     * reads the connection indexes.
+     */
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * For each hold of the write lock taken by {@link #lockForEdit()}, the outer graph that was locked with it, or
+     * this graph if none was.  Guarded by the write lock.
+     */
+    private final Deque<NodeGraph> lockedOuter = new ArrayDeque<>();
+
+    /**
+     * Every {@link NodeConnection} attached to each {@link Node}, at either end.
+     */
+    private final Map<Node,List<NodeConnection>> connectionsByNode = new HashMap<>();
+
+    /**
+     * Every {@link NodeConnection} that delivers into each input {@link NodeVariable}.
+     */
+    private final Map<NodeVariable<?>,List<NodeConnection>> connectionsByInput = new HashMap<>();
+
+    /**
+     * The cached order of execution.  null when the structure of the graph has changed since it was last built.
+     */
+    private volatile ExecutionPlan executionPlan;
+
+    /**
+     * Decides how the {@link Node}s are run in {@link #update()}.
+     */
+    private NodeGraphExecutor executor = new SequentialExecutor();
+
+    /**
+     * {@link Node}s that have become dirty since the last update.  Filled by {@link #markDirty(Node)}.
+     */
+    private final Set<Node> worklist = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Shared by every {@link NodeGraph} that has not been given a pool of its own.
+     */
+    private static final ExecutorService defaultIOPool = Executors.newCachedThreadPool(r->{
+        Thread t = new Thread(r,"NodeGraph-io");
+        t.setDaemon(true);
+        return t;
+    });
+
+    /**
+     * Where {@link AsyncNode}s do their blocking work.
+     */
+    private Executor ioPool = defaultIOPool;
+
+    /**
+     * {@link AsyncNode}s with work in flight.
+     */
+    private final Set<Node> pendingAsync = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Results of {@link AsyncNode}s waiting to be written on the update thread.
+     */
+    private final Queue<Runnable> asyncCompletions = new ConcurrentLinkedQueue<>();
+
+    /**
+     * The {@link Node} that contains this graph, if any.  It is told whenever something in this graph becomes dirty.
+     */
+    private Node parentNode;
+
+    /**
+     * True if the {@link ExecutionPlan} should include the contents of each {@link Subgraph} instead of the
+     * {@link Subgraph} itself.
+     */
+    private boolean inlineSubgraphs;
+
+    /**
+     * The {@link Subgraph}s inlined into the current {@link ExecutionPlan}.
+     */
+    private List<Subgraph> inlined = List.of();
+
+    private long failureRetryMillis = DEFAULT_FAILURE_RETRY_MILLIS;
+
+    private long failureMaxRetryMillis = DEFAULT_FAILURE_MAX_RETRY_MILLIS;
+
+    private int failureQuarantineCount = DEFAULT_FAILURE_QUARANTINE_COUNT;
+
+    /**
+     * Counts changes to the structure of this graph.  See {@link GraphSnapshot#getStructureVersion()}.
+     */
+    private volatile long structureVersion;
+
+    /**
+     * True if {@link #update()} should publish a {@link GraphSnapshot} at the end of every tick.
+     */
+    private volatile boolean publishSnapshots;
+
+    /**
+     * The latest published {@link GraphSnapshot}, or null.
+     */
+    private volatile GraphSnapshot snapshot;
 
     /**
      * Constructor for subclasses to call.  Creates an empty {@link NodeGraph}.
@@ -37,111 +160,842 @@ public class NodeGraph {
     }
 
     /**
-     * <ul>
-     * <li>Updates only dirty nodes.</li>
-     * <li>Transmits dirty node outputs to connected inputs.</li>
-     * <li>Sets all outputs to clean.</li>
-     * </ul>
-     * The method does not analyze the directed graph to run nodes in an "intelligent" way.
+     * Runs one tick of this graph with the current {@link NodeGraphExecutor}.  The default
+     * {@link SequentialExecutor} visits only the {@link Node}s on the worklist and everything downstream of them, in
+     * the order of the {@link ExecutionPlan}, so that values travel from sources to sinks in a single call.
      */
     public void update() {
+        lock.readLock().lock();
+        try {
+            ExecutionPlan plan = getExecutionPlan();
+            runAsyncCompletions();
+            // inlined nodes start their async work in their own graph, which is not updated while it is inlined.
+            for(Subgraph s : inlined) {
+                NodeGraph inner = s.getPrivateGraph();
+                if(inner!=null) inner.runAsyncCompletions();
+            }
+            executor.update(this,plan);
+            if(publishSnapshots) publishSnapshot();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Makes several changes to this graph as one.  No {@link #update()} starts or is running while they are made.
+     * @param changes the changes to make.
+     * @throws IllegalStateException if called from inside a tick.
+     */
+    public void edit(Runnable changes) throws IllegalStateException {
+        lockForEdit();
+        try {
+            changes.run();
+        } finally {
+            unlockEdit();
+        }
+    }
+
+    /**
+     * Takes the write lock, then waits for any tick that the executor is still running in the background, so that an
+     * edit never lands in a running tick.  If a graph that holds this one inlines it, that graph runs the
+     * {@link Node}s of this one in its own ticks, so it is locked first, the same way.  Release with
+     * {@link #unlockEdit()}.
+     * @throws IllegalStateException if this thread is inside a tick.  A read lock cannot become a write lock, so
+     * waiting would never end.
+     */
+    private void lockForEdit() throws IllegalStateException {
+        if(lock.getReadHoldCount()>0 && !lock.isWriteLockedByCurrentThread()) {
+            throw new IllegalStateException("the graph cannot be changed from inside a tick.");
+        }
+        NodeGraph outer = getOuterGraph();
+        if(outer!=null && outer.isInlining()) outer.lockForEdit();
+        else outer = null;
+        lock.writeLock().lock();
+        try {
+            executor.flush();
+        } catch(RuntimeException e) {
+            lock.writeLock().unlock();
+            if(outer!=null) outer.unlockEdit();
+            throw e;
+        }
+        lockedOuter.push(outer==null ? this : outer);
+    }
+
+    /**
+     * Releases what {@link #lockForEdit()} took.
+     */
+    private void unlockEdit() {
+        NodeGraph outer = lockedOuter.pop();
+        lock.writeLock().unlock();
+        if(outer!=this) outer.unlockEdit();
+    }
+
+    /**
+     * Takes a {@link GraphSnapshot} of this graph and makes it the one returned by {@link #getSnapshot()}.  Call it on
+     * the thread that updates this graph, between ticks.
+     * @return the new snapshot.
+     */
+    public GraphSnapshot publishSnapshot() {
+        GraphSnapshot s;
+        lock.readLock().lock();
+        try {
+            s = new GraphSnapshot(this);
+        } finally {
+            lock.readLock().unlock();
+        }
+        snapshot = s;
+        return s;
+    }
+
+    /**
+     * Takes a {@link GraphSnapshot} of this graph without publishing it.  Waits until no tick is running, including
+     * one the executor runs in the background, so the snapshot is never of a tick half done.
+     * @return the new snapshot.
+     * @throws IllegalStateException if called from inside a tick.
+     */
+    public GraphSnapshot takeSnapshot() throws IllegalStateException {
+        lockForEdit();
+        try {
+            return new GraphSnapshot(this);
+        } finally {
+            unlockEdit();
+        }
+    }
+
+    /**
+     * Returns the latest {@link GraphSnapshot} published by {@link #publishSnapshot()}.
+     * @return the latest snapshot, or null if none has been published.
+     */
+    public GraphSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * Sets whether {@link #update()} publishes a {@link GraphSnapshot} at the end of every tick.  Turning it off
+     * forgets the latest snapshot.  With a {@link com.marginallyclever.nodegraphcore.executors.PipelinedExecutor}
+     * the tick may still be running when it is published.
+     * @param publishSnapshots true to publish.
+     */
+    public void setPublishSnapshots(boolean publishSnapshots) {
+        this.publishSnapshots = publishSnapshots;
+        if(!publishSnapshots) snapshot = null;
+    }
+
+    /**
+     * Returns true if {@link #update()} publishes a {@link GraphSnapshot} at the end of every tick.
+     * @return true if {@link #update()} publishes a {@link GraphSnapshot} at the end of every tick.
+     */
+    public boolean getPublishSnapshots() {
+        return publishSnapshots;
+    }
+
+    /**
+     * Returns a number that changes whenever {@link Node}s or {@link NodeConnection}s are added or removed.
+     * @return a number that changes whenever the structure of this graph changes.
+     */
+    public long getStructureVersion() {
+        return structureVersion;
+    }
+
+    /**
+     * Writes the results of every {@link AsyncNode} that has finished since the last call.
+     */
+    private void runAsyncCompletions() {
+        Runnable r;
+        while((r=asyncCompletions.poll())!=null) r.run();
+    }
+
+    /**
+     * Starts the work of a dirty {@link AsyncNode} on the I/O pool.  If its previous work is still in flight the
+     * {@link Node} stays dirty and is tried again on a later tick.  Called by {@link NodeGraphExecutor}.
+     * @param n the {@link Node} to start.  Must implement {@link AsyncNode}.
+     */
+    void startAsync(Node n) {
+        startAsync(n,ioPool,pendingAsync,asyncCompletions);
+    }
+
+    /**
+     * Starts the work of a dirty {@link AsyncNode} on the given pool.  Also used by {@link GraphTemplate}, which keeps
+     * the work of each {@link GraphInstance} apart.
+     * @param n the {@link Node} to start.  Must implement {@link AsyncNode}.
+     * @param ioPool where blocking work should run.
+     * @param pending the {@link Node}s with work in flight.
+     * @param completions where to queue the code that writes the results, to be run on the update thread.
+     */
+    static void startAsync(Node n,Executor ioPool,Set<Node> pending,Queue<Runnable> completions) {
+        if(!n.isDirty() || !pending.add(n)) return;
+
+        CompletableFuture<Runnable> future;
+        try {
+            future = ((AsyncNode)n).updateAsync(ioPool);
+        } catch(Exception e) {
+            pending.remove(n);
+            n.recordFailure(e);
+            return;
+        }
+        future.whenComplete((result,error)->{
+            completions.add(()->{
+                pending.remove(n);
+                if(error!=null) {
+                    n.recordFailure(error instanceof CompletionException && error.getCause()!=null ? error.getCause() : error);
+                    // the inputs were cleaned when the work started.  dirty them again so it is tried after the backoff.
+                    for(NodeVariable<?> v : n.getVariables()) {
+                        if(v.getHasInput()) v.setIsDirty(true);
+                    }
+                } else {
+                    if(result!=null) result.run();
+                    n.clearFailure();
+                }
+            });
+        });
+    }
+
+    /**
+     * Sets how failed {@link Node}s of this graph are tried again.  See {@link NodeFailure}.
+     * @param retryMillis the first delay before a failed {@link Node} is tried again, in milliseconds.
+     * @param maxRetryMillis the longest delay, in milliseconds.  Must be at least retryMillis.
+     * @param quarantineCount the number of failures in a row that quarantine a {@link Node}.  Must be at least 1.
+     * @throws IllegalArgumentException if any argument is out of range.
+     */
+    public void setFailureBackoff(long retryMillis,long maxRetryMillis,int quarantineCount) throws IllegalArgumentException {
+        if(retryMillis<0) throw new IllegalArgumentException("retryMillis cannot be negative.");
+        if(maxRetryMillis<retryMillis) throw new IllegalArgumentException("maxRetryMillis cannot be less than retryMillis.");
+        if(quarantineCount<1) throw new IllegalArgumentException("quarantineCount must be at least 1.");
+        this.failureRetryMillis = retryMillis;
+        this.failureMaxRetryMillis = maxRetryMillis;
+        this.failureQuarantineCount = quarantineCount;
+    }
+
+    /**
+     * Returns the first delay before a failed {@link Node} is tried again, in milliseconds.
+     * @return the first delay before a failed {@link Node} is tried again, in milliseconds.
+     */
+    public long getFailureRetryMillis() {
+        return failureRetryMillis;
+    }
+
+    /**
+     * Returns the longest delay before a failed {@link Node} is tried again, in milliseconds.
+     * @return the longest delay before a failed {@link Node} is tried again, in milliseconds.
+     */
+    public long getFailureMaxRetryMillis() {
+        return failureMaxRetryMillis;
+    }
+
+    /**
+     * Returns the number of failures in a row that quarantine a {@link Node}.
+     * @return the number of failures in a row that quarantine a {@link Node}.
+     */
+    public int getFailureQuarantineCount() {
+        return failureQuarantineCount;
+    }
+
+    /**
+     * Returns every {@link Node} of this graph whose last update failed, including those inside {@link Subgraph}s
+     * that are not shared.
+     * @return every {@link Node} whose last update failed.  See {@link Node#getFailure()}.
+     */
+    public List<Node> getFailedNodes() {
+        List<Node> list = new ArrayList<>();
+        addFailedNodes(list);
+        return list;
+    }
+
+    private void addFailedNodes(List<Node> list) {
         for(Node n : nodes) {
-            try {
-                n.updateIfNotDirty();
-            } catch(Exception e) {
-                logger.debug(e.getMessage());
+            if(n.getFailure()!=null) list.add(n);
+            if(n instanceof Subgraph) {
+                NodeGraph inner = ((Subgraph)n).getPrivateGraph();
+                if(inner!=null) inner.addFailedNodes(list);
             }
         }
-        for(NodeConnection c : connections) c.applyIfDirty();
-        for(Node n : nodes) n.cleanAllOutputs();
     }
 
     /**
-     * @return a {@link List} of all the {@link Node}s within this {@link NodeGraph}.
-     * It is not a copy!  Use with caution.
+     * Forgets the failures of every {@link Node} from {@link #getFailedNodes()} so that they are tried again on the
+     * next tick.
+     */
+    public void clearFailures() {
+        for(Node n : getFailedNodes()) n.clearFailure();
+    }
+
+    /**
+     * Sets the {@link Node} that contains this graph, such as a {@link Subgraph}.
+     * @param n the containing {@link Node}, or null.
+     */
+    void setParentNode(Node n) {
+        parentNode = n;
+    }
+
+    /**
+     * Returns the number of {@link AsyncNode}s with work in flight or results not yet written.
+     * @return the number of {@link AsyncNode}s with work in flight or results not yet written.
+     */
+    public int getPendingAsyncCount() {
+        return pendingAsync.size();
+    }
+
+    /**
+     * Returns the pool where {@link AsyncNode}s do their blocking work.
+     * @return the pool where {@link AsyncNode}s do their blocking work.
+     */
+    public Executor getIOPool() {
+        return ioPool;
+    }
+
+    /**
+     * Sets the pool where {@link AsyncNode}s do their blocking work.  The caller is responsible for shutting it down.
+     * @param ioPool the new pool.
+     */
+    public void setIOPool(Executor ioPool) {
+        if(ioPool==null) throw new IllegalArgumentException("ioPool cannot be null.");
+        this.ioPool = ioPool;
+    }
+
+    /**
+     * Evaluates this graph once for every row of the given columns.  See {@link BatchEvaluator}.  Holds the write
+     * lock meanwhile, so no tick runs while {@link Node}s are updated row by row.
+     * @param inputs a column of values for some {@link SupergraphInput}s of this graph.
+     * @return a column of results for every output {@link NodeVariable} of every {@link Node} evaluated.
+     * @throws IllegalArgumentException if the graph has a cycle or the inputs are not valid.
+     * @throws IllegalStateException if a {@link Node} fails to update, or if called from inside a tick.
+     */
+    public Map<NodeVariable<?>,Object> evaluateBatch(Map<Node,Object> inputs) throws IllegalArgumentException, IllegalStateException {
+        lockForEdit();
+        try {
+            return new BatchEvaluator(this).evaluate(inputs);
+        } finally {
+            unlockEdit();
+        }
+    }
+
+    /**
+     * Returns the {@link NodeGraphExecutor} used by {@link #update()}.
+     * @return the {@link NodeGraphExecutor} used by {@link #update()}.
+     */
+    public NodeGraphExecutor getExecutor() {
+        return executor;
+    }
+
+    /**
+     * Sets the {@link NodeGraphExecutor} used by {@link #update()}.
+     * @param executor the new executor.
+     * @throws IllegalStateException if called from inside a tick.
+     */
+    public void setExecutor(NodeGraphExecutor executor) {
+        if(executor==null) throw new IllegalArgumentException("executor cannot be null.");
+        lockForEdit();
+        try {
+            this.executor = executor;
+        } finally {
+            unlockEdit();
+        }
+    }
+
+    /**
+     * Returns the cached {@link ExecutionPlan}, building a new one if the structure of this graph has changed.
+     * @return the cached {@link ExecutionPlan}
+     */
+    public ExecutionPlan getExecutionPlan() {
+        ExecutionPlan plan = executionPlan;
+        if(plan!=null) return plan;
+
+        lock.readLock().lock();
+        try {
+            if(inlineSubgraphs) {
+                SubgraphFlattener flat = new SubgraphFlattener(this);
+                inlined = flat.inlined;
+                for(Subgraph s : inlined) s.pushInputs();
+                plan = new ExecutionPlan(flat.nodes,flat.connections);
+            } else {
+                inlined = List.of();
+                plan = new ExecutionPlan(nodes,connections);
+            }
+            if(!plan.getCycles().isEmpty()) {
+                logger.warn("graph has {} cycle(s).  The result depends on the order of the nodes.  Use a delay connection to close a feedback loop.",plan.getCycles().size());
+            }
+            executionPlan = plan;
+        } finally {
+            lock.readLock().unlock();
+        }
+        return plan;
+    }
+
+    /**
+     * Returns every cycle in this graph.  Each cycle is a strongly connected group of {@link Node}s joined by
+     * {@link NodeConnection}s that are not delay connections.  A graph with cycles gives results that depend on the
+     * order of the {@link Node}s - close feedback loops with {@link NodeConnection#isDelay()} connections instead.
+     * @return a list of cycles.  Empty if the graph has none.
+     */
+    public List<List<Node>> getCycles() {
+        return getExecutionPlan().getCycles();
+    }
+
+    /**
+     * Discards the cached {@link ExecutionPlan}.  Every method of {@link NodeGraph} that changes the structure calls
+     * this for you.  To change the order of the {@link Node}s use {@link #moveNode(Node, int)}.  Like any edit it
+     * waits for the running tick to end.
+     * @throws IllegalStateException if called from inside a tick.
+     */
+    public void invalidateExecutionPlan() throws IllegalStateException {
+        lockForEdit();
+        try {
+            discardPlan();
+        } finally {
+            unlockEdit();
+        }
+    }
+
+    /**
+     * Discards the cached {@link ExecutionPlan}, and that of every graph that inlines this one.  Call with the lock
+     * taken by {@link #lockForEdit()}, which also holds those graphs.
+     */
+    private void discardPlan() {
+        executionPlan = null;
+        structureVersion++;
+        NodeGraph outer = getOuterGraph();
+        if(outer!=null && outer.isInlining()) outer.discardPlan();
+    }
+
+    /**
+     * Returns true if {@link Subgraph}s are inlined into the {@link ExecutionPlan}.
+     * @return true if {@link Subgraph}s are inlined into the {@link ExecutionPlan}.
+     */
+    public boolean getInlineSubgraphs() {
+        return inlineSubgraphs;
+    }
+
+    /**
+     * Sets whether {@link Subgraph}s are inlined into the {@link ExecutionPlan}.  When on, the plan holds the
+     * {@link Node}s of every {@link Subgraph}, at any depth, in place of the {@link Subgraph} itself.  Connections into and out of the {@link Subgraph} are joined to the inner ones, so
+     * values go straight from producer to consumer instead of being copied across each boundary, and there is no
+     * nested {@link #update()} per {@link Subgraph}.  The editor still shows each {@link Subgraph} folded.<br>
+     * <br>
+     * While inlined, the exposed outputs of a {@link Subgraph} are copied out of its inner graph at the end of each
+     * tick.  Each {@link Subgraph} that shares its inner graph (see {@link Subgraph#isShared()}) is given a private
+     * copy, so inlining gives up the memory saved by sharing.  Copies made once inlining is off may share again.
+     * @param inlineSubgraphs true to inline.
+     */
+    public void setInlineSubgraphs(boolean inlineSubgraphs) throws IllegalStateException {
+        lockForEdit();
+        try {
+            if(this.inlineSubgraphs==inlineSubgraphs) return;
+            this.inlineSubgraphs = inlineSubgraphs;
+            discardPlan();
+        } finally {
+            unlockEdit();
+        }
+    }
+
+    /**
+     * Returns true if this graph or any graph that holds it inlines {@link Subgraph}s.
+     */
+    boolean isInlining() {
+        if(inlineSubgraphs) return true;
+        NodeGraph outer = getOuterGraph();
+        return outer!=null && outer.isInlining();
+    }
+
+    /**
+     * Returns the graph that holds the {@link Node} that contains this graph, or null.
+     */
+    private NodeGraph getOuterGraph() {
+        Node parent = parentNode;
+        return parent==null ? null : parent.getParentGraph();
+    }
+
+    /**
+     * Adds a {@link Node} to the worklist of this graph so that it is considered on the next {@link #update()}.
+     * {@link NodeVariable}s call this through their owning {@link Node} whenever they become dirty.
+     * @param n the dirty {@link Node}.
+     */
+    public void markDirty(Node n) {
+        worklist.add(n);
+        Node parent = parentNode;
+        if(parent!=null) {
+            parent.markDirty();
+            // an inlined node is scheduled by the graph that inlined it.
+            NodeGraph outer = parent.getParentGraph();
+            if(outer!=null && outer.isInlining()) outer.markDirty(n);
+        }
+        if(n instanceof Subgraph && isInlining()) ((Subgraph)n).pushInputs();
+        ExecutionPlan plan = executionPlan;
+        if(plan!=null) plan.constantChanged(n);
+    }
+
+    /**
+     * Removes and returns every {@link Node} on the worklist.
+     * @return every {@link Node} that was on the worklist, in no particular order.
+     */
+    public List<Node> drainWorklist() {
+        List<Node> list = new ArrayList<>(worklist.size());
+        Iterator<Node> it = worklist.iterator();
+        while(it.hasNext()) {
+            list.add(it.next());
+            it.remove();
+        }
+        return list;
+    }
+
+    /**
+     * Copies the exposed outputs of every inlined {@link Subgraph} out of its inner graph, so that the folded
+     * {@link Subgraph} shows the values of this tick.
+     */
+    void pullInlinedOutputs() {
+        for(Subgraph s : inlined) s.pullOutputs();
+    }
+
+    /**
+     * Returns true if nothing has become dirty since the last {@link #update()} and no {@link AsyncNode} is waiting.
+     * @return true if nothing has become dirty since the last {@link #update()} and no {@link AsyncNode} is waiting.
+     */
+    public boolean isQuiescent() {
+        if(!pendingAsync.isEmpty()) return false;
+        for(Subgraph s : inlined) {
+            NodeGraph inner = s.getPrivateGraph();
+            if(inner!=null && !inner.pendingAsync.isEmpty()) return false;
+        }
+        return worklist.isEmpty();
+    }
+
+    /**
+     * @return a {@link List} of all the {@link Node}s within this {@link NodeGraph}.  It is not a copy, but it is
+     * safe to iterate while another thread edits the graph: each iterator sees the list as it was when it started.
+     * Change the list only with the methods of {@link NodeGraph}.
      */
     public List<Node> getNodes() {
         return nodes;
     }
 
     /**
-     * @return a {@link List} of all the {@link NodeConnection}s within this {@link NodeGraph}.
-     * It is not a copy!  Use with caution.
+     * @return a {@link List} of all the {@link NodeConnection}s within this {@link NodeGraph}.  It is not a copy, but
+     * it is safe to iterate while another thread edits the graph: each iterator sees the list as it was when it
+     * started.  Add and remove connections with the methods of {@link NodeGraph} so that the connection indexes stay
+     * correct.
      */
     public List<NodeConnection> getConnections() {
         return connections;
     }
 
     /**
-     * Adds a node to this graph.
+     * Adds a node to this graph.  If the node does not yet belong to a graph then this graph becomes its owner and
+     * will be told when the node becomes dirty.
      * @param node the subject
      * @return the same node for convenient method chaining.
+     * @throws IllegalStateException if called from inside a tick.
      */
     public Node add(Node node) {
-        nodes.add(node);
-        return node;
+        lockForEdit();
+        try {
+            nodes.add(node);
+            if(node.getParentGraph()==null) node.setParentGraph(this);
+            markDirty(node);
+            discardPlan();
+            return node;
+        } finally {
+            unlockEdit();
+        }
+    }
+
+    /**
+     * Adds many {@link Node}s to this graph at once, like calling {@link #add(Node)} for each.  Much faster on a large
+     * graph, since the list of {@link Node}s is copied only once.
+     * @param list the {@link Node}s to add.
+     * @throws IllegalStateException if called from inside a tick.
+     */
+    public void addNodes(Collection<Node> list) {
+        lockForEdit();
+        try {
+            nodes.addAll(list);
+            for(Node n : list) {
+                if(n.getParentGraph()==null) n.setParentGraph(this);
+                markDirty(n);
+            }
+            discardPlan();
+        } finally {
+            unlockEdit();
+        }
     }
 
     /**
      * Remove a {@link Node} and all associated {@link NodeConnection}s from the model.
      * @param n the subject to be removed.
+     * @throws IllegalStateException if called from inside a tick.
      */
     public void remove(Node n) {
-        nodes.remove(n);
-        removeConnectionsToNode(n);
+        lockForEdit();
+        try {
+            nodes.remove(n);
+            release(n);
+            removeConnectionsToNode(n);
+            discardPlan();
+        } finally {
+            unlockEdit();
+        }
+    }
+
+    /**
+     * Remove many {@link Node}s and all associated {@link NodeConnection}s from the model in one pass.
+     * Much faster than calling {@link #remove(Node)} for each one on a large graph.
+     * @param list the subjects to be removed.
+     * @throws IllegalStateException if called from inside a tick.
+     */
+    public void removeNodes(Collection<Node> list) {
+        lockForEdit();
+        try {
+            Set<Node> doomed = Collections.newSetFromMap(new IdentityHashMap<>());
+            doomed.addAll(list);
+            nodes.removeIf(doomed::contains);
+
+            Set<NodeConnection> attached = Collections.newSetFromMap(new IdentityHashMap<>());
+            for(Node n : doomed) {
+                release(n);
+                attached.addAll(getConnectionsAttachedTo(n));
+            }
+            removeConnections(attached);
+            discardPlan();
+        } finally {
+            unlockEdit();
+        }
     }
 
     /**
      * Adds a {@link NodeConnection} without checking if it already exists.
      * @param connection the item to add.
      * @return the same connection for convenient method chaining.
+     * @throws IllegalStateException if called from inside a tick.
      */
     public NodeConnection add(NodeConnection connection) {
-        connections.add(connection);
-        return connection;
+        lockForEdit();
+        try {
+            connections.add(connection);
+            index(connection);
+            Node n = connection.getOutNode();
+            if(n!=null) markDirty(n);
+            discardPlan();
+            return connection;
+        } finally {
+            unlockEdit();
+        }
+    }
+
+    /**
+     * Adds many {@link NodeConnection}s to this graph at once, like calling {@link #add(NodeConnection)} for each.
+     * Much faster on a large graph, since the list of {@link NodeConnection}s is copied only once.
+     * @param list the {@link NodeConnection}s to add.
+     * @throws IllegalStateException if called from inside a tick.
+     */
+    public void addConnections(Collection<NodeConnection> list) {
+        lockForEdit();
+        try {
+            connections.addAll(list);
+            for(NodeConnection c : list) {
+                index(c);
+                Node n = c.getOutNode();
+                if(n!=null) markDirty(n);
+            }
+            discardPlan();
+        } finally {
+            unlockEdit();
+        }
     }
 
     /**
      * Remove one {@link NodeConnection} from this graph.
      * @param c the item to remove.
+     * @throws IllegalStateException if called from inside a tick.
      */
     public void remove(NodeConnection c) {
-        connections.remove(c);
+        lockForEdit();
+        try {
+            NodeConnection found = findIndexed(c);
+            if(found==null) return;
+            connections.removeIf(x->x==found);
+            unindex(found);
+            discardPlan();
+        } finally {
+            unlockEdit();
+        }
+    }
+
+    /**
+     * Remove many {@link NodeConnection}s from this graph in one pass.
+     * @param list the items to remove.
+     * @throws IllegalStateException if called from inside a tick.
+     */
+    public void removeConnections(Collection<NodeConnection> list) {
+        lockForEdit();
+        try {
+            if(list.isEmpty()) return;
+            Set<NodeConnection> doomed = Collections.newSetFromMap(new IdentityHashMap<>());
+            doomed.addAll(list);
+            connections.removeIf(doomed::contains);
+            for(NodeConnection c : doomed) unindex(c);
+            discardPlan();
+        } finally {
+            unlockEdit();
+        }
+    }
+
+    /**
+     * Finds a {@link NodeConnection} of this graph equal to the given one with the indexes, instead of searching the
+     * whole list.  Call while holding the lock.
+     * @param c the connection to look for.
+     * @return the matching connection of this graph, or null.
+     */
+    private NodeConnection findIndexed(NodeConnection c) {
+        NodeVariable<?> v = getIndexableOutVariable(c);
+        List<NodeConnection> list;
+        if(v!=null) list = connectionsByInput.get(v);
+        else if(c.getInNode()!=null) list = connectionsByNode.get(c.getInNode());
+        else list = connections;
+        if(list==null) return null;
+        for(NodeConnection x : list) {
+            if(c.equals(x)) return x;
+        }
+        return null;
+    }
+
+    /**
+     * Adds a {@link NodeConnection} to the indexes.
+     * {@link NodeConnection}s must not be moved to other {@link Node}s while they are part of a graph.
+     */
+    private void index(NodeConnection c) {
+        Node a = c.getInNode();
+        Node b = c.getOutNode();
+        if(a!=null) connectionsByNode.computeIfAbsent(a,k->new ArrayList<>()).add(c);
+        if(b!=null && b!=a) connectionsByNode.computeIfAbsent(b,k->new ArrayList<>()).add(c);
+        NodeVariable<?> v = getIndexableOutVariable(c);
+        if(v!=null) connectionsByInput.computeIfAbsent(v,k->new ArrayList<>()).add(c);
+    }
+
+    /**
+     * Removes a {@link NodeConnection} from the indexes.
+     */
+    private void unindex(NodeConnection c) {
+        Node a = c.getInNode();
+        Node b = c.getOutNode();
+        if(a!=null) removeFromIndex(connectionsByNode,a,c);
+        if(b!=null && b!=a) removeFromIndex(connectionsByNode,b,c);
+        NodeVariable<?> v = getIndexableOutVariable(c);
+        if(v!=null) removeFromIndex(connectionsByInput,v,c);
+    }
+
+    private static <K> void removeFromIndex(Map<K,List<NodeConnection>> map,K key,NodeConnection c) {
+        List<NodeConnection> list = map.get(key);
+        if(list==null) return;
+        for(int i=0;i<list.size();++i) {
+            if(list.get(i)==c) {
+                list.remove(i);
+                break;
+            }
+        }
+        if(list.isEmpty()) map.remove(key);
+    }
+
+    private static NodeVariable<?> getIndexableOutVariable(NodeConnection c) {
+        Node n = c.getOutNode();
+        int i = c.getOutVariableIndex();
+        if(n==null || i<0 || i>=n.getNumVariables()) return null;
+        return n.getVariable(i);
     }
 
     /**
-     * Add all {@link Node}s and {@link NodeConnection}s from one model to this model.
+     * Add all {@link Node}s and {@link NodeConnection}s from one model to this model.  This graph becomes the owner
+     * of every added {@link Node}.
      * @param nodeGraph the model to add.
+     * @throws IllegalStateException if called from inside a tick.
      */
     public void add(NodeGraph nodeGraph) {
-        if(nodeGraph==null) throw new IllegalArgumentException("nodeGraph cannot be null.");
-        assignNewUniqueIDs(0);
-        nodeGraph.assignNewUniqueIDs(Node.getUniqueIDSource());
+        lockForEdit();
+        try {
+            if(nodeGraph==null) throw new IllegalArgumentException("nodeGraph cannot be null.");
+            assignNewUniqueIDs(0);
+            nodeGraph.assignNewUniqueIDs(Node.getUniqueIDSource());
 
-        nodes.addAll(nodeGraph.nodes);
-        connections.addAll(nodeGraph.connections);
+            nodes.addAll(nodeGraph.nodes);
+            connections.addAll(nodeGraph.connections);
+            for(NodeConnection c : nodeGraph.connections) index(c);
+            for(Node n : nodeGraph.nodes) {
+                n.setParentGraph(this);
+                markDirty(n);
+            }
+            discardPlan();
 
-        bumpUpIndexableID();
+            bumpUpIndexableID();
+        } finally {
+            unlockEdit();
+        }
     }
 
+    /**
+     * Remove every {@link Node} and {@link NodeConnection} of one model from this model.
+     * @param nodeGraph the model to remove.
+     * @throws IllegalStateException if called from inside a tick.
+     */
     public void remove(NodeGraph nodeGraph) {
-        if(nodeGraph==null) throw new IllegalArgumentException("nodeGraph cannot be null.");
-        nodes.removeAll(nodeGraph.nodes);
-        connections.removeAll(nodeGraph.connections);
+        lockForEdit();
+        try {
+            if(nodeGraph==null) throw new IllegalArgumentException("nodeGraph cannot be null.");
+            removeConnections(nodeGraph.connections);
+            removeNodes(nodeGraph.nodes);
+        } finally {
+            unlockEdit();
+        }
+    }
+
+
+    /**
+     * Moves a {@link Node} to a new position in the list from {@link #getNodes()}.
+     * @param n the {@link Node} to move.
+     * @param index the new position.
+     * @throws IllegalArgumentException if the {@link Node} is not in this graph or the index is out of range.
+     * @throws IllegalStateException if called from inside a tick.
+     */
+    public void moveNode(Node n,int index) throws IllegalArgumentException {
+        lockForEdit();
+        try {
+            if(!nodes.contains(n)) throw new IllegalArgumentException("node is not in this graph.");
+            if(index<0 || index>=nodes.size()) throw new IllegalArgumentException("index out of range.");
+            nodes.remove(n);
+            nodes.add(index,n);
+            discardPlan();
+        } finally {
+            unlockEdit();
+        }
     }
 
+    /**
+     * Stop tracking a {@link Node} that has left this graph.
+     * @param n the {@link Node} that was removed.
+     */
+    private void release(Node n) {
+        if(n.getParentGraph()==this) n.setParentGraph(null);
+        worklist.remove(n);
+    }
 
     /**
      * Remove all {@link NodeConnection}s from the model associated with a given {@link Node}
      * @param n the subject from which all connections should be removed.
+     * @throws IllegalStateException if called from inside a tick.
      */
     public void removeConnectionsToNode(Node n) {
-        ArrayList<NodeConnection> toKeep = new ArrayList<>();
-        for(NodeConnection c : connections) {
-            if(!c.isConnectedTo(n)) toKeep.add(c);
+        removeConnections(getConnectionsAttachedTo(n));
+    }
+
+    /**
+     * Returns every {@link NodeConnection} in this graph attached at either end to the given {@link Node}.
+     * @param n the subject
+     * @return a new list of every {@link NodeConnection} attached at either end to the given {@link Node}.
+     */
+    public List<NodeConnection> getConnectionsAttachedTo(Node n) {
+        lock.readLock().lock();
+        try {
+            List<NodeConnection> list = connectionsByNode.get(n);
+            return list==null ? new ArrayList<>() : new ArrayList<>(list);
+        } finally {
+            lock.readLock().unlock();
         }
-        connections.clear();
-        connections.addAll(toKeep);
     }
 
     /**
@@ -150,10 +1004,18 @@ public class NodeGraph {
      * @return returns the matching {@link NodeConnection} or null.
      */
     public NodeConnection getMatchingConnection(NodeConnection connection) {
-        for(NodeConnection c : connections) {
-            if(c.equals(connection)) return c;
+        lock.readLock().lock();
+        try {
+            Node n = connection.getInNode()!=null ? connection.getInNode() : connection.getOutNode();
+            List<NodeConnection> list = connectionsByNode.get(n);
+            if(list==null) return null;
+            for(NodeConnection c : list) {
+                if(c.equals(connection)) return c;
+            }
+            return null;
+        } finally {
+            lock.readLock().unlock();
         }
-        return null;
     }
 
     @Override
@@ -166,10 +1028,23 @@ public class NodeGraph {
 
     /**
      * Empty the model.
+     * @throws IllegalStateException if called from inside a tick.
      */
     public void clear() {
-        nodes.clear();
-        connections.clear();
+        lockForEdit();
+        try {
+            for(Node n : nodes) {
+                if(n.getParentGraph()==this) n.setParentGraph(null);
+            }
+            nodes.clear();
+            connections.clear();
+            connectionsByNode.clear();
+            connectionsByInput.clear();
+            worklist.clear();
+            discardPlan();
+        } finally {
+            unlockEdit();
+        }
     }
 
     /**
@@ -232,19 +1107,30 @@ public class NodeGraph {
     /**
      * Find and remove any {@link NodeConnection} that connects to the input side of a given {@link NodeVariable}.
      * @param outVariable the {@link NodeVariable} with an input to be isolated.
+     * @throws IllegalStateException if called from inside a tick.
      */
     public void removeAllConnectionsInto(NodeVariable<?> outVariable) {
-        connections.removeAll(getAllConnectionsInto(outVariable));
+        lockForEdit();
+        try {
+            removeConnections(getAllConnectionsInto(outVariable));
+        } finally {
+            unlockEdit();
+        }
     }
 
+    /**
+     * Returns every {@link NodeConnection} that delivers into the given {@link NodeVariable}.
+     * @param outVariable the input {@link NodeVariable} of some {@link Node}.
+     * @return a new list of every {@link NodeConnection} that delivers into the given {@link NodeVariable}.
+     */
     public List<NodeConnection> getAllConnectionsInto(NodeVariable<?> outVariable) {
-        ArrayList<NodeConnection> list = new ArrayList<>();
-
-        for(NodeConnection c : connections) {
-            if(c.getOutVariable() == outVariable) list.add(c);
+        lock.readLock().lock();
+        try {
+            List<NodeConnection> list = connectionsByInput.get(outVariable);
+            return list==null ? new ArrayList<>() : new ArrayList<>(list);
+        } finally {
+            lock.readLock().unlock();
         }
-
-        return list;
     }
 
     private void assignNewUniqueIDs(int startingIndex) {
@@ -252,13 +1138,30 @@ public class NodeGraph {
     }
 
     /**
-     * Returns a deep copy of this {@link NodeGraph} by using the JSON serialization methods.
+     * Returns a deep copy of this {@link NodeGraph}.  Every {@link Node} is copied with {@link Node#deepCopy()} and
+     * every {@link NodeConnection} is attached to the copies.  Values are copied with {@link ValueCopier}.
      * @return the {@link NodeGraph} copy
      */
     public NodeGraph deepCopy() {
-        NodeGraph copy = new NodeGraph();
-        copy.parseJSON(toJSON());
-        return copy;
+        lock.readLock().lock();
+        try {
+            NodeGraph copy = new NodeGraph();
+            Map<Node,Node> copies = new IdentityHashMap<>();
+            List<Node> nodeCopies = new ArrayList<>(nodes.size());
+            for(Node n : nodes) {
+                Node c = n.deepCopy();
+                copies.put(n,c);
+                nodeCopies.add(c);
+            }
+            copy.addNodes(nodeCopies);
+            List<NodeConnection> connectionCopies = new ArrayList<>(connections.size());
+            for(NodeConnection c : connections) connectionCopies.add(c.copy(copies));
+            copy.addConnections(connectionCopies);
+            copy.bumpUpIndexableID();
+            return copy;
+        } finally {
+            lock.readLock().unlock();
+        }
     }
 
     /**
@@ -349,34 +1252,56 @@ public class NodeGraph {
     }
 
     public JSONObject toJSON() {
-        JSONObject jo = new JSONObject();
-        jo.put("nodes",getAllNodesAsJSON());
-        jo.put("connections",getAllNodeConnectionsAsJSON());
-        return jo;
+        lock.readLock().lock();
+        try {
+            JSONObject jo = new JSONObject();
+            jo.put("nodes",getAllNodesAsJSON());
+            jo.put("connections",getAllNodeConnectionsAsJSON());
+            return jo;
+        } finally {
+            lock.readLock().unlock();
+        }
     }
 
+    /**
+     * Replaces the contents of this graph with those described by the given JSON.
+     * @param jo the JSON to parse.
+     * @throws JSONException if the JSON is not a graph.
+     * @throws IllegalStateException if called from inside a tick.
+     */
     public void parseJSON(JSONObject jo) throws JSONException {
-        clear();
-        parseAllNodesFromJSON(jo.getJSONArray("nodes"));
-        parseAllNodeConnectionsFromJSON(jo.getJSONArray("connections"));
-        bumpUpIndexableID();
+        lockForEdit();
+        try {
+            clear();
+            parseAllNodesFromJSON(jo.getJSONArray("nodes"));
+            parseAllNodeConnectionsFromJSON(jo.getJSONArray("connections"));
+            bumpUpIndexableID();
+        } finally {
+            unlockEdit();
+        }
     }
 
     private void parseAllNodesFromJSON(JSONArray arr) throws JSONException {
+        List<Node> list = new ArrayList<>(arr.length());
         for (Object element : arr) {
             JSONObject o = (JSONObject)element;
             Node n = NodeFactory.createNode(o.getString("name"));
             n.parseJSON(o);
-            add(n);
+            list.add(n);
         }
+        addNodes(list);
     }
 
     private void parseAllNodeConnectionsFromJSON(JSONArray arr) throws JSONException {
+        Map<String,Node> byName = new HashMap<>();
+        for(Node n : nodes) byName.putIfAbsent(n.getUniqueName(),n);
+        List<NodeConnection> list = new ArrayList<>(arr.length());
         for (Object o : arr) {
             NodeConnection c = new NodeConnection();
-            parseOneConnectionFromJSON(c, (JSONObject)o);
-            add(c);
+            parseOneConnectionFromJSON(c, (JSONObject)o, byName);
+            list.add(c);
         }
+        addConnections(list);
     }
 
     /**
@@ -384,15 +1309,17 @@ public class NodeGraph {
      * nodes to find the one with a matching {@code getUniqueName()}.
      * @param c the connection to parse into.
      * @param jo the JSON to parse.
+     * @param byName every {@link Node} of this graph by {@code getUniqueName()}.
      */
-    private void parseOneConnectionFromJSON(NodeConnection c, JSONObject jo) {
+    private void parseOneConnectionFromJSON(NodeConnection c, JSONObject jo, Map<String,Node> byName) {
+        c.setDelay(jo.optBoolean("delay",false));
         if(jo.has("inNode")) {
-            Node n = findNodeWithUniqueName(jo.getString("inNode"));
+            Node n = byName.get(jo.getString("inNode"));
             int i = jo.getInt("inVariableIndex");
             c.setInput(n,i);
         }
         if(jo.has("outNode")) {
-            Node n = findNodeWithUniqueName(jo.getString("outNode"));
+            Node n = byName.get(jo.getString("outNode"));
             int i = jo.getInt("outVariableIndex");
             c.setOutput(n,i);
         }
@@ -462,20 +1389,27 @@ public class NodeGraph {
      * @return a list of connections that have exactly <code>count</code> connections to the selected {@link Node}s.
      */
     private List<NodeConnection> getConnectionsCounted(List<Node> selectedNodes,int count) {
-        ArrayList<NodeConnection> found = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            Set<Node> selected = Collections.newSetFromMap(new IdentityHashMap<>());
+            selected.addAll(selectedNodes);
+            Set<NodeConnection> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+            ArrayList<NodeConnection> found = new ArrayList<>();
 
-        for(NodeConnection c : getConnections()) {
-            int hits=0;
             for(Node n : selectedNodes) {
-                if(c.isConnectedTo(n)) {
-                    hits++;
-                    if(hits==2) break;
+                List<NodeConnection> list = connectionsByNode.get(n);
+                if(list==null) continue;
+                for(NodeConnection c : list) {
+                    if(!visited.add(c)) continue;
+                    Node a = c.getInNode();
+                    Node b = c.getOutNode();
+                    int hits = (selected.contains(a) ? 1 : 0) + (b!=a && selected.contains(b) ? 1 : 0);
+                    if(hits==count) found.add(c);
                 }
             }
-            if(hits==count) {
-                found.add(c);
-            }
+            return found;
+        } finally {
+            lock.readLock().unlock();
         }
-        return found;
     }
 }
@@ -0,0 +1,123 @@
+package com.marginallyclever.nodegraphcore;
+
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+
+/**
+ * A {@link NodeGraphExecutor} decides how the {@link Node}s of a {@link NodeGraph} are run during one call to
+ * {@link NodeGraph#update()}.  Set one with {@link NodeGraph#setExecutor(NodeGraphExecutor)}.
+ * See the <code>com.marginallyclever.nodegraphcore.executors</code> package for the available strategies.
+ */
+public abstract class NodeGraphExecutor {
+    private final LongAdder updateCount = new LongAdder();
+
+    /**
+     * Constructor for subclasses to call.
+     */
+    protected NodeGraphExecutor() {
+        super();
+    }
+
+    /**
+     * Run one tick of the given graph.  When this method returns every dirty {@link Node} reachable in the plan has
+     * been updated and all outputs are clean.  An executor that overlaps ticks may return while the tick is still
+     * running, and then must finish it in {@link #flush()}.
+     * @param graph the graph being updated.
+     * @param plan the current {@link ExecutionPlan} of the graph.
+     */
+    public abstract void update(NodeGraph graph, ExecutionPlan plan);
+
+    /**
+     * Waits until every tick started by {@link #update(NodeGraph, ExecutionPlan)} has finished.  {@link NodeGraph}
+     * calls it before every edit.  Does nothing unless the executor returns from
+     * {@link #update(NodeGraph, ExecutionPlan)} before the tick is done.
+     */
+    public void flush() {}
+
+    /**
+     * Runs {@link Node#updateIfNotDirty()} and records any failure without stopping the rest of the graph.
+     * A {@link Node} that is backing off after a failure is skipped and stays dirty.  See {@link NodeFailure}.
+     * An {@link AsyncNode} that belongs to a graph is started on the I/O pool of that graph instead.
+     * @param n the {@link Node} to update.
+     */
+    protected void updateNode(Node n) {
+        if(!n.isDirty() || n.isBackingOff()) return;
+        updateCount.increment();
+        NodeGraph graph = n.getParentGraph();
+        if(n instanceof AsyncNode && graph!=null) {
+            graph.startAsync(n);
+            return;
+        }
+        try {
+            n.updateIfNotDirty();
+            n.clearFailure();
+        } catch(Exception e) {
+            n.recordFailure(e);
+        }
+    }
+
+    /**
+     * Returns the number of dirty {@link Node}s this executor has updated through {@link #updateNode(Node)}.
+     * {@link Node}s that an executor evaluates some other way, such as compiled code, are not counted.
+     * @return the number of {@link Node}s updated so far.
+     */
+    public long getUpdateCount() {
+        return updateCount.sum();
+    }
+
+    /**
+     * Updates every constant {@link Node} in the plan, but only if one of them has changed since the last fold.
+     * Executors that call this can skip the constant {@link Node}s for the rest of the tick.
+     * See {@link ExecutionPlan#isConstant(Node)}.
+     * @param plan the plan being executed.
+     */
+    protected void foldConstants(ExecutionPlan plan) {
+        if(!plan.isFoldPending()) return;
+        for(Node n : plan.getConstantOrder()) {
+            for(NodeConnection c : plan.getConnectionsInto(n)) c.applyIfDirty();
+            updateNode(n);
+        }
+        plan.foldDone();
+    }
+
+    /**
+     * Ends a tick that visited every {@link Node} in the plan.  Applies the connections that close a cycle, sets all
+     * outputs to clean, and leaves on the worklist only the {@link Node}s that are still dirty.
+     * @param graph the graph being updated.
+     * @param plan the plan being executed.
+     */
+    protected void finishTick(NodeGraph graph, ExecutionPlan plan) {
+        for(NodeConnection c : plan.getRemainingConnections()) c.applyIfDirty();
+        for(Node n : plan.getOrder()) n.cleanAllOutputs();
+        carryOverDirtyNodes(graph,plan);
+    }
+
+    /**
+     * Empties the worklist of the graph, then puts back only the {@link Node}s that are still dirty so that they
+     * are tried again on the next tick.
+     * @param graph the graph being updated.
+     * @param plan the plan of the tick that just ended.
+     */
+    protected void carryOverDirtyNodes(NodeGraph graph, ExecutionPlan plan) {
+        carryOverDirtyNodes(graph,plan,n->true);
+    }
+
+    /**
+     * Like {@link #carryOverDirtyNodes(NodeGraph, ExecutionPlan)}, but a dirty {@link Node} is only put back if the
+     * filter accepts it.  For executors that leave some {@link Node}s dirty on purpose.
+     * @param graph the graph being updated.
+     * @param plan the plan of the tick that just ended.  Not read from the graph, which may be waiting to be edited.
+     * @param filter accepts the {@link Node}s that should be tried again on the next tick.
+     */
+    protected void carryOverDirtyNodes(NodeGraph graph, ExecutionPlan plan, Predicate<Node> filter) {
+        // before draining, because copying an output out puts its Subgraph on the worklist.
+        graph.pullInlinedOutputs();
+        for(Node n : graph.drainWorklist()) {
+            // a Subgraph that has been inlined is not in the plan and is never updated.
+            if(!n.isDirty() || plan.indexOf(n)<0 || !filter.test(n)) continue;
+            // a quarantined node waits for a change to its inputs, which puts it back on the worklist.
+            NodeFailure f = n.getFailure();
+            if(f==null || !f.isQuarantined()) graph.markDirty(n);
+        }
+    }
+}
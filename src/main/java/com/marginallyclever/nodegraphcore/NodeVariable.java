@@ -52,11 +52,21 @@ public class NodeVariable<T> {
      */
     protected boolean isDirty;
 
+    /**
+     * how many times this variable has become dirty.  See {@link #getChangeCount()}.
+     */
+    private int changeCount;
+
     /**
      * bounding rectangle of this variable.
      */
     protected final Rectangle rectangle = new Rectangle();
 
+    /**
+     * The {@link Node} that holds this variable.  It is told whenever this variable becomes dirty.
+     */
+    private Node owner;
+
     /**
      * Constructor for subclasses to call.
      * @param _name the variable name
@@ -66,7 +76,7 @@ public class NodeVariable<T> {
      * @param _hasOutput does this variable have an input?
      * @throws IllegalArgumentException if input and output are true at the same time.
      */
-    private NodeVariable(String _name,Class<T> type,T startingValue,boolean _hasInput,boolean _hasOutput) throws IllegalArgumentException {
+    protected NodeVariable(String _name,Class<T> type,T startingValue,boolean _hasInput,boolean _hasOutput) throws IllegalArgumentException {
         super();
         if(hasInput && hasOutput) throw new IllegalArgumentException("Cannot be input and output at the same time!");
         this.type = type;
@@ -92,6 +102,45 @@ public class NodeVariable<T> {
         return new NodeVariable<>(name,clazz,startingValue,hasInput,hasOutput);
     }
 
+    /**
+     * Called to create a new {@link DoubleVariable}, a {@link Number} variable that can be read and written without
+     * boxing.
+     * @param name the variable name
+     * @param startingValue the starting value
+     * @param hasInput does this variable have an input?
+     * @param hasOutput does this variable have an input?
+     * @return the new instance.
+     */
+    public static DoubleVariable newDouble(String name,double startingValue,boolean hasInput,boolean hasOutput) {
+        return new DoubleVariable(name,startingValue,hasInput,hasOutput);
+    }
+
+    /**
+     * Called to create a new {@link LongVariable}, a {@link Number} variable that can be read and written without
+     * boxing.
+     * @param name the variable name
+     * @param startingValue the starting value
+     * @param hasInput does this variable have an input?
+     * @param hasOutput does this variable have an input?
+     * @return the new instance.
+     */
+    public static LongVariable newLong(String name,long startingValue,boolean hasInput,boolean hasOutput) {
+        return new LongVariable(name,startingValue,hasInput,hasOutput);
+    }
+
+    /**
+     * Called to create a new {@link BooleanVariable}, a {@link Boolean} variable that can be read and written
+     * without boxing.
+     * @param name the variable name
+     * @param startingValue the starting value
+     * @param hasInput does this variable have an input?
+     * @param hasOutput does this variable have an input?
+     * @return the new instance.
+     */
+    public static BooleanVariable newBoolean(String name,boolean startingValue,boolean hasInput,boolean hasOutput) {
+        return new BooleanVariable(name,startingValue,hasInput,hasOutput);
+    }
+
     /**
      * Creates a copy of this {@link NodeVariable}, while flipping hasInput and hasOutput
      * @return an inverted copy of this {@link NodeVariable}.
@@ -125,7 +174,71 @@ public class NodeVariable<T> {
         if(isValidType(arg0)) {
             value = (T)arg0;
             isDirty = true;
+            notifyOwner();
+        }
+    }
+
+    /**
+     * Puts back a value that this variable held before, even null, and marks this variable dirty.  Used to restore
+     * remembered outputs, where {@link #setValue(Object)} would ignore a null.
+     * @param arg0 the value to restore.
+     */
+    void restoreValue(Object arg0) {
+        if(arg0!=null) {
+            setValue(arg0);
+            return;
         }
+        value = null;
+        isDirty = true;
+        notifyOwner();
+    }
+
+    /**
+     * Puts back a value, dirty state and change count saved earlier, even a null value, without telling the owner.
+     * For code that borrows a variable for a while and must leave no trace, such as {@link BatchEvaluator}.
+     * @param arg0 the saved value.
+     * @param dirty the saved dirty state.
+     * @param changes the saved {@link #getChangeCount()}.
+     */
+    @SuppressWarnings("unchecked")
+    void restoreQuietly(Object arg0,boolean dirty,int changes) {
+        value = (T)arg0;
+        isDirty = dirty;
+        changeCount = changes;
+    }
+
+    /**
+     * Sets the {@link Node} that holds this variable.  Called by {@link Node#addVariable(NodeVariable)}.
+     * @param owner the {@link Node} that holds this variable.
+     */
+    void setOwner(Node owner) {
+        this.owner = owner;
+    }
+
+    /**
+     * Returns the {@link Node} that holds this variable, or null.
+     * @return the {@link Node} that holds this variable, or null.
+     */
+    public Node getOwner() {
+        return owner;
+    }
+
+    /**
+     * Tells the owning {@link Node}, if any, that this variable has become dirty.
+     */
+    protected void notifyOwner() {
+        changeCount++;
+        if(owner!=null) owner.markDirty();
+    }
+
+    /**
+     * Returns how many times this variable has become dirty.  Unlike {@link #getIsDirty()} this still shows a change
+     * after the {@link Node} that reads the variable has cleaned it, and unlike the value it shows a change made in
+     * place, such as drawing into an image.
+     * @return how many times this variable has become dirty.
+     */
+    int getChangeCount() {
+        return changeCount;
     }
 
     /**
@@ -161,12 +274,24 @@ public class NodeVariable<T> {
         return value;
     }
 
+    /**
+     * Copies the value of another variable into this one without boxing, if both sides know how.  Used by
+     * {@link NodeConnection}.  Subclasses that store primitives override this.
+     * @param from the variable to copy.
+     * @return true if the value was copied and this variable is now dirty, false if the caller must fall back to
+     * {@link #setValue(Object)}.
+     */
+    protected boolean transferFrom(NodeVariable<?> from) {
+        return false;
+    }
+
     /**
      * Sets the dirty state.
      * @param state the new dirty state.
      */
     public void setIsDirty(boolean state) {
         isDirty=state;
+        if(state) notifyOwner();
     }
 
     /**
@@ -184,7 +309,7 @@ public class NodeVariable<T> {
                 ", isDirty=" + isDirty +
                 ", hasInput=" + hasInput +
                 ", hasOutput=" + hasOutput +
-                ", value=" + value +
+                ", value=" + getValue() +
                 '}';
     }
 
@@ -222,7 +347,7 @@ public class NodeVariable<T> {
 
     public JSONObject toJSON() throws JSONException {
         JSONObject jo = new JSONObject();
-        jo.put("value", DAO4JSONFactory.toJSON(this.type,value));
+        jo.put("value", DAO4JSONFactory.toJSON(this.type,getValue()));
         jo.put("name",name);
         jo.put("hasInput",hasInput);
         jo.put("hasOutput",hasOutput);
@@ -232,6 +357,24 @@ public class NodeVariable<T> {
         return jo;
     }
 
+    /**
+     * Makes this variable a copy of another: value, name, direction, bounds and dirty state.  The value is copied with
+     * {@link ValueCopier}.  The owner is not told, just as with {@link #parseJSON(JSONObject)}.
+     * @param other the variable to copy.
+     * @throws IllegalArgumentException if the value of the other variable is not valid for this one.
+     */
+    @SuppressWarnings("unchecked")
+    public void copyFrom(NodeVariable<?> other) throws IllegalArgumentException {
+        Object v = other.getValue();
+        if(v!=null && !isValidType(v)) throw new IllegalArgumentException(name+" cannot hold a "+v.getClass().getName());
+        value = (T)ValueCopier.copy(type,v);
+        name = other.name;
+        hasInput = other.hasInput;
+        hasOutput = other.hasOutput;
+        rectangle.setBounds(other.rectangle);
+        isDirty = other.isDirty;
+    }
+
     @SuppressWarnings("unchecked")
     public void parseJSON(JSONObject jo) throws JSONException, ClassCastException {
         value = (jo.has("value") ? (T) DAO4JSONFactory.fromJSON(this.type,jo.get("value")) : null);
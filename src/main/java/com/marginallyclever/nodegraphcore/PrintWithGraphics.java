@@ -12,4 +12,15 @@ public interface PrintWithGraphics {
      * @param g the {@link java.awt.Graphics} context.
      */
     void print(java.awt.Graphics g);
+
+    /**
+     * Called when the implementing class should paint the values it had when the snapshot was taken.  Another
+     * thread may be updating the graph, so read values with {@link GraphSnapshot#getValue(NodeVariable)}.  By default
+     * this calls {@link #print(java.awt.Graphics)}.
+     * @param g the {@link java.awt.Graphics} context.
+     * @param snapshot a snapshot of the graph that holds this {@link Node}.
+     */
+    default void print(java.awt.Graphics g, GraphSnapshot snapshot) {
+        print(g);
+    }
 }
@@ -0,0 +1,9 @@
+package com.marginallyclever.nodegraphcore;
+
+/**
+ * Nodes with this interface promise that their outputs depend only on their inputs: no clocks, no randomness, no
+ * files, no side effects.  A {@link Node} with no inputs that implements this interface is a constant.
+ * See {@link ExecutionPlan#isConstant(Node)}.
+ */
+public interface PureFunction {
+}
@@ -2,20 +2,55 @@ package com.marginallyclever.nodegraphcore;
 
 import java.awt.*;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
 /**
- * A {@link Subgraph} is a {@link Node} which contains another graph.
+ * A {@link Subgraph} is a {@link Node} which contains another graph.<br>
+ * <br>
+ * Copies of a {@link Subgraph} made with {@link #deepCopy()} share one {@link GraphTemplate} and each keep only a
+ * {@link GraphInstance} of values.  A {@link Subgraph} gets its own private copy of the inner graph the first time
+ * {@link #getGraph()} is called, since the caller might change it.<br>
+ * <br>
+ * The inner graph is only evaluated when an exposed input is dirty or the inner graph still has work to do.  When
+ * the graph that holds this {@link Subgraph} has {@link NodeGraph#setInlineSubgraphs(boolean)} on, a private inner
+ * graph is not evaluated here at all: its {@link Node}s are planned and run with those of the outer graph.
  */
 public class Subgraph extends Node implements SupergraphInput, SupergraphOutput, PrintWithGraphics {
-    private final NodeGraph graph = new NodeGraph();
+    /**
+     * The private inner graph, or null while the inner graph is shared.
+     */
+    private NodeGraph graph = new NodeGraph();
+
+    /**
+     * The shared inner graph, or null while the inner graph is private.
+     */
+    private GraphTemplate shared;
+
+    /**
+     * The values of this {@link Subgraph} while the inner graph is shared.
+     */
+    private GraphInstance instance;
+
+    /**
+     * True once {@link #getGraph()} has returned the private inner graph, which the caller might still hold.
+     */
+    private boolean graphHandedOut;
 
     private class VariablePair {
         public NodeVariable<?> superVariable;
         public NodeVariable<?> subVariable;
+        // where subVariable is in the inner graph, so that it can be found again in a copy.
+        public final int nodeIndex;
+        public final int variableIndex;
+        // the change count of a private subVariable when it was last pushed out, or -1 to push it on the next update.
+        public int pushedChangeCount = -1;
 
-        public VariablePair(NodeVariable<?> subVariable) {
+        public VariablePair(NodeVariable<?> subVariable,int nodeIndex,int variableIndex) {
             this.superVariable = subVariable.createInverse();
             this.subVariable = subVariable;
+            this.nodeIndex = nodeIndex;
+            this.variableIndex = variableIndex;
         }
     }
 
@@ -46,12 +81,38 @@ public class Subgraph extends Node implements SupergraphInput, SupergraphOutput,
      * @param graph the {@link NodeGraph} to store.
      */
     public void setGraph(NodeGraph graph) {
-        this.graph.clear();
+        NodeGraph outer = getParentGraph();
+        if(outer!=null) {
+            // the variables of this node change, so the graph that holds it is edited.
+            outer.edit(()->{
+                replaceGraph(graph);
+                outer.invalidateExecutionPlan();
+            });
+        } else {
+            replaceGraph(graph);
+        }
+    }
+
+    private synchronized void replaceGraph(NodeGraph graph) {
+        this.shared = null;
+        this.instance = null;
+        this.graph = new NodeGraph();
         this.graph.add(graph.deepCopy());
+        this.graph.setParentNode(this);
+        this.graphHandedOut = false;
+        exposeVariables(this.graph);
+    }
 
-        for(Node n : this.graph.getNodes()) {
-            extractSupergraphInputs(n);
-            extractSupergraphOutputs(n);
+    /**
+     * Find every {@link SupergraphInput} and {@link SupergraphOutput} in the given graph and add a matching variable
+     * to this {@link Node}.
+     * @param inner the inner graph.
+     */
+    private void exposeVariables(NodeGraph inner) {
+        List<Node> nodes = inner.getNodes();
+        for(int k=0;k<nodes.size();++k) {
+            extractSupergraphInputs(nodes.get(k),k);
+            extractSupergraphOutputs(nodes.get(k),k);
         }
 
         // sort and add the pairs.
@@ -66,15 +127,16 @@ public class Subgraph extends Node implements SupergraphInput, SupergraphOutput,
     /**
      * Find all {@link SupergraphOutput} of a node and remember them for later.
      * @param n the node to scan
+     * @param nodeIndex the position of the node in the inner graph
      */
-    private void extractSupergraphOutputs(Node n) {
+    private void extractSupergraphOutputs(Node n,int nodeIndex) {
         if(n instanceof SupergraphOutput) {
             System.out.println("SupergraphOutput "+n.getUniqueName());
             for(int i=0;i<n.getNumVariables();++i) {
                 NodeVariable<?> v = n.getVariable(i);
                 if(v.getHasInput()) {
                     System.out.println("found output "+v.getName());
-                    addToPairs(v);
+                    addToPairs(v,nodeIndex,i);
                 }
             }
         }
@@ -83,15 +145,16 @@ public class Subgraph extends Node implements SupergraphInput, SupergraphOutput,
     /**
      * Find all {@link SupergraphInput} of a node and remember them for later.
      * @param n the node to scan
+     * @param nodeIndex the position of the node in the inner graph
      */
-    private void extractSupergraphInputs(Node n) {
+    private void extractSupergraphInputs(Node n,int nodeIndex) {
         if(n instanceof SupergraphInput) {
             System.out.println("SupergraphInput "+n.getUniqueName());
             for(int i=0;i<n.getNumVariables();++i) {
                 NodeVariable<?> v = n.getVariable(i);
                 if(v.getHasOutput()) {
                     System.out.println("found input "+v.getName());
-                    addToPairs(v);
+                    addToPairs(v,nodeIndex,i);
                 }
             }
         }
@@ -115,49 +178,238 @@ public class Subgraph extends Node implements SupergraphInput, SupergraphOutput,
     /**
      * Create and store a supergraph/subgraph variable pair.
      * @param v subgraph variable.
+     * @param nodeIndex the position of its node in the inner graph.
+     * @param variableIndex the position of the variable in its node.
      */
-    private void addToPairs(NodeVariable<?> v) {
-        VariablePair p = new VariablePair(v);
+    private void addToPairs(NodeVariable<?> v,int nodeIndex,int variableIndex) {
+        VariablePair p = new VariablePair(v,nodeIndex,variableIndex);
         pairs.add(p);
     }
 
     /**
-     * Returns the {@link NodeGraph} within this {@link Subgraph}
+     * Returns the {@link NodeGraph} within this {@link Subgraph}.  If the inner graph is shared with other
+     * {@link Subgraph}s this one gets its own copy first, so changes made by the caller affect only this
+     * {@link Subgraph}.
      * @return the {@link NodeGraph} within this {@link Subgraph}
      */
-    public NodeGraph getGraph() {
+    public synchronized NodeGraph getGraph() {
+        NodeGraph inner = getOwnGraph();
+        graphHandedOut = true;
+        return inner;
+    }
+
+    /**
+     * Like {@link #getGraph()}, but for use inside this package by code that does not hand the graph on, such as
+     * {@link SubgraphFlattener}.  The graph is not marked as handed out, so later copies of this {@link Subgraph} may
+     * still share it.  Making the graph private does not change the plan of the graph that holds this
+     * {@link Subgraph}: a plan that inlines it made it private already.
+     * @return the private inner graph.
+     */
+    synchronized NodeGraph getOwnGraph() {
+        if(shared!=null) {
+            graph = shared.copyOf(instance);
+            graph.setParentNode(this);
+            List<Node> nodes = graph.getNodes();
+            for(VariablePair p : pairs) {
+                p.subVariable = nodes.get(p.nodeIndex).getVariable(p.variableIndex);
+                p.pushedChangeCount = -1;
+            }
+            shared = null;
+            instance = null;
+        }
+        return graph;
+    }
+
+    /**
+     * Returns the {@link Node}s of the inner graph without making a private copy.  Do not change them.
+     * @return the {@link Node}s of the inner graph, shared or private.
+     */
+    public synchronized List<Node> getInnerNodes() {
+        NodeGraph inner = (shared!=null) ? shared.getGraph() : graph;
+        return Collections.unmodifiableList(inner.getNodes());
+    }
+
+    /**
+     * Returns the private inner graph without making one.
+     * @return the private inner graph, or null while the inner graph is shared.
+     */
+    synchronized NodeGraph getPrivateGraph() {
         return graph;
     }
 
+    /**
+     * Returns the inner variable paired with one of the variables of this {@link Subgraph}.
+     * @param index the index of the variable of this {@link Subgraph}.
+     * @return the inner variable, or null if the variable is not exposed from the inner graph.
+     */
+    synchronized NodeVariable<?> getInnerVariable(int index) {
+        NodeVariable<?> v = getVariable(index);
+        for(VariablePair p : pairs) {
+            if(p.superVariable==v) return p.subVariable;
+        }
+        return null;
+    }
+
+    /**
+     * Copies every dirty exposed input into the private inner graph and cleans it.  Used instead of
+     * {@link #update()} while this {@link Subgraph} is inlined into the graph that holds it.
+     */
+    synchronized void pushInputs() {
+        if(graph==null) return;
+        for(VariablePair p : pairs) {
+            if(p.superVariable.getHasInput() && p.superVariable.getIsDirty()) {
+                p.superVariable.setIsDirty(false);
+                p.subVariable.setValue(p.superVariable.getValue());
+            }
+        }
+    }
+
+    /**
+     * Copies every exposed output of the private inner graph that has changed since it was last copied out, so that
+     * this {@link Subgraph} shows current values while it is inlined into the graph that holds it.  Called at the end
+     * of each tick of that graph.
+     */
+    synchronized void pullOutputs() {
+        if(graph==null) return;
+        for(VariablePair p : pairs) {
+            if(p.superVariable.getHasOutput()) pullOutput(p);
+        }
+    }
+
+    private void pullOutput(VariablePair p) {
+        int changes = p.subVariable.getChangeCount();
+        if(changes==p.pushedChangeCount) return;
+        p.pushedChangeCount = changes;
+        p.superVariable.restoreValue(p.subVariable.getValue());
+    }
+
+    /**
+     * Returns true if the inner graph is shared with other {@link Subgraph}s.
+     * @return true if the inner graph is shared with other {@link Subgraph}s.
+     */
+    public synchronized boolean isShared() {
+        return shared!=null;
+    }
+
+    /**
+     * Returns a new instance of a template of the inner graph, holding the values of this {@link Subgraph}.  A private
+     * inner graph that nobody else holds becomes the template, and this {@link Subgraph} keeps its values in an
+     * instance from then on.  One that was handed out by {@link #getGraph()} stays private, because the caller could
+     * still edit it, and the template is made from a copy instead.  So does one that the graph holding this
+     * {@link Subgraph} inlines, so that its plan stays good.
+     * @return a new instance with the values of this {@link Subgraph}.
+     */
+    private synchronized GraphInstance share() {
+        if(shared==null) {
+            NodeGraph outer = getParentGraph();
+            if(graphHandedOut || (outer!=null && outer.isInlining())) {
+                return new GraphTemplate(graph.deepCopy()).newInstance();
+            }
+            graph.setParentNode(null);
+            shared = new GraphTemplate(graph);
+            instance = shared.newInstance();
+            graph = null;
+        }
+        return instance.copy();
+    }
+
+    /**
+     * The new {@link Subgraph} shares the inner graph of the original until one of them calls {@link #getGraph()}.
+     * If the original has handed out its inner graph, the new one shares a copy of it instead.
+     */
+    @Override
+    protected void copyFrom(Node other) throws IllegalArgumentException {
+        if(other instanceof Subgraph && pairs.isEmpty()) {
+            GraphInstance values = ((Subgraph)other).share();
+            GraphTemplate template = values.getTemplate();
+            synchronized(this) {
+                graph = null;
+                shared = template;
+                instance = values;
+            }
+            exposeVariables(template.getGraph());
+        }
+        super.copyFrom(other);
+    }
+
     @Override
     public Node create() {
         return new Subgraph();
     }
 
+    /**
+     * Returns true if an exposed input is dirty or the inner graph still has work to do.
+     * @return true if this {@link Subgraph} should be updated.
+     */
     @Override
-    public void update() {
+    public boolean isDirty() {
+        return super.isDirty() || !isInnerQuiescent();
+    }
+
+    private synchronized boolean isInnerQuiescent() {
+        return shared!=null ? !instance.isDirty() : graph.isQuiescent();
+    }
+
+    @Override
+    public synchronized void update() {
+        boolean changed = false;
         for(VariablePair p : pairs) {
-            if(p.superVariable.getHasInput()) {
-                if (p.superVariable.getIsDirty()) {
-                    p.subVariable.setValue(p.superVariable.getValue());
-                }
+            if(p.superVariable.getHasInput() && p.superVariable.getIsDirty()) {
+                if(shared!=null) instance.setValue(p.subVariable,p.superVariable.getValue());
+                else p.subVariable.setValue(p.superVariable.getValue());
+                changed = true;
             }
-            if(p.superVariable.getHasOutput()) {
-                if (p.subVariable.getIsDirty()) {
-                    p.superVariable.setValue(p.subVariable.getValue());
+        }
+
+        if(changed || !isInnerQuiescent()) {
+            if(shared!=null) instance.update();
+            else graph.update();
+
+            // push every inner value that became dirty, even one that still equals the old value because it was
+            // changed in place.
+            for(VariablePair p : pairs) {
+                if(!p.superVariable.getHasOutput()) continue;
+                if(shared!=null) {
+                    if(instance.takeChange(p.subVariable)) p.superVariable.restoreValue(instance.getValue(p.subVariable));
+                } else {
+                    pullOutput(p);
                 }
             }
         }
-
-        graph.update();
         cleanAllInputs();
     }
 
     @Override
     public void print(Graphics g) {
-        for(Node n : this.graph.getNodes()) {
+        print(g,null);
+    }
+
+    /**
+     * Paints the inner {@link Node}s.  A private inner graph is painted with the values in the snapshot, which holds
+     * them (see {@link GraphSnapshot}).  A shared one is painted with the values of this {@link Subgraph}'s
+     * {@link GraphInstance}, which change only at the end of its tick.
+     */
+    @Override
+    public void print(Graphics g, GraphSnapshot snapshot) {
+        GraphTemplate template;
+        GraphInstance values;
+        NodeGraph inner;
+        synchronized(this) {
+            template = shared;
+            values = instance;
+            inner = graph;
+        }
+        if(template==null) {
+            printNodes(inner,g,snapshot!=null ? snapshot : inner.takeSnapshot());
+        } else {
+            template.withValues(values,copy->printNodes(copy,g,copy.takeSnapshot()));
+        }
+    }
+
+    private static void printNodes(NodeGraph inner,Graphics g,GraphSnapshot snapshot) {
+        for(Node n : inner.getNodes()) {
             if(n instanceof PrintWithGraphics) {
-                ((PrintWithGraphics)n).print(g);
+                ((PrintWithGraphics)n).print(g,snapshot);
             }
         }
     }
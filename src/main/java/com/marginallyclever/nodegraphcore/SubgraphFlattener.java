@@ -0,0 +1,105 @@
+package com.marginallyclever.nodegraphcore;
+
+import java.util.*;
+
+/**
+ * Lists the {@link Node}s and {@link NodeConnection}s of a {@link NodeGraph} with every {@link Subgraph} replaced by
+ * its contents, at any depth.  Used by {@link NodeGraph#getExecutionPlan()} when
+ * {@link NodeGraph#setInlineSubgraphs(boolean)} is on.<br>
+ * <br>
+ * A {@link NodeConnection} that ends at a {@link Subgraph} is joined to every inner {@link NodeConnection} that
+ * leaves the matching {@link SupergraphInput} variable, and the inner ones are dropped.  A {@link NodeConnection}
+ * that starts at a {@link Subgraph} is joined to every inner {@link NodeConnection} that arrives at the matching
+ * {@link SupergraphOutput} variable.  Values then travel straight from the producer to the consumer.<br>
+ * <br>
+ * A shared {@link Subgraph} (see {@link Subgraph#isShared()}) is given its own private inner graph first, since the
+ * inner {@link Node}s must hold the values of that one {@link Subgraph}.
+ */
+class SubgraphFlattener {
+    /**
+     * The {@link Node}s to plan, with each inlined {@link Subgraph} replaced by its contents.
+     */
+    final List<Node> nodes = new ArrayList<>();
+
+    /**
+     * The {@link NodeConnection}s to plan.
+     */
+    final List<NodeConnection> connections = new ArrayList<>();
+
+    /**
+     * Every {@link Subgraph} that was inlined, at any depth.
+     */
+    final List<Subgraph> inlined = new ArrayList<>();
+
+    SubgraphFlattener(NodeGraph graph) {
+        super();
+        flatten(graph,nodes,connections);
+    }
+
+    private void flatten(NodeGraph graph,List<Node> nodesOut,List<NodeConnection> connectionsOut) {
+        Set<Node> expanded = Collections.newSetFromMap(new IdentityHashMap<>());
+        for(Node n : graph.getNodes()) {
+            if(n instanceof Subgraph) {
+                inlined.add((Subgraph)n);
+                expanded.add(n);
+                flatten(((Subgraph)n).getOwnGraph(),nodesOut,connectionsOut);
+            } else {
+                nodesOut.add(n);
+            }
+        }
+
+        // inner connections leaving a SupergraphInput that is fed from outside.  They are replaced by joins.
+        Map<NodeVariable<?>,List<NodeConnection>> replaced = new IdentityHashMap<>();
+        for(NodeConnection c : graph.getConnections()) {
+            boolean fromSubgraph = expanded.contains(c.getInNode());
+            boolean toSubgraph = expanded.contains(c.getOutNode());
+            if(!fromSubgraph && !toSubgraph) {
+                connectionsOut.add(c);
+                continue;
+            }
+
+            List<NodeConnection> sources = fromSubgraph
+                    ? arrivingAt(connectionsOut,((Subgraph)c.getInNode()).getInnerVariable(c.getInVariableIndex()))
+                    : List.of(c);
+            List<NodeConnection> targets = !toSubgraph ? List.of(c)
+                    : replaced.computeIfAbsent(((Subgraph)c.getOutNode()).getInnerVariable(c.getOutVariableIndex()),
+                            v->leaving(connectionsOut,v));
+            for(NodeConnection s : sources) {
+                for(NodeConnection t : targets) {
+                    NodeConnection joined = NodeConnection.join(s,t);
+                    if(c.isDelay()) joined.setDelay(true);
+                    connectionsOut.add(joined);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns every connection into the given inner variable.
+     */
+    private static List<NodeConnection> arrivingAt(List<NodeConnection> list,NodeVariable<?> v) {
+        List<NodeConnection> found = new ArrayList<>();
+        if(v==null) return found;
+        for(NodeConnection c : list) {
+            if(c.getOutVariable()==v) found.add(c);
+        }
+        return found;
+    }
+
+    /**
+     * Removes and returns every connection out of the given inner variable.
+     */
+    private static List<NodeConnection> leaving(List<NodeConnection> list,NodeVariable<?> v) {
+        List<NodeConnection> found = new ArrayList<>();
+        if(v==null) return found;
+        Iterator<NodeConnection> it = list.iterator();
+        while(it.hasNext()) {
+            NodeConnection c = it.next();
+            if(c.getInVariable()==v) {
+                found.add(c);
+                it.remove();
+            }
+        }
+        return found;
+    }
+}
@@ -0,0 +1,50 @@
+package com.marginallyclever.nodegraphcore;
+
+import java.awt.image.BufferedImage;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.UnaryOperator;
+
+/**
+ * {@link ValueCopier} knows how to copy the value of a {@link NodeVariable} for {@link NodeGraph#deepCopy()}.
+ * Values of a type with no registered copier are shared between the original and the copy, which is correct for
+ * immutable types such as {@link String}, {@link Number}, {@link Boolean} and {@link java.awt.Color}.  Register a
+ * copier for any mutable type with {@link #register(Class, UnaryOperator)}.
+ */
+public class ValueCopier {
+    private static final Map<Class<?>,UnaryOperator<Object>> copiers = new ConcurrentHashMap<>();
+
+    static {
+        register(BufferedImage.class,ValueCopier::copyImage);
+    }
+
+    /**
+     * Registers how to copy values of one type, replacing any previous copier for that type.
+     * @param type the type of value.
+     * @param copier returns a copy of the value it is given.  Never given null.
+     * @param <T> the type of value.
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> void register(Class<T> type,UnaryOperator<T> copier) {
+        if(type==null || copier==null) throw new IllegalArgumentException("type and copier cannot be null.");
+        copiers.put(type,v->copier.apply((T)v));
+    }
+
+    /**
+     * Returns a copy of the given value.  The copier for the declared type is tried first, then the copier for the
+     * class of the value.  If neither exists the value itself is returned.
+     * @param type the declared type of the {@link NodeVariable}.
+     * @param value the value to copy.  May be null.
+     * @return a copy of the value, or the value itself.
+     */
+    public static Object copy(Class<?> type,Object value) {
+        if(value==null) return null;
+        UnaryOperator<Object> copier = copiers.get(type);
+        if(copier==null) copier = copiers.get(value.getClass());
+        return copier==null ? value : copier.apply(value);
+    }
+
+    private static BufferedImage copyImage(BufferedImage image) {
+        return new BufferedImage(image.getColorModel(),image.copyData(null),image.isAlphaPremultiplied(),null);
+    }
+}
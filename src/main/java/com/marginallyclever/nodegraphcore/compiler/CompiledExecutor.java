@@ -0,0 +1,81 @@
+package com.marginallyclever.nodegraphcore.compiler;
+
+import com.marginallyclever.nodegraphcore.*;
+
+/**
+ * Runs a {@link NodeGraph} through a {@link CompiledGraph} built by the {@link NodeGraphCompiler}.  The graph is
+ * compiled again whenever the {@link ExecutionPlan} changes, and its constants are folded again whenever one of
+ * them is edited.<br>
+ * <br>
+ * A compiled graph evaluates every compiled {@link Node} on every tick; it is meant for graphs that are run many
+ * times with changing inputs.  Turn off publishing with {@link #setPublishing(boolean)} when nobody is looking at
+ * the intermediate values.
+ */
+public class CompiledExecutor extends NodeGraphExecutor {
+    private final NodeGraphCompiler compiler;
+
+    private ExecutionPlan compiledPlan;
+
+    private CompiledGraph compiled;
+
+    private boolean publishing = true;
+
+    /**
+     * Default constructor.
+     */
+    public CompiledExecutor() {
+        this(new NodeGraphCompiler());
+    }
+
+    /**
+     * Uses the given compiler.
+     * @param compiler the compiler to use.
+     */
+    public CompiledExecutor(NodeGraphCompiler compiler) {
+        super();
+        if(compiler==null) throw new IllegalArgumentException("compiler cannot be null.");
+        this.compiler = compiler;
+    }
+
+    @Override
+    public void update(NodeGraph graph, ExecutionPlan plan) {
+        if(plan!=compiledPlan) {
+            compiled = compiler.compile(plan);
+            compiledPlan = plan;
+            compiled.fold();
+            plan.foldDone();
+        } else if(plan.isFoldPending()) {
+            compiled.fold();
+            plan.foldDone();
+        }
+
+        compiled.evaluate();
+        if(publishing) compiled.publish();
+
+        finishTick(graph,plan);
+    }
+
+    /**
+     * Returns the {@link CompiledGraph} used in the last tick, or null.
+     * @return the {@link CompiledGraph} used in the last tick, or null.
+     */
+    public CompiledGraph getCompiledGraph() {
+        return compiled;
+    }
+
+    /**
+     * Returns true if compiled values are copied back into their {@link NodeVariable}s after each tick.
+     * @return true if compiled values are copied back into their {@link NodeVariable}s after each tick.
+     */
+    public boolean isPublishing() {
+        return publishing;
+    }
+
+    /**
+     * When true (the default) compiled values are copied back into their {@link NodeVariable}s after each tick.
+     * @param publishing the new state.
+     */
+    public void setPublishing(boolean publishing) {
+        this.publishing = publishing;
+    }
+}
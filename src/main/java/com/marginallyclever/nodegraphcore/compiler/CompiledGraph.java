@@ -0,0 +1,91 @@
+package com.marginallyclever.nodegraphcore.compiler;
+
+import com.marginallyclever.nodegraphcore.BooleanVariable;
+import com.marginallyclever.nodegraphcore.DoubleVariable;
+import com.marginallyclever.nodegraphcore.Node;
+import com.marginallyclever.nodegraphcore.NodeConnection;
+import com.marginallyclever.nodegraphcore.NodeVariable;
+
+/**
+ * A {@link CompiledGraph} is the base class of every class generated by the {@link NodeGraphCompiler}.  Values that
+ * pass between compiled {@link Node}s live in primitive fields of the generated class instead of in
+ * {@link NodeVariable}s.
+ */
+public abstract class CompiledGraph {
+    /**
+     * Every {@link Node} in the graph, in plan order.
+     */
+    protected final Node[] N;
+
+    /**
+     * Every {@link NodeVariable} of every {@link Node} in the graph, in plan order.
+     */
+    protected final NodeVariable<?>[] V;
+
+    /**
+     * Every {@link NodeConnection} used by the generated code.
+     */
+    protected final NodeConnection[] C;
+
+    /**
+     * Constructor for generated classes to call.
+     * @param nodes every {@link Node} in the graph, in plan order.
+     * @param variables every {@link NodeVariable} of every {@link Node}, in plan order.
+     * @param connections every {@link NodeConnection} used by the generated code.
+     */
+    protected CompiledGraph(Node[] nodes, NodeVariable<?>[] variables, NodeConnection[] connections) {
+        super();
+        this.N = nodes;
+        this.V = variables;
+        this.C = connections;
+    }
+
+    /**
+     * Evaluates the constant {@link Node}s of the graph.  Their values are kept in fields and reused by every call to
+     * {@link #evaluate()} until the next fold.
+     */
+    public abstract void fold();
+
+    /**
+     * Evaluates every {@link Node} that is not constant.  Compiled values are only copied into their {@link NodeVariable}s when a
+     * {@link Node} without a template needs them.
+     */
+    public abstract void evaluate();
+
+    /**
+     * Copies every compiled value that has changed since the last call into its {@link NodeVariable}, so that the
+     * editor and other observers can see it.
+     */
+    public abstract void publish();
+
+    /**
+     * Runs a {@link Node} without a template.
+     * @param n the {@link Node} to update.
+     */
+    protected static void update(Node n) {
+        if(n.isBackingOff()) return;
+        try {
+            n.updateIfNotDirty();
+            n.clearFailure();
+        } catch(Exception e) {
+            n.recordFailure(e);
+        }
+    }
+
+    protected static double readDouble(NodeVariable<?> v) {
+        if(v instanceof DoubleVariable) return ((DoubleVariable)v).getDouble();
+        Object o = v.getValue();
+        return (o instanceof Number) ? ((Number)o).doubleValue() : 0;
+    }
+
+    protected static boolean readBoolean(NodeVariable<?> v) {
+        if(v instanceof BooleanVariable) return ((BooleanVariable)v).getBoolean();
+        Object o = v.getValue();
+        return (o instanceof Boolean) && (Boolean) o;
+    }
+
+    protected static String readString(NodeVariable<?> v) {
+        Object o = v.getValue();
+        return (o instanceof String) ? (String)o : "";
+    }
+}
@@ -0,0 +1,389 @@
+package com.marginallyclever.nodegraphcore.compiler;
+
+import com.marginallyclever.nodegraphcore.*;
+import com.marginallyclever.nodegraphcore.corenodes.LoadBoolean;
+import com.marginallyclever.nodegraphcore.corenodes.LoadNumber;
+import com.marginallyclever.nodegraphcore.corenodes.LoadString;
+import com.marginallyclever.nodegraphcore.corenodes.logicaloperators.LogicalAnd;
+import com.marginallyclever.nodegraphcore.corenodes.logicaloperators.LogicalNot;
+import com.marginallyclever.nodegraphcore.corenodes.logicaloperators.LogicalOr;
+import com.marginallyclever.nodegraphcore.corenodes.math.*;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * {@link NodeGraphCompiler} turns the {@link ExecutionPlan} of a {@link NodeGraph} into a Java class, compiles it
+ * with Janino, and returns an instance of that class as a {@link CompiledGraph}.<br>
+ * <br>
+ * Janino is loaded by name when the first graph is compiled, so that the module does not require it.  Without Janino
+ * on the class or module path {@link #compile(ExecutionPlan)} throws {@link IllegalStateException}.<br>
+ * <br>
+ * {@link Node}s with a {@link NodeTemplate} become one line of Java each, reading and writing primitive fields.
+ * {@link Node}s with no inputs (such as {@link LoadNumber}) are read from their variable once per evaluation.
+ * Constant {@link Node}s (see {@link ExecutionPlan#isConstant(Node)}) are moved out of
+ * {@link CompiledGraph#evaluate()} into {@link CompiledGraph#fold()}.
+ * Every other {@link Node} falls back to {@link Node#updateIfNotDirty()}, and compiled values are copied into and out
+ * of {@link NodeVariable}s only where such a {@link Node} needs them.
+ */
+public class NodeGraphCompiler {
+    private static final String CLASS_NAME = "GeneratedGraph";
+
+    private static final String JANINO_COMPILER = "org.codehaus.janino.SimpleCompiler";
+
+    private static final Map<Class<? extends Node>,NodeTemplate> templates = new ConcurrentHashMap<>();
+
+    static {
+        registerBuiltInTemplates();
+    }
+
+    /**
+     * Default constructor.
+     */
+    public NodeGraphCompiler() {
+        super();
+    }
+
+    private static void registerBuiltInTemplates() {
+        registerTemplate(Add.class,        in -> "("+in[0]+" + "+in[1]+")");
+        registerTemplate(Subtract.class,   in -> "("+in[0]+" - "+in[1]+")");
+        registerTemplate(Multiply.class,   in -> "("+in[0]+" * "+in[1]+")");
+        registerTemplate(Divide.class,     in -> "("+in[1]+" == 0 ? Double.NaN : "+in[0]+" / "+in[1]+")");
+        registerTemplate(Mod.class,        in -> "("+in[0]+" % "+in[1]+")");
+        registerTemplate(Min.class,        in -> "Math.min("+in[0]+", "+in[1]+")");
+        registerTemplate(Max.class,        in -> "Math.max("+in[0]+", "+in[1]+")");
+        registerTemplate(Cos.class,        in -> "Math.cos("+in[0]+")");
+        registerTemplate(Sin.class,        in -> "Math.sin("+in[0]+")");
+        registerTemplate(Tan.class,        in -> "Math.tan("+in[0]+")");
+        registerTemplate(ATan2.class,      in -> "Math.atan2("+in[0]+", "+in[1]+")");
+        registerTemplate(Floor.class,      in -> "Math.floor("+in[0]+")");
+        registerTemplate(Ceil.class,       in -> "Math.ceil("+in[0]+")");
+        registerTemplate(Equals.class,     in -> "("+in[0]+" == "+in[1]+" ? 1.0 : 0.0)");
+        registerTemplate(GreaterThan.class,in -> "("+in[0]+" > "+in[1]+" ? 1.0 : 0.0)");
+        registerTemplate(LessThan.class,   in -> "("+in[0]+" < "+in[1]+" ? 1.0 : 0.0)");
+        registerTemplate(LogicalAnd.class, in -> "("+in[0]+" && "+in[1]+")");
+        registerTemplate(LogicalOr.class,  in -> "("+in[0]+" || "+in[1]+")");
+        registerTemplate(LogicalNot.class, in -> "(!"+in[0]+")");
+    }
+
+    /**
+     * Registers the {@link NodeTemplate} for one type of {@link Node}, replacing any previous template.
+     * Subclasses are not matched.
+     * @param nodeClass the type of {@link Node}.
+     * @param template the template to use.
+     */
+    public static void registerTemplate(Class<? extends Node> nodeClass, NodeTemplate template) {
+        templates.put(nodeClass,template);
+    }
+
+    /**
+     * Returns true if the given type of {@link Node} has a {@link NodeTemplate}.
+     * @param nodeClass the type of {@link Node}.
+     * @return true if the given type of {@link Node} has a {@link NodeTemplate}.
+     */
+    public static boolean hasTemplate(Class<? extends Node> nodeClass) {
+        return templates.containsKey(nodeClass);
+    }
+
+    /**
+     * Compiles the current {@link ExecutionPlan} of a graph.
+     * @param graph the graph to compile.
+     * @return the compiled graph, bound to the {@link Node}s of the given graph.
+     * @throws IllegalStateException if the generated code cannot be compiled.
+     */
+    public CompiledGraph compile(NodeGraph graph) throws IllegalStateException {
+        return compile(graph.getExecutionPlan());
+    }
+
+    /**
+     * Compiles an {@link ExecutionPlan}.
+     * @param plan the plan to compile.
+     * @return the compiled graph, bound to the {@link Node}s of the plan.
+     * @throws IllegalStateException if the generated code cannot be compiled.
+     */
+    public CompiledGraph compile(ExecutionPlan plan) throws IllegalStateException {
+        Generator g = new Generator(plan);
+        String source = g.generate();
+        try {
+            ClassLoader parent = CompiledGraph.class.getClassLoader();
+            Class<?> janino = Class.forName(JANINO_COMPILER,true,parent);
+            Object compiler = janino.getConstructor().newInstance();
+            janino.getMethod("setParentClassLoader",ClassLoader.class).invoke(compiler,parent);
+            janino.getMethod("cook",String.class).invoke(compiler,source);
+            ClassLoader loader = (ClassLoader)janino.getMethod("getClassLoader").invoke(compiler);
+            Class<?> c = loader.loadClass(CLASS_NAME);
+            return (CompiledGraph)c.getConstructor(Node[].class,NodeVariable[].class,NodeConnection[].class)
+                    .newInstance(g.getNodes(),g.getVariables(),g.getConnections());
+        } catch(ClassNotFoundException e) {
+            throw new IllegalStateException("Could not compile graph: Janino is not available.",e);
+        } catch(InvocationTargetException e) {
+            Throwable cause = (e.getCause()!=null) ? e.getCause() : e;
+            throw new IllegalStateException("Could not compile graph: "+cause.getMessage(),cause);
+        } catch(Exception e) {
+            throw new IllegalStateException("Could not compile graph: "+e.getMessage(),e);
+        }
+    }
+
+    /**
+     * Returns the Java source that {@link #compile(ExecutionPlan)} would compile.  Useful for debugging templates.
+     * @param plan the plan to translate.
+     * @return the Java source of the generated class.
+     */
+    public String generateSource(ExecutionPlan plan) {
+        return new Generator(plan).generate();
+    }
+
+    /**
+     * Returns the primitive (or String) Java type used for values of the given class, or null if values of that
+     * class stay in their {@link NodeVariable}.
+     */
+    private static String javaType(Class<?> c) {
+        if(c==Number.class) return "double";
+        if(c==Boolean.class) return "boolean";
+        if(c==String.class) return "String";
+        return null;
+    }
+
+    /**
+     * Translates one {@link ExecutionPlan}.  Every {@link NodeVariable} is referred to by its position in the flat
+     * array <code>V</code>.  A variable that holds a compiled value has a field <code>fK</code> and a copy of the last
+     * published value <code>pK</code>.
+     */
+    private static class Generator {
+        private final ExecutionPlan plan;
+        private final List<Node> nodes;
+        private final List<NodeVariable<?>> variables = new ArrayList<>();
+        private final List<NodeConnection> connections = new ArrayList<>();
+        private final Map<Node,Integer> firstVariable = new HashMap<>();
+        private final Map<NodeConnection,Integer> connectionIndex = new IdentityHashMap<>();
+        // the java type of the field for each variable with a compiled value.
+        private final Map<Integer,String> fieldType = new HashMap<>();
+        // fields that can be published.  Sources mirror their variable and are never published.
+        private final List<Integer> publishable = new ArrayList<>();
+        // inputs of compiled nodes, which have been consumed once the method is done.
+        private final List<Integer> foldConsumed = new ArrayList<>();
+        private final List<Integer> evaluateConsumed = new ArrayList<>();
+
+        private final StringBuilder fields = new StringBuilder();
+        private final StringBuilder fold = new StringBuilder();
+        private final StringBuilder evaluate = new StringBuilder();
+        // where the node being translated is written: constant nodes go to fold(), the rest to evaluate().
+        private StringBuilder body;
+        private List<Integer> consumed;
+
+        Generator(ExecutionPlan plan) {
+            this.plan = plan;
+            this.nodes = plan.getOrder();
+            for(Node n : nodes) {
+                firstVariable.put(n,variables.size());
+                variables.addAll(n.getVariables());
+            }
+        }
+
+        Node[] getNodes() {
+            return nodes.toArray(new Node[0]);
+        }
+
+        NodeVariable<?>[] getVariables() {
+            return variables.toArray(new NodeVariable<?>[0]);
+        }
+
+        NodeConnection[] getConnections() {
+            return connections.toArray(new NodeConnection[0]);
+        }
+
+        String generate() {
+            for(int i=0;i<nodes.size();++i) {
+                Node n = nodes.get(i);
+                boolean constant = plan.isConstant(n);
+                body = constant ? fold : evaluate;
+                consumed = constant ? foldConsumed : evaluateConsumed;
+                if(isSource(n)) writeSource(n);
+                else if(isTemplated(n)) writeTemplate(n);
+                else writeFallback(n,i);
+            }
+
+            StringBuilder sb = new StringBuilder();
+            sb.append("public class "+CLASS_NAME+" extends "+CompiledGraph.class.getName()+" {\n");
+            sb.append(fields);
+            // a fresh class has published nothing, so the first publish must store every field, even a default one.
+            sb.append("    private boolean evaluated;\n");
+            sb.append("    private boolean published;\n\n");
+            sb.append("    public "+CLASS_NAME+"("+Node.class.getName()+"[] n, "+NodeVariable.class.getName()+"[] v, "+NodeConnection.class.getName()+"[] c) {\n");
+            sb.append("        super(n,v,c);\n");
+            sb.append("    }\n\n");
+            sb.append("    public void fold() {\n");
+            sb.append(fold);
+            for(int k : foldConsumed) sb.append("        V["+k+"].setIsDirty(false);\n");
+            sb.append("    }\n\n");
+            sb.append("    public void evaluate() {\n");
+            sb.append(evaluate);
+            for(int k : evaluateConsumed) sb.append("        V["+k+"].setIsDirty(false);\n");
+            sb.append("        evaluated = true;\n");
+            sb.append("    }\n\n");
+            sb.append("    public void publish() {\n");
+            for(int k : publishable) sb.append(publishSnippet(k,"published"));
+            sb.append("        published = true;\n");
+            sb.append("    }\n");
+            sb.append("}\n");
+            return sb.toString();
+        }
+
+        private List<Integer> inputsOf(Node n) {
+            List<Integer> list = new ArrayList<>();
+            for(int i=0;i<n.getNumVariables();++i) {
+                if(n.getVariable(i).getHasInput()) list.add(i);
+            }
+            return list;
+        }
+
+        private List<Integer> outputsOf(Node n) {
+            List<Integer> list = new ArrayList<>();
+            for(int i=0;i<n.getNumVariables();++i) {
+                if(n.getVariable(i).getHasOutput()) list.add(i);
+            }
+            return list;
+        }
+
+        private boolean isSource(Node n) {
+            List<Integer> out = outputsOf(n);
+            return inputsOf(n).isEmpty() && out.size()==1 && javaType(n.getVariable(out.get(0)).getTypeClass())!=null;
+        }
+
+        private boolean isTemplated(Node n) {
+            if(!templates.containsKey(n.getClass())) return false;
+            if(outputsOf(n).size()!=1) return false;
+            for(NodeVariable<?> v : n.getVariables()) {
+                if(javaType(v.getTypeClass())==null) return false;
+            }
+            return true;
+        }
+
+        private int variableIndex(Node n,int i) {
+            return firstVariable.get(n)+i;
+        }
+
+        private String read(int k) {
+            String type = javaType(variables.get(k).getTypeClass());
+            switch(type) {
+                case "double": return "readDouble(V["+k+"])";
+                case "boolean": return "readBoolean(V["+k+"])";
+                default: return "readString(V["+k+"])";
+            }
+        }
+
+        private void addField(int k,String type) {
+            fieldType.put(k,type);
+            fields.append("    private "+type+" f"+k+";\n");
+            fields.append("    private "+type+" p"+k+";\n");
+        }
+
+        /**
+         * Returns code that stores field k into its variable if it has changed, or if the given flag is still false.
+         */
+        private String publishSnippet(int k,String flag) {
+            String type = fieldType.get(k);
+            NodeVariable<?> v = variables.get(k);
+            String changed;
+            String store;
+            switch(type) {
+                case "double":
+                    changed = "Double.compare(f"+k+",p"+k+")!=0";
+                    // a plain Number keeps the boxed type its node uses, such as the Integer of a comparison.
+                    if(v instanceof DoubleVariable) {
+                        store = "(("+DoubleVariable.class.getName()+")V["+k+"]).setDouble(f"+k+")";
+                    } else if(v.getValue() instanceof Integer) {
+                        store = "V["+k+"].setValue(Integer.valueOf((int)f"+k+"))";
+                    } else {
+                        store = "V["+k+"].setValue(Double.valueOf(f"+k+"))";
+                    }
+                    break;
+                case "boolean":
+                    changed = "f"+k+"!=p"+k;
+                    store = (v instanceof BooleanVariable)
+                            ? "(("+BooleanVariable.class.getName()+")V["+k+"]).setBoolean(f"+k+")"
+                            : "V["+k+"].setValue(Boolean.valueOf(f"+k+"))";
+                    break;
+                default:
+                    changed = "!java.util.Objects.equals(f"+k+",p"+k+")";
+                    store = "V["+k+"].setValue(f"+k+")";
+                    break;
+            }
+            return "        if(!"+flag+" || "+changed+") { p"+k+" = f"+k+"; "+store+"; }\n";
+        }
+
+        private String connectionRef(NodeConnection c) {
+            Integer i = connectionIndex.get(c);
+            if(i==null) {
+                i = connections.size();
+                connections.add(c);
+                connectionIndex.put(c,i);
+            }
+            return "C["+i+"]";
+        }
+
+        /**
+         * Returns the last forward {@link NodeConnection} into variable i of n, or null.
+         */
+        private NodeConnection connectionInto(Node n,int i) {
+            NodeConnection found = null;
+            for(NodeConnection c : plan.getConnectionsInto(n)) {
+                if(c.getOutVariableIndex()==i && c.isInputValid() && c.isOutputValid()) found = c;
+            }
+            return found;
+        }
+
+        /**
+         * Makes sure the upstream end of a connection holds its current value before the connection is applied.
+         */
+        private void writeUpstreamPublish(NodeConnection c) {
+            int up = variableIndex(c.getInNode(),c.getInVariableIndex());
+            if(publishable.contains(up)) body.append(publishSnippet(up,"evaluated"));
+        }
+
+        private void writeSource(Node n) {
+            int k = variableIndex(n,outputsOf(n).get(0));
+            addField(k,javaType(variables.get(k).getTypeClass()));
+            body.append("        f"+k+" = "+read(k)+"; // "+n.getUniqueName()+"\n");
+        }
+
+        private void writeTemplate(Node n) {
+            List<Integer> inputs = inputsOf(n);
+            String[] expressions = new String[inputs.size()];
+            for(int j=0;j<inputs.size();++j) {
+                int i = inputs.get(j);
+                int k = variableIndex(n,i);
+                String type = javaType(variables.get(k).getTypeClass());
+                consumed.add(k);
+                NodeConnection c = connectionInto(n,i);
+                if(c==null) {
+                    expressions[j] = read(k);
+                    continue;
+                }
+                int up = variableIndex(c.getInNode(),c.getInVariableIndex());
+                if(type.equals(fieldType.get(up))) {
+                    expressions[j] = "f"+up;
+                } else {
+                    writeUpstreamPublish(c);
+                    body.append("        "+connectionRef(c)+".applyIfDirty();\n");
+                    expressions[j] = read(k);
+                }
+            }
+
+            int k = variableIndex(n,outputsOf(n).get(0));
+            addField(k,javaType(variables.get(k).getTypeClass()));
+            publishable.add(k);
+            String expression = templates.get(n.getClass()).toJava(expressions);
+            body.append("        f"+k+" = "+expression+"; // "+n.getUniqueName()+"\n");
+        }
+
+        private void writeFallback(Node n,int nodeIndex) {
+            for(NodeConnection c : plan.getConnectionsInto(n)) {
+                writeUpstreamPublish(c);
+                body.append("        "+connectionRef(c)+".applyIfDirty();\n");
+            }
+            body.append("        update(N["+nodeIndex+"]); // "+n.getUniqueName()+"\n");
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package com.marginallyclever.nodegraphcore.compiler;
+
+import com.marginallyclever.nodegraphcore.Node;
+
+/**
+ * A {@link NodeTemplate} describes the behavior of one type of {@link Node} as a Java expression so that the
+ * {@link NodeGraphCompiler} can inline it.  Register templates with
+ * {@link NodeGraphCompiler#registerTemplate(Class, NodeTemplate)}.<br>
+ * <br>
+ * Only {@link Node}s with exactly one output may have a template.  Inputs and output of type {@link Number} are
+ * <code>double</code>, {@link Boolean} are <code>boolean</code>, and {@link String} are <code>String</code>.
+ */
+@FunctionalInterface
+public interface NodeTemplate {
+    /**
+     * Returns a Java expression that calculates the output of the {@link Node}.
+     * @param inputs one Java expression for each input variable of the {@link Node}, in variable order.
+     * @return a Java expression that calculates the output of the {@link Node}.
+     */
+    String toJava(String[] inputs);
+}
@@ -1,6 +1,8 @@
 package com.marginallyclever.nodegraphcore.corenodes;
 
+import com.marginallyclever.nodegraphcore.BooleanVariable;
 import com.marginallyclever.nodegraphcore.Node;
+import com.marginallyclever.nodegraphcore.PureFunction;
 import com.marginallyclever.nodegraphcore.NodeVariable;
 import com.marginallyclever.nodegraphcore.SupergraphInput;
 
@@ -9,8 +11,8 @@ import com.marginallyclever.nodegraphcore.SupergraphInput;
  * @author Dan Royer
  * @since 2022-02-01
  */
-public class LoadBoolean extends Node implements SupergraphInput {
-    private final NodeVariable<Boolean> v = NodeVariable.newInstance("value",Boolean.class,false,false,true);
+public class LoadBoolean extends Node implements SupergraphInput, PureFunction {
+    private final BooleanVariable v = NodeVariable.newBoolean("value",false,false,true);
 
     /**
      * Constructor for subclasses to call.
@@ -1,7 +1,9 @@
 package com.marginallyclever.nodegraphcore.corenodes;
 
 import com.marginallyclever.nodegraphcore.SupergraphInput;
+import com.marginallyclever.nodegraphcore.DoubleVariable;
 import com.marginallyclever.nodegraphcore.Node;
+import com.marginallyclever.nodegraphcore.PureFunction;
 import com.marginallyclever.nodegraphcore.NodeVariable;
 
 /**
@@ -9,8 +11,8 @@ import com.marginallyclever.nodegraphcore.NodeVariable;
  * @author Dan Royer
  * @since 2022-02-01
  */
-public class LoadNumber extends Node implements SupergraphInput {
-    private final NodeVariable<Number> v = NodeVariable.newInstance("value",Number.class,0,false,true);
+public class LoadNumber extends Node implements SupergraphInput, PureFunction {
+    private final DoubleVariable v = NodeVariable.newDouble("value",0,false,true);
 
     /**
      * Constructor for subclasses to call.
@@ -2,6 +2,7 @@ package com.marginallyclever.nodegraphcore.corenodes;
 
 import com.marginallyclever.nodegraphcore.SupergraphInput;
 import com.marginallyclever.nodegraphcore.Node;
+import com.marginallyclever.nodegraphcore.PureFunction;
 import com.marginallyclever.nodegraphcore.NodeVariable;
 
 /**
@@ -9,7 +10,7 @@ import com.marginallyclever.nodegraphcore.NodeVariable;
  * @author Dan Royer
  * @since 2022-02-01
  */
-public class LoadString extends Node implements SupergraphInput {
+public class LoadString extends Node implements SupergraphInput, PureFunction {
     private final NodeVariable<String> v = NodeVariable.newInstance("value",String.class,"",false,true);
 
     /**
@@ -1,6 +1,9 @@
 package com.marginallyclever.nodegraphcore.corenodes.logicaloperators;
 
+import com.marginallyclever.nodegraphcore.BatchFunction;
+import com.marginallyclever.nodegraphcore.BooleanVariable;
 import com.marginallyclever.nodegraphcore.Node;
+import com.marginallyclever.nodegraphcore.PureFunction;
 import com.marginallyclever.nodegraphcore.NodeVariable;
 
 /**
@@ -8,10 +11,10 @@ import com.marginallyclever.nodegraphcore.NodeVariable;
  * @author Dan Royer
  * @since 2022-02-01
  */
-public class LogicalOr extends Node {
-    private final NodeVariable<Boolean> a = NodeVariable.newInstance("A",Boolean.class,false,true,false);
-    private final NodeVariable<Boolean> b = NodeVariable.newInstance("B",Boolean.class,false,true,false);
-    private final NodeVariable<Boolean> c = NodeVariable.newInstance("output",Boolean.class,false,false,true);
+public class LogicalOr extends Node implements PureFunction, BatchFunction {
+    private final BooleanVariable a = NodeVariable.newBoolean("A",false,true,false);
+    private final BooleanVariable b = NodeVariable.newBoolean("B",false,true,false);
+    private final BooleanVariable c = NodeVariable.newBoolean("output",false,false,true);
 
     /**
      * Constructor for subclasses to call.
@@ -41,9 +44,17 @@ public class LogicalOr extends Node {
 
     @Override
     public void update() {
-        boolean av = a.getValue();
-        boolean bv = b.getValue();
-        c.setValue(av || bv);
+        boolean av = a.getBoolean();
+        boolean bv = b.getBoolean();
+        c.setBoolean(av || bv);
         cleanAllInputs();
     }
+
+    @Override
+    public void updateBatch(Object[] inputs, Object[] outputs, int rows) {
+        boolean[] av = (boolean[])inputs[0];
+        boolean[] bv = (boolean[])inputs[1];
+        boolean[] cv = (boolean[])outputs[0];
+        for(int i=0;i<rows;++i) cv[i] = av[i] || bv[i];
+    }
 }
@@ -1,6 +1,9 @@
 package com.marginallyclever.nodegraphcore.corenodes.math;
 
+import com.marginallyclever.nodegraphcore.BatchFunction;
+import com.marginallyclever.nodegraphcore.DoubleVariable;
 import com.marginallyclever.nodegraphcore.Node;
+import com.marginallyclever.nodegraphcore.PureFunction;
 import com.marginallyclever.nodegraphcore.NodeVariable;
 
 /**
@@ -8,10 +11,10 @@ import com.marginallyclever.nodegraphcore.NodeVariable;
  * @author Dan Royer
  * @since 2022-02-01
  */
-public class ATan2 extends Node {
-    private final NodeVariable<Number> a = NodeVariable.newInstance("X",Number.class,0,true,false);
-    private final NodeVariable<Number> b = NodeVariable.newInstance("Y",Number.class,0,true,false);
-    private final NodeVariable<Number> c = NodeVariable.newInstance("output",Number.class,0,false,true);
+public class ATan2 extends Node implements PureFunction, BatchFunction {
+    private final DoubleVariable a = NodeVariable.newDouble("X",0,true,false);
+    private final DoubleVariable b = NodeVariable.newDouble("Y",0,true,false);
+    private final DoubleVariable c = NodeVariable.newDouble("output",0,false,true);
 
     /**
      * Constructor for subclasses to call.
@@ -30,8 +33,8 @@ public class ATan2 extends Node {
      */
     public ATan2(double y, double x) {
         this();
-        this.a.setValue(y);
-        this.b.setValue(x);
+        this.a.setDouble(y);
+        this.b.setDouble(x);
     }
 
     @Override
@@ -41,9 +44,17 @@ public class ATan2 extends Node {
 
     @Override
     public void update() {
-        double y = a.getValue().doubleValue();
-        double x = b.getValue().doubleValue();
-        c.setValue(Math.atan2(y,x));
+        double y = a.getDouble();
+        double x = b.getDouble();
+        c.setDouble(Math.atan2(y,x));
         cleanAllInputs();
     }
+
+    @Override
+    public void updateBatch(Object[] inputs, Object[] outputs, int rows) {
+        double[] av = (double[])inputs[0];
+        double[] bv = (double[])inputs[1];
+        double[] cv = (double[])outputs[0];
+        for(int i=0;i<rows;++i) cv[i] = Math.atan2(av[i],bv[i]);
+    }
 }
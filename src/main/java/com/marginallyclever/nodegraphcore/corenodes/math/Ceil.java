@@ -1,6 +1,9 @@
 package com.marginallyclever.nodegraphcore.corenodes.math;
 
+import com.marginallyclever.nodegraphcore.BatchFunction;
+import com.marginallyclever.nodegraphcore.DoubleVariable;
 import com.marginallyclever.nodegraphcore.Node;
+import com.marginallyclever.nodegraphcore.PureFunction;
 import com.marginallyclever.nodegraphcore.NodeVariable;
 
 /**
@@ -8,9 +11,9 @@ import com.marginallyclever.nodegraphcore.NodeVariable;
  * @author Dan Royer
  * @since 2022-02-01
  */
-public class Ceil extends Node {
-    private final NodeVariable<Number> a = NodeVariable.newInstance("decimal",Number.class,0,true,false);
-    private final NodeVariable<Number> c = NodeVariable.newInstance("whole number",Number.class,0,false,true);
+public class Ceil extends Node implements PureFunction, BatchFunction {
+    private final DoubleVariable a = NodeVariable.newDouble("decimal",0,true,false);
+    private final DoubleVariable c = NodeVariable.newDouble("whole number",0,false,true);
 
     /**
      * Constructor for subclasses to call.
@@ -28,7 +31,7 @@ public class Ceil extends Node {
      */
     public Ceil(double a) {
         this();
-        this.a.setValue(a);
+        this.a.setDouble(a);
     }
 
     @Override
@@ -38,7 +41,14 @@ public class Ceil extends Node {
 
     @Override
     public void update() {
-        c.setValue(Math.ceil(a.getValue().doubleValue()));
+        c.setDouble(Math.ceil(a.getDouble()));
         cleanAllInputs();
     }
+
+    @Override
+    public void updateBatch(Object[] inputs, Object[] outputs, int rows) {
+        double[] av = (double[])inputs[0];
+        double[] cv = (double[])outputs[0];
+        for(int i=0;i<rows;++i) cv[i] = Math.ceil(av[i]);
+    }
 }
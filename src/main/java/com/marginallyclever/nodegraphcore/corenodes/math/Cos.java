@@ -1,6 +1,9 @@
 package com.marginallyclever.nodegraphcore.corenodes.math;
 
+import com.marginallyclever.nodegraphcore.BatchFunction;
+import com.marginallyclever.nodegraphcore.DoubleVariable;
 import com.marginallyclever.nodegraphcore.Node;
+import com.marginallyclever.nodegraphcore.PureFunction;
 import com.marginallyclever.nodegraphcore.NodeVariable;
 
 /**
@@ -8,9 +11,9 @@ import com.marginallyclever.nodegraphcore.NodeVariable;
  * @author Dan Royer
  * @since 2022-02-01
  */
-public class Cos extends Node {
-    private final NodeVariable<Number> a = NodeVariable.newInstance("A",Number.class,0,true,false);
-    private final NodeVariable<Number> b = NodeVariable.newInstance("output",Number.class,0,false,true);
+public class Cos extends Node implements PureFunction, BatchFunction {
+    private final DoubleVariable a = NodeVariable.newDouble("A",0,true,false);
+    private final DoubleVariable b = NodeVariable.newDouble("output",0,false,true);
 
     /**
      * Constructor for subclasses to call.
@@ -27,7 +30,7 @@ public class Cos extends Node {
      */
     public Cos(double a) {
         this();
-        this.a.setValue(a);
+        this.a.setDouble(a);
     }
 
     @Override
@@ -37,8 +40,15 @@ public class Cos extends Node {
 
     @Override
     public void update() {
-        double av = a.getValue().doubleValue();
-        b.setValue(Math.cos(av));
+        double av = a.getDouble();
+        b.setDouble(Math.cos(av));
         cleanAllInputs();
     }
+
+    @Override
+    public void updateBatch(Object[] inputs, Object[] outputs, int rows) {
+        double[] av = (double[])inputs[0];
+        double[] cv = (double[])outputs[0];
+        for(int i=0;i<rows;++i) cv[i] = Math.cos(av[i]);
+    }
 }
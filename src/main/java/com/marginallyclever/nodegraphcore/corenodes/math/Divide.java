@@ -1,15 +1,18 @@
 package com.marginallyclever.nodegraphcore.corenodes.math;
 
+import com.marginallyclever.nodegraphcore.BatchFunction;
+import com.marginallyclever.nodegraphcore.DoubleVariable;
 import com.marginallyclever.nodegraphcore.Node;
+import com.marginallyclever.nodegraphcore.PureFunction;
 import com.marginallyclever.nodegraphcore.NodeVariable;
 
 /**
  * C=A/B
  */
-public class Divide extends Node {
-    private final NodeVariable<Number> a = NodeVariable.newInstance("A",Number.class,0,true,false);
-    private final NodeVariable<Number> b = NodeVariable.newInstance("B",Number.class,0,true,false);
-    private final NodeVariable<Number> c = NodeVariable.newInstance("output",Number.class,0,false,true);
+public class Divide extends Node implements PureFunction, BatchFunction {
+    private final DoubleVariable a = NodeVariable.newDouble("A",0,true,false);
+    private final DoubleVariable b = NodeVariable.newDouble("B",0,true,false);
+    private final DoubleVariable c = NodeVariable.newDouble("output",0,false,true);
 
     /**
      * Constructor for subclasses to call.
@@ -28,8 +31,8 @@ public class Divide extends Node {
      */
     public Divide(double a, double b) {
         this();
-        this.a.setValue(a);
-        this.b.setValue(b);
+        this.a.setDouble(a);
+        this.b.setDouble(b);
     }
 
     @Override
@@ -39,10 +42,18 @@ public class Divide extends Node {
 
     @Override
     public void update() {
-        double av = a.getValue().doubleValue();
-        double bv = b.getValue().doubleValue();
-        if(bv==0) c.setValue(Float.NaN);
-        else c.setValue(av / bv);
+        double av = a.getDouble();
+        double bv = b.getDouble();
+        if(bv==0) c.setDouble(Float.NaN);
+        else c.setDouble(av / bv);
         cleanAllInputs();
     }
+
+    @Override
+    public void updateBatch(Object[] inputs, Object[] outputs, int rows) {
+        double[] av = (double[])inputs[0];
+        double[] bv = (double[])inputs[1];
+        double[] cv = (double[])outputs[0];
+        for(int i=0;i<rows;++i) cv[i] = (bv[i]==0) ? Float.NaN : av[i] / bv[i];
+    }
 }
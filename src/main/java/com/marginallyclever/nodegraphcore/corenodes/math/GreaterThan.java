@@ -1,6 +1,9 @@
 package com.marginallyclever.nodegraphcore.corenodes.math;
 
+import com.marginallyclever.nodegraphcore.BatchFunction;
+import com.marginallyclever.nodegraphcore.DoubleVariable;
 import com.marginallyclever.nodegraphcore.Node;
+import com.marginallyclever.nodegraphcore.PureFunction;
 import com.marginallyclever.nodegraphcore.NodeVariable;
 
 /**
@@ -8,9 +11,10 @@ import com.marginallyclever.nodegraphcore.NodeVariable;
  * @author Dan Royer
  * @since 2022-03-19
  */
-public class GreaterThan extends Node {
-    private final NodeVariable<Number> a = NodeVariable.newInstance("A",Number.class,0,true,false);
-    private final NodeVariable<Number> b = NodeVariable.newInstance("B",Number.class,0,true,false);
+public class GreaterThan extends Node implements PureFunction, BatchFunction {
+    private final DoubleVariable a = NodeVariable.newDouble("A",0,true,false);
+    private final DoubleVariable b = NodeVariable.newDouble("B",0,true,false);
+    // an Integer 1 or 0, as it has always been.
     private final NodeVariable<Number> c = NodeVariable.newInstance("output",Number.class,0,false,true);
 
     /**
@@ -30,8 +34,8 @@ public class GreaterThan extends Node {
      */
     public GreaterThan(double a, double b) {
         this();
-        this.a.setValue(a);
-        this.b.setValue(b);
+        this.a.setDouble(a);
+        this.b.setDouble(b);
     }
 
     @Override
@@ -41,9 +45,17 @@ public class GreaterThan extends Node {
 
     @Override
     public void update() {
-        double av = a.getValue().doubleValue();
-        double bv = b.getValue().doubleValue();
+        double av = a.getDouble();
+        double bv = b.getDouble();
         c.setValue((av > bv) ? 1 : 0);
         cleanAllInputs();
     }
+
+    @Override
+    public void updateBatch(Object[] inputs, Object[] outputs, int rows) {
+        double[] av = (double[])inputs[0];
+        double[] bv = (double[])inputs[1];
+        double[] cv = (double[])outputs[0];
+        for(int i=0;i<rows;++i) cv[i] = (av[i] > bv[i]) ? 1 : 0;
+    }
 }
@@ -1,15 +1,17 @@
 package com.marginallyclever.nodegraphcore.corenodes.math;
 
+import com.marginallyclever.nodegraphcore.BatchFunction;
+import com.marginallyclever.nodegraphcore.DoubleVariable;
 import com.marginallyclever.nodegraphcore.Node;
 import com.marginallyclever.nodegraphcore.NodeVariable;
 
 /**
  * Generate a new random number in the range max-min when updated.
  */
-public class Random extends Node {
-    private final NodeVariable<Number> vMax = NodeVariable.newInstance("max",Number.class,0,true,false);
-    private final NodeVariable<Number> vMin = NodeVariable.newInstance("min",Number.class,0,true,false);
-    private final NodeVariable<Number> v = NodeVariable.newInstance("value",Number.class,0,false,true);
+public class Random extends Node implements BatchFunction {
+    private final DoubleVariable vMax = NodeVariable.newDouble("max",0,true,false);
+    private final DoubleVariable vMin = NodeVariable.newDouble("min",0,true,false);
+    private final DoubleVariable v = NodeVariable.newDouble("value",0,false,true);
 
     /**
      * Constructor for subclasses to call.
@@ -21,8 +23,8 @@ public class Random extends Node {
         addVariable(vMax);
         addVariable(vMin);
         addVariable(v);
-        vMax.setValue(top);
-        vMin.setValue(bottom);
+        vMax.setDouble(top);
+        vMin.setDouble(bottom);
     }
 
     /**
@@ -39,9 +41,17 @@ public class Random extends Node {
 
     @Override
     public void update() {
-        double a = vMin.getValue().doubleValue();
-        double b = vMax.getValue().doubleValue();
-        v.setValue(Math.random()*(b-a) + a);
+        double a = vMin.getDouble();
+        double b = vMax.getDouble();
+        v.setDouble(Math.random()*(b-a) + a);
         cleanAllInputs();
     }
+
+    @Override
+    public void updateBatch(Object[] inputs, Object[] outputs, int rows) {
+        double[] top = (double[])inputs[0];
+        double[] bottom = (double[])inputs[1];
+        double[] cv = (double[])outputs[0];
+        for(int i=0;i<rows;++i) cv[i] = Math.random()*(top[i]-bottom[i]) + bottom[i];
+    }
 }
@@ -0,0 +1,224 @@
+package com.marginallyclever.nodegraphcore.executors;
+
+import com.marginallyclever.nodegraphcore.*;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs {@link Node}s on a fixed number of worker threads, always starting the ready {@link Node} with the longest
+ * estimated path to the end of the graph.  Long branches start first, so fewer cores sit idle at the end of a tick.<br>
+ * <br>
+ * The cost of each {@link Node} is an exponentially weighted moving average of how long its {@link Node#update()}
+ * took, measured only on ticks where it was dirty.  The priority of a {@link Node} is its own cost plus the highest
+ * priority downstream of it (its "bottom level").  {@link Node}s that have never run have no cost, so on the first
+ * tick the plan order is used.<br>
+ * <br>
+ * The calling thread is one of the workers.  Constant {@link Node}s are folded on the calling thread first and are
+ * not scheduled.
+ */
+public class CriticalPathExecutor extends NodeGraphExecutor implements AutoCloseable {
+    private static final AtomicInteger threadCount = new AtomicInteger();
+
+    private final int workers;
+
+    private final double alpha;
+
+    private final ExecutorService pool;
+
+    /**
+     * Estimated {@link Node#update()} time of each {@link Node}, in nanoseconds.
+     */
+    private final Map<Node,Double> estimates = new ConcurrentHashMap<>();
+
+    private ExecutionPlan lastPlan;
+
+    private volatile long lastTickNanos;
+
+    private volatile long lastCriticalPathNanos;
+
+    /**
+     * Uses one worker per available processor and a smoothing factor of 0.2.
+     */
+    public CriticalPathExecutor() {
+        this(Runtime.getRuntime().availableProcessors(),0.2);
+    }
+
+    /**
+     * @param workers the number of threads that run {@link Node}s, including the calling thread.  Must be at least 1.
+     * @param alpha the weight of the newest measurement in the moving average.  Must be greater than 0 and at most 1.
+     * @throws IllegalArgumentException if any argument is out of range.
+     */
+    public CriticalPathExecutor(int workers,double alpha) throws IllegalArgumentException {
+        super();
+        if(workers<1) throw new IllegalArgumentException("workers must be at least 1.");
+        if(!(alpha>0 && alpha<=1)) throw new IllegalArgumentException("alpha must be greater than 0 and at most 1.");
+        this.workers = workers;
+        this.alpha = alpha;
+        this.pool = workers==1 ? null : Executors.newFixedThreadPool(workers-1,r->{
+            Thread t = new Thread(r,"CriticalPathExecutor-"+threadCount.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    @Override
+    public void update(NodeGraph graph, ExecutionPlan plan) {
+        long start = System.nanoTime();
+        if(plan!=lastPlan) {
+            lastPlan = plan;
+            estimates.keySet().removeIf(n->plan.indexOf(n)<0);
+        }
+        foldConstants(plan);
+
+        Tick tick = new Tick(plan);
+        List<Future<?>> helpers = new ArrayList<>();
+        for(int i=1;i<workers && i<tick.total;++i) helpers.add(pool.submit(tick::work));
+        tick.work();
+        for(Future<?> f : helpers) {
+            try {
+                f.get();
+            } catch(InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch(ExecutionException e) {
+                throw new IllegalStateException(e.getCause());
+            }
+        }
+
+        finishTick(graph,plan);
+        lastCriticalPathNanos = tick.criticalPath;
+        lastTickNanos = System.nanoTime()-start;
+    }
+
+    /**
+     * Returns the estimated {@link Node#update()} time of the given {@link Node}, in nanoseconds.
+     * @param n the subject
+     * @return the estimated {@link Node#update()} time, or 0 if the {@link Node} has not run yet.
+     */
+    public double getEstimatedNanos(Node n) {
+        return estimates.getOrDefault(n,0.0);
+    }
+
+    /**
+     * Returns the longest estimated path through the graph at the start of the last tick, in nanoseconds.
+     * @return the longest estimated path through the graph at the start of the last tick, in nanoseconds.
+     */
+    public long getLastCriticalPathNanos() {
+        return lastCriticalPathNanos;
+    }
+
+    /**
+     * Returns the wall clock time of the last tick, in nanoseconds.
+     * @return the wall clock time of the last tick, in nanoseconds.
+     */
+    public long getLastTickNanos() {
+        return lastTickNanos;
+    }
+
+    /**
+     * Stops the worker threads.
+     */
+    @Override
+    public void close() {
+        if(pool!=null) pool.shutdown();
+    }
+
+    private void measure(Node n,long nanos) {
+        estimates.merge(n,(double)nanos,(old,now)->old+alpha*(now-old));
+    }
+
+    /**
+     * The state of one tick, shared by every worker.
+     */
+    private class Tick {
+        final ExecutionPlan plan;
+        final List<Node> order;
+        final double[] priority;
+        final int[] waitingFor;
+        final PriorityQueue<Integer> ready;
+        final int total;
+        int finished = 0;
+        long criticalPath = 0;
+
+        Tick(ExecutionPlan plan) {
+            this.plan = plan;
+            this.order = plan.getOrder();
+            int size = order.size();
+            priority = new double[size];
+            waitingFor = new int[size];
+
+            // bottom level: a node's own cost plus the most expensive path downstream of it.
+            for(int i=size-1;i>=0;--i) {
+                Node n = order.get(i);
+                if(plan.isConstant(n)) continue;
+                double downstream = 0;
+                for(NodeConnection c : plan.getConnectionsOutOf(n)) {
+                    downstream = Math.max(downstream,priority[plan.indexOf(c.getOutNode())]);
+                }
+                priority[i] = getEstimatedNanos(n) + downstream;
+                criticalPath = Math.max(criticalPath,(long)priority[i]);
+            }
+
+            ready = new PriorityQueue<>((a,b)->{
+                int c = Double.compare(priority[b],priority[a]);
+                return c!=0 ? c : Integer.compare(a,b);
+            });
+            int count = 0;
+            for(int i=0;i<size;++i) {
+                Node n = order.get(i);
+                if(plan.isConstant(n)) continue;
+                count++;
+                for(NodeConnection c : plan.getConnectionsInto(n)) {
+                    if(!plan.isConstant(c.getInNode())) waitingFor[i]++;
+                }
+                if(waitingFor[i]==0) ready.add(i);
+            }
+            total = count;
+        }
+
+        /**
+         * Runs ready {@link Node}s until every {@link Node} in the tick has finished.
+         */
+        void work() {
+            int i;
+            while((i=take())>=0) {
+                try {
+                    Node n = order.get(i);
+                    for(NodeConnection c : plan.getConnectionsInto(n)) c.applyIfDirty();
+                    boolean dirty = n.isDirty();
+                    long t0 = System.nanoTime();
+                    updateNode(n);
+                    if(dirty) measure(n,System.nanoTime()-t0);
+                } finally {
+                    done(i);
+                }
+            }
+        }
+
+        /**
+         * Returns the index of the ready {@link Node} with the highest priority, waiting if none is ready, or -1
+         * when the tick is over.
+         */
+        synchronized int take() {
+            while(ready.isEmpty() && finished<total) {
+                try {
+                    wait();
+                } catch(InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return -1;
+                }
+            }
+            return ready.isEmpty() ? -1 : ready.poll();
+        }
+
+        synchronized void done(int i) {
+            finished++;
+            for(NodeConnection c : plan.getConnectionsOutOf(order.get(i))) {
+                int j = plan.indexOf(c.getOutNode());
+                if(--waitingFor[j]==0) ready.add(j);
+            }
+            notifyAll();
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package com.marginallyclever.nodegraphcore.executors;
+
+import com.marginallyclever.nodegraphcore.*;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Turns every {@link Node} in the {@link ExecutionPlan} into a task that fires as soon as all of its upstream
+ * {@link Node}s have finished.  There is no barrier between levels, so a slow branch overlaps with fast branches
+ * instead of holding up everything else at the same depth.<br>
+ * <br>
+ * After each tick {@link #getLastCriticalPathNanos()} reports the longest chain of {@link Node#update()} times
+ * through the graph, which is the best any parallel schedule could have done.<br>
+ * <br>
+ * Constant {@link Node}s are folded on the calling thread before the tasks are started and are not given a task.
+ */
+public class DataflowExecutor extends NodeGraphExecutor {
+    private final Executor executor;
+
+    private volatile long lastTickNanos;
+
+    private volatile long lastCriticalPathNanos;
+
+    /**
+     * Runs on the {@link ForkJoinPool#commonPool()}.
+     */
+    public DataflowExecutor() {
+        this(ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Runs on the given {@link Executor}.  The caller is responsible for shutting it down.
+     * @param executor where the {@link Node} tasks are run.
+     */
+    public DataflowExecutor(Executor executor) {
+        super();
+        if(executor==null) throw new IllegalArgumentException("executor cannot be null.");
+        this.executor = executor;
+    }
+
+    @Override
+    public void update(NodeGraph graph, ExecutionPlan plan) {
+        long start = System.nanoTime();
+        foldConstants(plan);
+
+        List<Node> order = plan.getOrder();
+        int size = order.size();
+        CompletableFuture<?>[] done = new CompletableFuture<?>[size];
+        // pathNanos[i] is the longest chain of update times ending with the i-th node.
+        long[] pathNanos = new long[size];
+
+        for(int i=0;i<size;++i) {
+            Node n = order.get(i);
+            if(plan.isConstant(n)) {
+                done[i] = CompletableFuture.completedFuture(null);
+                continue;
+            }
+            List<NodeConnection> into = plan.getConnectionsInto(n);
+            int[] upstream = new int[into.size()];
+            CompletableFuture<?>[] dependencies = new CompletableFuture<?>[into.size()];
+            for(int j=0;j<upstream.length;++j) {
+                upstream[j] = plan.indexOf(into.get(j).getInNode());
+                dependencies[j] = done[upstream[j]];
+            }
+
+            final int index = i;
+            done[i] = CompletableFuture.allOf(dependencies).thenRunAsync(()->{
+                long longestUpstream = 0;
+                for(int u : upstream) longestUpstream = Math.max(longestUpstream, pathNanos[u]);
+                for(NodeConnection c : into) c.applyIfDirty();
+                long t0 = System.nanoTime();
+                updateNode(n);
+                pathNanos[index] = longestUpstream + (System.nanoTime()-t0);
+            },executor);
+        }
+        CompletableFuture.allOf(done).join();
+
+        finishTick(graph,plan);
+
+        long criticalPath = 0;
+        for(long p : pathNanos) criticalPath = Math.max(criticalPath,p);
+        lastCriticalPathNanos = criticalPath;
+        lastTickNanos = System.nanoTime()-start;
+    }
+
+    /**
+     * Returns the longest chain of {@link Node#update()} times measured in the last tick, in nanoseconds.
+     * @return the longest chain of {@link Node#update()} times measured in the last tick, in nanoseconds.
+     */
+    public long getLastCriticalPathNanos() {
+        return lastCriticalPathNanos;
+    }
+
+    /**
+     * Returns the wall clock time of the last tick, in nanoseconds.  The difference between this and
+     * {@link #getLastCriticalPathNanos()} is the cost of scheduling and of running out of threads.
+     * @return the wall clock time of the last tick, in nanoseconds.
+     */
+    public long getLastTickNanos() {
+        return lastTickNanos;
+    }
+}
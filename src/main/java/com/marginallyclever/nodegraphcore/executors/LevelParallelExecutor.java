@@ -0,0 +1,66 @@
+package com.marginallyclever.nodegraphcore.executors;
+
+import com.marginallyclever.nodegraphcore.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Runs the {@link Node}s of each dependency level of the {@link ExecutionPlan} in parallel on a {@link ForkJoinPool}.
+ * The levels are run one after another: every {@link Node} in a level has finished before the
+ * {@link NodeConnection}s into the next level are applied.  Nodes within one level never share a connection, so
+ * they never touch each other's {@link NodeVariable}s.<br>
+ * <br>
+ * Constant {@link Node}s are folded on the calling thread before the first level and skipped after that.
+ */
+public class LevelParallelExecutor extends NodeGraphExecutor {
+    private final ForkJoinPool pool;
+
+    /**
+     * Runs on the {@link ForkJoinPool#commonPool()}.
+     */
+    public LevelParallelExecutor() {
+        this(ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Runs on the given pool.  The caller is responsible for shutting down the pool.
+     * @param pool the pool to run on.
+     */
+    public LevelParallelExecutor(ForkJoinPool pool) {
+        super();
+        if(pool==null) throw new IllegalArgumentException("pool cannot be null.");
+        this.pool = pool;
+    }
+
+    @Override
+    public void update(NodeGraph graph, ExecutionPlan plan) {
+        foldConstants(plan);
+
+        List<ForkJoinTask<?>> tasks = new ArrayList<>();
+        List<Node> dynamic = new ArrayList<>();
+        for(List<Node> level : plan.getLevels()) {
+            dynamic.clear();
+            for(Node n : level) {
+                if(plan.isConstant(n)) continue;
+                for(NodeConnection c : plan.getConnectionsInto(n)) c.applyIfDirty();
+                dynamic.add(n);
+            }
+
+            if(dynamic.size()<=1) {
+                // not worth the hand-off.
+                for(Node n : dynamic) updateNode(n);
+                continue;
+            }
+
+            tasks.clear();
+            for(Node n : dynamic) {
+                if(n.isDirty()) tasks.add(pool.submit(()->updateNode(n)));
+            }
+            for(ForkJoinTask<?> t : tasks) t.join();
+        }
+        finishTick(graph,plan);
+    }
+}
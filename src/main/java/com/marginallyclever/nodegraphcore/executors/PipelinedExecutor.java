@@ -0,0 +1,291 @@
+package com.marginallyclever.nodegraphcore.executors;
+
+import com.marginallyclever.nodegraphcore.*;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Overlaps successive ticks.  The levels of the {@link ExecutionPlan} are cut into stages, and each stage runs on its
+ * own thread.  While stage 2 works on tick t, stage 1 can already work on tick t+1.<br>
+ * <br>
+ * Values that cross from one stage to a later stage are copied into a packet that travels with the tick, so a stage
+ * that has moved on to the next tick cannot overwrite values a later stage has not read yet.  Every stage handles
+ * ticks in the order they were started, so sinks see their inputs in tick order.<br>
+ * <br>
+ * {@link Node}s without inputs are run by {@link #update(NodeGraph, ExecutionPlan)} itself, so each tick sees the
+ * inputs as they were when it started.  Unlike other executors, {@link #update(NodeGraph, ExecutionPlan)} then
+ * returns as soon as the tick has been queued, while later stages are still working on it.  It blocks only when
+ * there are already as many ticks in flight as there are stages.  Call {@link #flush()} to wait for every tick to
+ * finish.  {@link NodeGraph} calls {@link #flush()} before every edit, so an edit never lands in a running tick.<br>
+ * <br>
+ * Graphs with a cycle or a delay connection are not pipelined.  Their ticks run entirely inside
+ * {@link #update(NodeGraph, ExecutionPlan)}, one at a time, because a value carried back to an earlier stage would
+ * race with the next tick.
+ */
+public class PipelinedExecutor extends NodeGraphExecutor implements AutoCloseable {
+    private static final AtomicInteger threadCount = new AtomicInteger();
+
+    private final int maxStages;
+
+    private final AtomicLong completedTicks = new AtomicLong();
+
+    private ExecutionPlan plan;
+
+    private Stage[] stages = new Stage[0];
+
+    /**
+     * True if the current plan has a cycle or a delay connection, so its ticks are not pipelined.
+     */
+    private boolean sequential;
+
+    /**
+     * The number of {@link NodeConnection}s that cross from one stage to another, which is the size of a packet.
+     */
+    private int crossingCount;
+
+    private Semaphore inFlight;
+
+    private CompletableFuture<?> lastTick = CompletableFuture.completedFuture(null);
+
+    /**
+     * Held while the sources of a tick run and while a finished tick tidies the worklist, so the two never overlap.
+     */
+    private final Object tickLock = new Object();
+
+    /**
+     * The number of ticks started.  Guarded by {@link #tickLock}.
+     */
+    private long startedTicks;
+
+    /**
+     * Uses up to one stage per available processor.
+     */
+    public PipelinedExecutor() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Uses up to the given number of stages.
+     * @param maxStages the most stages to create.  Must be at least 1.
+     * @throws IllegalArgumentException if maxStages is less than 1.
+     */
+    public PipelinedExecutor(int maxStages) throws IllegalArgumentException {
+        super();
+        if(maxStages<1) throw new IllegalArgumentException("maxStages must be at least 1.");
+        this.maxStages = maxStages;
+    }
+
+    @Override
+    public synchronized void update(NodeGraph graph, ExecutionPlan plan) {
+        if(plan!=this.plan) {
+            flush();
+            buildStages(plan);
+        }
+
+        if(sequential) {
+            for(Node n : plan.getOrder()) {
+                for(NodeConnection c : plan.getConnectionsInto(n)) c.applyIfDirty();
+                updateNode(n);
+            }
+            finishTick(graph,plan);
+            completedTicks.incrementAndGet();
+            return;
+        }
+
+        inFlight.acquireUninterruptibly();
+        Object[] packet = new Object[crossingCount];
+        long number;
+        synchronized(tickLock) {
+            // sources run right now so that the tick sees the inputs as they are at this moment.
+            stages[0].run(packet);
+            number = ++startedTicks;
+        }
+        CompletableFuture<?> tick = CompletableFuture.completedFuture(null);
+        for(int i=1;i<stages.length;++i) {
+            Stage s = stages[i];
+            tick = tick.thenRunAsync(()->s.run(packet),s.thread);
+        }
+        lastTick = tick.whenComplete((r,e)->{
+            completedTicks.incrementAndGet();
+            inFlight.release();
+            synchronized(tickLock) {
+                // if a later tick has started, its nodes are busy and it will tidy the worklist when it is done.
+                if(number==startedTicks) carryOverDirtyNodes(graph,plan);
+            }
+        });
+    }
+
+    /**
+     * Waits until every tick that has been started is finished.
+     */
+    @Override
+    public void flush() {
+        CompletableFuture<?> last;
+        synchronized(this) {
+            last = lastTick;
+        }
+        last.join();
+    }
+
+    /**
+     * Returns the number of ticks that have gone through every stage.
+     * @return the number of ticks that have gone through every stage.
+     */
+    public long getCompletedTicks() {
+        return completedTicks.get();
+    }
+
+    /**
+     * Returns the number of stages used for the current plan.
+     * @return the number of stages used for the current plan, or 0 if it has a cycle or a delay connection and is not
+     * pipelined.
+     */
+    public synchronized int getStageCount() {
+        return Math.max(0,stages.length-1);
+    }
+
+    /**
+     * Waits for every tick to finish and stops the stage threads.
+     */
+    @Override
+    public synchronized void close() {
+        flush();
+        for(Stage s : stages) s.shutdown();
+        stages = new Stage[0];
+        plan = null;
+    }
+
+    private void buildStages(ExecutionPlan plan) {
+        for(Stage s : stages) s.shutdown();
+        this.plan = plan;
+
+        sequential = false;
+        for(NodeConnection c : plan.getRemainingConnections()) {
+            if(plan.indexOf(c.getInNode())>=0 && plan.indexOf(c.getOutNode())>=0) sequential = true;
+        }
+        if(sequential) {
+            stages = new Stage[0];
+            return;
+        }
+
+        // nodes without inputs are the sources of each tick.  The rest are split into levels.
+        List<Node> sources = new ArrayList<>();
+        List<List<Node>> levels = new ArrayList<>();
+        int total = 0;
+        for(List<Node> level : plan.getLevels()) {
+            List<Node> rest = new ArrayList<>();
+            for(Node n : level) {
+                if(hasNoInputs(n)) sources.add(n);
+                else rest.add(n);
+            }
+            if(!rest.isEmpty()) levels.add(rest);
+            total += rest.size();
+        }
+
+        // cut the levels into groups with roughly the same number of nodes.
+        int count = Math.max(1,Math.min(maxStages,levels.size()));
+        List<List<Node>> groups = new ArrayList<>();
+        groups.add(sources);
+        List<Node> group = new ArrayList<>();
+        int done = 0;
+        for(List<Node> level : levels) {
+            group.addAll(level);
+            done += level.size();
+            if(groups.size()<count && done*count >= total*groups.size()) {
+                groups.add(group);
+                group = new ArrayList<>();
+            }
+        }
+        if(!group.isEmpty() || groups.size()==1) groups.add(group);
+
+        Map<Node,Integer> stageOf = new HashMap<>();
+        for(int i=0;i<groups.size();++i) {
+            for(Node n : groups.get(i)) stageOf.put(n,i);
+        }
+
+        stages = new Stage[groups.size()];
+        for(int i=0;i<groups.size();++i) stages[i] = new Stage(groups.get(i),i>0);
+
+        crossingCount = 0;
+        for(Node n : plan.getOrder()) {
+            for(NodeConnection c : plan.getConnectionsInto(n)) {
+                int from = stageOf.get(c.getInNode());
+                int to = stageOf.get(n);
+                if(from==to) {
+                    stages[to].internal.computeIfAbsent(n,k->new ArrayList<>()).add(c);
+                } else {
+                    stages[from].outgoing.add(c);
+                    stages[from].outgoingSlots.add(crossingCount);
+                    stages[to].incoming.add(c);
+                    stages[to].incomingSlots.add(crossingCount);
+                    crossingCount++;
+                }
+            }
+        }
+
+        inFlight = new Semaphore(stages.length-1);
+    }
+
+    private static boolean hasNoInputs(Node n) {
+        for(NodeVariable<?> v : n.getVariables()) {
+            if(v.getHasInput()) return false;
+        }
+        return true;
+    }
+
+    /**
+     * A group of consecutive levels and the thread that runs them.  The first stage holds the sources and has no
+     * thread of its own.
+     */
+    private class Stage {
+        final List<Node> nodes;
+        final ExecutorService thread;
+        final Map<Node,List<NodeConnection>> internal = new HashMap<>();
+        final List<NodeConnection> incoming = new ArrayList<>();
+        final List<Integer> incomingSlots = new ArrayList<>();
+        final List<NodeConnection> outgoing = new ArrayList<>();
+        final List<Integer> outgoingSlots = new ArrayList<>();
+
+        Stage(List<Node> nodes,boolean threaded) {
+            this.nodes = nodes;
+            this.thread = !threaded ? null : Executors.newSingleThreadExecutor(r->{
+                Thread t = new Thread(r,"PipelinedExecutor-"+threadCount.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            });
+        }
+
+        void shutdown() {
+            if(thread!=null) thread.shutdown();
+        }
+
+        /**
+         * Runs one tick of this stage.  Reads crossing values for this tick from the packet and writes crossing
+         * values for later stages into it.
+         */
+        void run(Object[] packet) {
+            for(int i=0;i<incoming.size();++i) {
+                Object value = packet[incomingSlots.get(i)];
+                if(value==null) continue;
+                NodeVariable<?> out = incoming.get(i).getOutVariable();
+                if(out.isValidType(value)) out.setValue(value);
+            }
+
+            for(Node n : nodes) {
+                for(NodeConnection c : internal.getOrDefault(n,Collections.emptyList())) c.applyIfDirty();
+                updateNode(n);
+            }
+
+            for(int i=0;i<outgoing.size();++i) {
+                NodeConnection c = outgoing.get(i);
+                if(c.isInputValid() && c.getInVariable().getIsDirty()) {
+                    packet[outgoingSlots.get(i)] = c.getInVariable().getValue();
+                }
+            }
+            for(Node n : nodes) n.cleanAllOutputs();
+        }
+    }
+}
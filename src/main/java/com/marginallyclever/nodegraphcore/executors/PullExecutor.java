@@ -0,0 +1,125 @@
+package com.marginallyclever.nodegraphcore.executors;
+
+import com.marginallyclever.nodegraphcore.*;
+import com.marginallyclever.nodegraphcore.corenodes.PrintToStdOut;
+
+import java.util.*;
+
+/**
+ * Evaluates a {@link NodeGraph} on demand.  Evaluation starts from the sinks - {@link PrintToStdOut},
+ * {@link PrintWithGraphics} and {@link SupergraphOutput} - and only the {@link Node}s those sinks depend on are
+ * updated.  A branch that feeds nothing observable costs nothing; its {@link Node}s are not updated and are not kept
+ * on the worklist.  When a sink is connected to them later, every {@link NodeConnection} into them is applied again
+ * so that they start from current values.
+ */
+public class PullExecutor extends NodeGraphExecutor {
+    /**
+     * The plan that {@link #needed} was built for.
+     */
+    private ExecutionPlan lastPlan;
+
+    /**
+     * The sinks and everything upstream of them, in plan order.
+     */
+    private List<Node> needed = new ArrayList<>();
+
+    private Set<Node> neededSet = new HashSet<>();
+
+    /**
+     * Default constructor.
+     */
+    public PullExecutor() {
+        super();
+    }
+
+    @Override
+    public void update(NodeGraph graph, ExecutionPlan plan) {
+        if(plan!=lastPlan) {
+            Set<Node> before = neededSet;
+            needed = findNeeded(plan);
+            neededSet = new HashSet<>(needed);
+            lastPlan = plan;
+            // a node that was not needed missed every change upstream of it.
+            for(Node n : needed) {
+                if(before.contains(n)) continue;
+                for(NodeConnection c : plan.getConnectionsInto(n)) c.apply();
+            }
+            for(NodeConnection c : plan.getRemainingConnections()) {
+                if(neededSet.contains(c.getOutNode()) && !before.contains(c.getOutNode())) c.apply();
+            }
+        }
+
+        for(Node n : needed) {
+            for(NodeConnection c : plan.getConnectionsInto(n)) c.applyIfDirty();
+            updateNode(n);
+        }
+        for(NodeConnection c : plan.getRemainingConnections()) c.applyIfDirty();
+        for(Node n : needed) n.cleanAllOutputs();
+        carryOverDirtyNodes(graph,plan,neededSet::contains);
+    }
+
+    /**
+     * Returns true if the outputs of the given {@link Node} are observed outside the graph.  Override to add more
+     * kinds of sink.
+     * @param n the subject
+     * @return true if the given {@link Node} is a sink.
+     */
+    protected boolean isSink(Node n) {
+        if(n instanceof Subgraph) {
+            // a Subgraph draws its inner nodes, but it is only a sink if one of them is.  Its exposed outputs are
+            // only observed through whatever is connected to it.
+            for(Node inner : ((Subgraph)n).getInnerNodes()) {
+                if((inner instanceof Subgraph || !(inner instanceof SupergraphOutput)) && isSink(inner)) return true;
+            }
+            return false;
+        }
+        return n instanceof PrintToStdOut
+                || n instanceof PrintWithGraphics
+                || n instanceof SupergraphOutput;
+    }
+
+    /**
+     * Walks upstream from every sink.
+     * @param plan the plan to search.
+     * @return the sinks and everything they depend on, in plan order.
+     */
+    private List<Node> findNeeded(ExecutionPlan plan) {
+        Map<Node,List<Node>> upstream = new HashMap<>();
+        for(Node n : plan.getOrder()) {
+            for(NodeConnection c : plan.getConnectionsInto(n)) {
+                upstream.computeIfAbsent(n,k->new ArrayList<>()).add(c.getInNode());
+            }
+        }
+        for(NodeConnection c : plan.getRemainingConnections()) {
+            if(c.getOutNode()!=null && c.getInNode()!=null) {
+                upstream.computeIfAbsent(c.getOutNode(),k->new ArrayList<>()).add(c.getInNode());
+            }
+        }
+
+        Set<Node> found = new HashSet<>();
+        ArrayDeque<Node> toVisit = new ArrayDeque<>();
+        for(Node n : plan.getOrder()) {
+            if(isSink(n) && found.add(n)) toVisit.add(n);
+        }
+        while(!toVisit.isEmpty()) {
+            Node n = toVisit.poll();
+            for(Node u : upstream.getOrDefault(n,Collections.emptyList())) {
+                if(found.add(u)) toVisit.add(u);
+            }
+        }
+
+        List<Node> list = new ArrayList<>();
+        for(Node n : plan.getOrder()) {
+            if(found.contains(n)) list.add(n);
+        }
+        return list;
+    }
+
+    /**
+     * Returns the {@link Node}s evaluated in the last tick, in plan order.
+     * @return the {@link Node}s evaluated in the last tick, in plan order.
+     */
+    public List<Node> getNeededNodes() {
+        return Collections.unmodifiableList(needed);
+    }
+}
@@ -0,0 +1,100 @@
+package com.marginallyclever.nodegraphcore.executors;
+
+import com.marginallyclever.nodegraphcore.*;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Runs {@link Node}s on the calling thread, one at a time, in the order of the {@link ExecutionPlan}.
+ * This is the default {@link NodeGraphExecutor}.<br>
+ * <br>
+ * The first tick after the plan changes visits every {@link Node}.  After that only the {@link Node}s on the
+ * worklist of the {@link NodeGraph} and the {@link Node}s downstream of them are visited, so the cost of a tick
+ * follows the size of the change, not the size of the graph.
+ */
+public class SequentialExecutor extends NodeGraphExecutor {
+    /**
+     * The plan that was last visited in full.
+     */
+    private ExecutionPlan lastPlan;
+
+    /**
+     * Default constructor.
+     */
+    public SequentialExecutor() {
+        super();
+    }
+
+    @Override
+    public void update(NodeGraph graph, ExecutionPlan plan) {
+        if(plan!=lastPlan) {
+            lastPlan = plan;
+            updateEverything(graph,plan);
+        } else {
+            updateWorklist(graph,plan);
+        }
+    }
+
+    /**
+     * For each {@link Node} in topological order:
+     * <ul>
+     * <li>Transmits dirty upstream outputs to its inputs.</li>
+     * <li>Updates the node if it is dirty.</li>
+     * </ul>
+     * Then applies any connections that close a cycle and sets all outputs to clean.
+     */
+    private void updateEverything(NodeGraph graph, ExecutionPlan plan) {
+        for(Node n : plan.getOrder()) {
+            for(NodeConnection c : plan.getConnectionsInto(n)) c.applyIfDirty();
+            updateNode(n);
+        }
+        finishTick(graph,plan);
+    }
+
+    /**
+     * Visits the {@link Node}s on the worklist in plan order.  Each time a visited {@link Node} has a dirty output
+     * the value is pushed through its connections and the receiving {@link Node} is added to the schedule.
+     */
+    private void updateWorklist(NodeGraph graph, ExecutionPlan plan) {
+        List<Node> dirty = graph.drainWorklist();
+        if(dirty.isEmpty()) return;
+
+        List<Node> order = plan.getOrder();
+        PriorityQueue<Integer> schedule = new PriorityQueue<>();
+        BitSet scheduled = new BitSet(order.size());
+        for(Node n : dirty) {
+            int i = plan.indexOf(n);
+            if(i>=0 && !scheduled.get(i)) {
+                scheduled.set(i);
+                schedule.add(i);
+            }
+        }
+
+        List<Node> visited = new ArrayList<>();
+        while(!schedule.isEmpty()) {
+            Node n = order.get(schedule.poll());
+            updateNode(n);
+            visited.add(n);
+
+            for(NodeConnection c : plan.getConnectionsOutOf(n)) {
+                if(!c.isInputValid() || !c.getInVariable().getIsDirty()) continue;
+                c.applyIfDirty();
+                int j = plan.indexOf(c.getOutNode());
+                if(!scheduled.get(j)) {
+                    scheduled.set(j);
+                    schedule.add(j);
+                }
+            }
+        }
+
+        for(NodeConnection c : plan.getRemainingConnections()) c.applyIfDirty();
+        for(Node n : visited) {
+            n.cleanAllOutputs();
+            if(n.isDirty()) graph.markDirty(n);
+        }
+        carryOverDirtyNodes(graph,plan);
+    }
+}
@@ -0,0 +1,205 @@
+package com.marginallyclever.nodegraphcore.stream;
+
+import com.marginallyclever.nodegraphcore.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@link GraphStream} drives a {@link NodeGraph} from {@link Flow.Publisher}s instead of a clock.  Each
+ * {@link SupergraphInput} can be fed by a {@link Flow.Subscriber} from {@link #getInput(Node)}, and any
+ * {@link NodeVariable} - usually an input of a {@link SupergraphOutput} - can be watched through a
+ * {@link Flow.Publisher} from {@link #getOutput(NodeVariable)}.<br>
+ * <br>
+ * Every record that arrives is written to its input, the graph is updated once, and every output publishes its
+ * value.  All of this happens on one worker thread so the graph is never updated twice at the same time.  Each input
+ * asks for at most <code>prefetch</code> records ahead.  Publishing an output blocks while a subscriber's buffer is
+ * full, so a slow consumer slows down the producers.
+ */
+public class GraphStream implements AutoCloseable {
+    private final NodeGraph graph;
+
+    private final ExecutorService worker;
+
+    private final boolean ownsWorker;
+
+    private final int prefetch;
+
+    private final List<Input> inputs = new ArrayList<>();
+
+    private final List<Output> outputs = new ArrayList<>();
+
+    private final AtomicLong evaluations = new AtomicLong();
+
+    private int completedInputs = 0;
+
+    /**
+     * Streams the given graph on its own worker thread, fetching up to 16 records ahead on each input.
+     * @param graph the graph to drive.
+     */
+    public GraphStream(NodeGraph graph) {
+        this(graph,Executors.newSingleThreadExecutor(),true,16);
+    }
+
+    /**
+     * Streams the given graph on the given worker.  The worker must run one task at a time, in order.  The caller
+     * is responsible for shutting it down.
+     * @param graph the graph to drive.
+     * @param worker a single threaded executor.
+     * @param prefetch how many records each input may ask for ahead of time.  Must be at least 1.
+     * @throws IllegalArgumentException if any argument is invalid.
+     */
+    public GraphStream(NodeGraph graph,ExecutorService worker,int prefetch) throws IllegalArgumentException {
+        this(graph,worker,false,prefetch);
+    }
+
+    private GraphStream(NodeGraph graph,ExecutorService worker,boolean ownsWorker,int prefetch) throws IllegalArgumentException {
+        super();
+        if(graph==null) throw new IllegalArgumentException("graph cannot be null.");
+        if(worker==null) throw new IllegalArgumentException("worker cannot be null.");
+        if(prefetch<1) throw new IllegalArgumentException("prefetch must be at least 1.");
+        this.graph = graph;
+        this.worker = worker;
+        this.ownsWorker = ownsWorker;
+        this.prefetch = prefetch;
+    }
+
+    /**
+     * Returns a {@link Flow.Subscriber} that writes each record it receives into the output of the given
+     * {@link SupergraphInput}.
+     * @param n a {@link SupergraphInput} in the graph with exactly one output.
+     * @return a {@link Flow.Subscriber} for the given {@link Node}.
+     * @throws IllegalArgumentException if the {@link Node} is not a {@link SupergraphInput} of the graph.
+     */
+    public synchronized Flow.Subscriber<Object> getInput(Node n) throws IllegalArgumentException {
+        if(!(n instanceof SupergraphInput) || !graph.getNodes().contains(n)) {
+            throw new IllegalArgumentException(n.getUniqueName()+" is not a SupergraphInput of this graph.");
+        }
+        NodeVariable<?> found = null;
+        for(NodeVariable<?> v : n.getVariables()) {
+            if(v.getHasOutput()) {
+                if(found!=null) throw new IllegalArgumentException(n.getUniqueName()+" has more than one output.");
+                found = v;
+            }
+        }
+        if(found==null) throw new IllegalArgumentException(n.getUniqueName()+" has no output.");
+
+        Input input = new Input(found);
+        inputs.add(input);
+        return input;
+    }
+
+    /**
+     * Returns a {@link Flow.Publisher} of the value of the given {@link NodeVariable} after every evaluation.
+     * @param v a variable of a {@link Node} in the graph.
+     * @return a {@link Flow.Publisher} for the given variable.
+     * @throws IllegalArgumentException if the variable does not belong to the graph.
+     */
+    public synchronized Flow.Publisher<Object> getOutput(NodeVariable<?> v) throws IllegalArgumentException {
+        if(v.getOwner()==null || !graph.getNodes().contains(v.getOwner())) {
+            throw new IllegalArgumentException(v.getName()+" is not part of this graph.");
+        }
+        Output output = new Output(v);
+        outputs.add(output);
+        return output.publisher;
+    }
+
+    /**
+     * Returns the number of times the graph has been evaluated.
+     * @return the number of times the graph has been evaluated.
+     */
+    public long getEvaluationCount() {
+        return evaluations.get();
+    }
+
+    /**
+     * Completes every output.  Shuts down the worker if this stream created it.
+     */
+    @Override
+    public synchronized void close() {
+        for(Output o : outputs) o.publisher.close();
+        for(Input i : inputs) i.cancel();
+        if(ownsWorker) worker.shutdown();
+    }
+
+    /**
+     * Runs on the worker thread.
+     */
+    private void evaluate(NodeVariable<?> variable,Object item) {
+        variable.setValue(item);
+        graph.update();
+        evaluations.incrementAndGet();
+        List<Output> list;
+        synchronized(this) {
+            list = new ArrayList<>(outputs);
+        }
+        for(Output o : list) {
+            if(!o.publisher.isClosed()) o.publisher.submit(o.variable.getValue());
+        }
+    }
+
+    private synchronized void inputCompleted() {
+        completedInputs++;
+        if(completedInputs==inputs.size()) {
+            for(Output o : outputs) o.publisher.close();
+        }
+    }
+
+    private synchronized void inputFailed(Throwable throwable) {
+        for(Output o : outputs) o.publisher.closeExceptionally(throwable);
+    }
+
+    private class Input implements Flow.Subscriber<Object> {
+        private final NodeVariable<?> variable;
+
+        private volatile Flow.Subscription subscription;
+
+        Input(NodeVariable<?> variable) {
+            this.variable = variable;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            if(this.subscription!=null) {
+                subscription.cancel();
+                return;
+            }
+            this.subscription = subscription;
+            subscription.request(prefetch);
+        }
+
+        @Override
+        public void onNext(Object item) {
+            worker.execute(()->{
+                evaluate(variable,item);
+                subscription.request(1);
+            });
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            worker.execute(()->inputFailed(throwable));
+        }
+
+        @Override
+        public void onComplete() {
+            worker.execute(GraphStream.this::inputCompleted);
+        }
+
+        void cancel() {
+            Flow.Subscription s = subscription;
+            if(s!=null) s.cancel();
+        }
+    }
+
+    private static class Output {
+        final NodeVariable<?> variable;
+        final SubmissionPublisher<Object> publisher = new SubmissionPublisher<>();
+
+        Output(NodeVariable<?> variable) {
+            this.variable = variable;
+        }
+    }
+}
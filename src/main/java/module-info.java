@@ -23,6 +23,9 @@ module com.marginallyclever.nodegraphcore {
 
     exports com.marginallyclever.nodegraphcore;
     exports com.marginallyclever.nodegraphcore.json;
+    exports com.marginallyclever.nodegraphcore.executors;
+    exports com.marginallyclever.nodegraphcore.compiler;
+    exports com.marginallyclever.nodegraphcore.stream;
 
     exports com.marginallyclever.donatello;
     exports com.marginallyclever.donatello.actions;
@@ -9,6 +9,9 @@ import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.io.FileNotFoundException;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 /**
@@ -53,9 +56,10 @@ public class TestNodeGraphSwing {
     }
 
     @Test
-    public void testImages() {
+    public void testImages() throws Exception {
         LoadImage img2 = new LoadImage("doesNotExist.png");
-        img2.update();
+        assertThrows(FileNotFoundException.class,img2::update);
+        assertTrue(img2.isDirty());
 
         LoadImage img = new LoadImage("src/test/resources/test.png");
         img.update();
@@ -70,4 +74,32 @@ public class TestNodeGraphSwing {
         assertEquals("test.graph",actionSaveGraph.addExtensionIfNeeded("test"));
         assertEquals("test.graph",actionSaveGraph.addExtensionIfNeeded("test.graph"));
     }
+
+    @Test
+    public void testUpdateClockSkipsOverruns() throws Exception {
+        UpdateClock clock = new UpdateClock(5);
+        try {
+            AtomicInteger calls = new AtomicInteger();
+            clock.addListener(()->{
+                // the first few ticks take several periods each.
+                if(calls.incrementAndGet()<=3) {
+                    try {
+                        Thread.sleep(17);
+                    } catch(InterruptedException ignored) {}
+                }
+            });
+            long deadline = System.currentTimeMillis()+5000;
+            while(clock.getTickCount()<20 && System.currentTimeMillis()<deadline) Thread.sleep(5);
+            assertTrue(clock.getTickCount()>=20);
+            assertTrue(clock.getOverrunCount()>=3);
+            assertTrue(clock.getSkippedCount()>=clock.getOverrunCount());
+            assertTrue(clock.getAchievedRate()>0);
+
+            clock.setPeriodMillis(10);
+            assertEquals(10,clock.getPeriodMillis());
+            assertThrows(IllegalArgumentException.class,()->clock.setPeriodMillis(0));
+        } finally {
+            clock.stop();
+        }
+    }
 }
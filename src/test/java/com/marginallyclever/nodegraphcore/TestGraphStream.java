@@ -0,0 +1,70 @@
+package com.marginallyclever.nodegraphcore;
+
+import com.marginallyclever.nodegraphcore.corenodes.LoadNumber;
+import com.marginallyclever.nodegraphcore.corenodes.math.Multiply;
+import com.marginallyclever.nodegraphcore.stream.GraphStream;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Flow;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test {@link GraphStream}.
+ */
+public class TestGraphStream {
+    /**
+     * confirm every record produces one evaluation and one output, in order, and that completing the input
+     * completes the output.
+     */
+    @Test
+    public void testOneOutputPerRecord() throws Exception {
+        NodeGraph graph = new NodeGraph();
+        Node input = graph.add(new LoadNumber(0));
+        Node multiply = graph.add(new Multiply(0,2));
+        graph.add(new NodeConnection(input,0,multiply,0));
+
+        List<Object> results = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch done = new CountDownLatch(1);
+
+        try(GraphStream stream = new GraphStream(graph);
+            SubmissionPublisher<Object> source = new SubmissionPublisher<>()) {
+            stream.getOutput(multiply.getVariable(2)).subscribe(new Flow.Subscriber<>() {
+                @Override
+                public void onSubscribe(Flow.Subscription subscription) {
+                    subscription.request(Long.MAX_VALUE);
+                }
+
+                @Override
+                public void onNext(Object item) {
+                    results.add(item);
+                }
+
+                @Override
+                public void onError(Throwable throwable) {}
+
+                @Override
+                public void onComplete() {
+                    done.countDown();
+                }
+            });
+            source.subscribe(stream.getInput(input));
+
+            for(int i=1;i<=100;++i) source.submit(i);
+            source.close();
+
+            assertTrue(done.await(10,TimeUnit.SECONDS));
+            assertEquals(100,stream.getEvaluationCount());
+            assertEquals(100,results.size());
+            for(int i=0;i<100;++i) assertEquals((i+1)*2.0,results.get(i));
+
+            assertThrows(IllegalArgumentException.class,()->stream.getInput(multiply));
+        }
+    }
+}
@@ -11,8 +11,21 @@ import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
 import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicReference;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -155,7 +168,8 @@ public class TestNodeGraphCore {
     }
 
     /**
-     * confirm a {@link NodeGraph} can be serialized and de-serialized.
+     * confirm a {@link NodeGraph} can be serialized and de-serialized.  Loading marks connected inputs dirty, so the
+     * copy is updated once to settle before the two are compared.
      */
     @Test
     public void testModelToJSONAndBack() {
@@ -163,6 +177,7 @@ public class TestNodeGraphCore {
         JSONObject a = nodeGraph.toJSON();
         NodeGraph modelB = new NodeGraph();
         modelB.parseJSON(a);
+        modelB.update();
         assertEquals(nodeGraph.toString(),modelB.toString());
     }
 
@@ -255,4 +270,934 @@ public class TestNodeGraphCore {
         modelB.update();
         assertEquals(9.0,m.getVariable(2).getValue());
     }
+
+    /**
+     * confirm a chain of {@link Node}s added in reverse order settles in a single {@link NodeGraph#update()}.
+     */
+    @Test
+    public void testLongChainSettlesInOneUpdate() {
+        NodeGraph graph = new NodeGraph();
+        Node constant = new LoadNumber(1);
+        List<Node> chain = new ArrayList<>();
+        for(int i=0;i<20;++i) {
+            Node add = new Add();
+            add.getVariable(1).setValue(1);
+            chain.add(add);
+        }
+        // add everything backwards so that list order is the worst case.
+        for(int i=chain.size()-1;i>=0;--i) graph.add(chain.get(i));
+        graph.add(constant);
+        Node previous = constant;
+        for(Node add : chain) {
+            graph.add(new NodeConnection(previous,previous==constant?0:2,add,0));
+            previous = add;
+        }
+
+        graph.update();
+        assertEquals(21.0, previous.getVariable(2).getValue());
+    }
+
+    /**
+     * confirm the connection indexes agree with the list of connections as the graph is edited.
+     */
+    @Test
+    public void testConnectionIndexes() {
+        NodeGraph graph = new NodeGraph();
+        Node constant0 = graph.add(new LoadNumber(1));
+        Node constant1 = graph.add(new LoadNumber(2));
+        Node add = graph.add(new Add());
+        Node report = graph.add(new PrintToStdOut());
+        NodeConnection c0 = graph.add(new NodeConnection(constant0,0,add,0));
+        NodeConnection c1 = graph.add(new NodeConnection(constant1,0,add,1));
+        NodeConnection c2 = graph.add(new NodeConnection(add,2,report,0));
+
+        assertEquals(List.of(c0,c1,c2),graph.getConnectionsAttachedTo(add));
+        assertEquals(List.of(c1),graph.getAllConnectionsInto(add.getVariable(1)));
+        assertSame(c2,graph.getMatchingConnection(new NodeConnection(add,2,report,0)));
+
+        List<Node> selection = List.of(constant0,add);
+        assertEquals(List.of(c0),graph.getInteriorConnections(selection));
+        assertEquals(List.of(c1,c2),graph.getExteriorConnections(selection));
+
+        graph.removeAllConnectionsInto(add.getVariable(1));
+        assertEquals(List.of(c0,c2),graph.getConnections());
+        assertTrue(graph.getAllConnectionsInto(add.getVariable(1)).isEmpty());
+
+        graph.removeNodes(selection);
+        assertEquals(List.of(constant1,report),graph.getNodes());
+        assertTrue(graph.getConnections().isEmpty());
+        assertTrue(graph.getConnectionsAttachedTo(report).isEmpty());
+        assertNull(graph.getMatchingConnection(new NodeConnection(add,2,report,0)));
+    }
+
+    /**
+     * confirm primitive variables keep the {@link Number} API, move primitives across connections, and write the
+     * same JSON as a plain {@link NodeVariable}.
+     */
+    @Test
+    public void testPrimitiveVariables() {
+        DoubleVariable d = NodeVariable.newDouble("A",0,true,false);
+        d.setValue(5);
+        assertEquals(5,d.getValue());
+        assertEquals(5.0,d.getDouble());
+        d.setDouble(2.5);
+        assertEquals(2.5,d.getValue());
+
+        NodeVariable<Number> boxed = NodeVariable.newInstance("A",Number.class,2.5,true,false);
+        assertEquals(boxed.toJSON().toString(),d.toJSON().toString());
+        DoubleVariable parsed = NodeVariable.newDouble("A",0,true,false);
+        parsed.parseJSON(boxed.toJSON());
+        assertEquals(2.5,parsed.getDouble());
+
+        LongVariable l = NodeVariable.newLong("L",7,false,true);
+        assertEquals(7L,l.getValue());
+        BooleanVariable b = NodeVariable.newBoolean("B",true,false,true);
+        assertTrue(b.getBoolean());
+        assertEquals(Boolean.TRUE,b.getValue());
+
+        NodeGraph graph = new NodeGraph();
+        Node add1 = graph.add(new Add(1,2));
+        Node add2 = graph.add(new Add(0,10));
+        graph.add(new NodeConnection(add1,2,add2,0));
+        graph.update();
+        assertEquals(13.0,((DoubleVariable)add2.getVariable(2)).getDouble());
+    }
+
+    /**
+     * A {@link PureFunction} used only by {@link #testMemoCache()} so that enabling its cache cannot disturb other
+     * tests.
+     */
+    private static class CountingSquare extends Node implements PureFunction {
+        private final NodeVariable<Number> a = NodeVariable.newInstance("A",Number.class,0,true,false);
+        private final NodeVariable<Number> b = NodeVariable.newInstance("output",Number.class,0,false,true);
+        public int count = 0;
+
+        public CountingSquare() {
+            super("CountingSquare");
+            addVariable(a);
+            addVariable(b);
+        }
+
+        @Override
+        public Node create() {
+            return new CountingSquare();
+        }
+
+        @Override
+        public void update() {
+            count++;
+            double v = a.getValue().doubleValue();
+            b.setValue(v*v);
+            cleanAllInputs();
+        }
+    }
+
+    /**
+     * confirm a {@link MemoCache} skips {@link Node#update()} for inputs it has seen and evicts the oldest entry.
+     */
+    @Test
+    public void testMemoCache() throws Exception {
+        assertThrows(IllegalArgumentException.class,()->MemoCache.enable(PrintToStdOut.class,4));
+
+        MemoCache cache = MemoCache.enable(CountingSquare.class,2);
+        try {
+            CountingSquare square = new CountingSquare();
+            for(int v : new int[]{2,3,2,3,2}) {
+                square.getVariable(0).setValue(v);
+                square.updateIfNotDirty();
+                assertEquals(v*v*1.0,square.getVariable(1).getValue());
+            }
+            assertEquals(2,square.count);
+            assertEquals(3,cache.getHits());
+            assertEquals(2,cache.getMisses());
+
+            // 4 evicts 3, the least recently used.
+            square.getVariable(0).setValue(4);
+            square.updateIfNotDirty();
+            square.getVariable(0).setValue(3);
+            square.updateIfNotDirty();
+            assertEquals(4,square.count);
+            assertEquals(2,cache.size());
+        } finally {
+            MemoCache.disable(CountingSquare.class);
+        }
+        assertNull(MemoCache.get(CountingSquare.class));
+    }
+
+    /**
+     * A {@link PureFunction} used only by {@link #testMemoCacheRestoresNull()}.  Outputs null for negative inputs.
+     */
+    private static class NameOrNull extends Node implements PureFunction {
+        private final NodeVariable<Number> a = NodeVariable.newInstance("A",Number.class,0,true,false);
+        private final NodeVariable<String> b = NodeVariable.newInstance("output",String.class,null,false,true);
+
+        public NameOrNull() {
+            super("NameOrNull");
+            addVariable(a);
+            addVariable(b);
+        }
+
+        @Override
+        public Node create() {
+            return new NameOrNull();
+        }
+
+        @Override
+        public void update() {
+            int v = a.getValue().intValue();
+            b.value = (v<0) ? null : "v"+v;
+            b.setIsDirty(true);
+            cleanAllInputs();
+        }
+    }
+
+    /**
+     * confirm a {@link MemoCache} restores a remembered null output instead of keeping the last value.
+     */
+    @Test
+    public void testMemoCacheRestoresNull() throws Exception {
+        MemoCache cache = MemoCache.enable(NameOrNull.class,4);
+        try {
+            NameOrNull n = new NameOrNull();
+            n.getVariable(0).setValue(-1);
+            n.updateIfNotDirty();
+            assertNull(n.getVariable(1).getValue());
+            n.getVariable(0).setValue(5);
+            n.updateIfNotDirty();
+            assertEquals("v5",n.getVariable(1).getValue());
+            n.getVariable(0).setValue(-1);
+            n.updateIfNotDirty();
+            assertEquals(1,cache.getHits());
+            assertNull(n.getVariable(1).getValue());
+        } finally {
+            MemoCache.disable(NameOrNull.class);
+        }
+    }
+
+    /**
+     * confirm {@link NodeGraph#evaluateBatch(Map)} puts back a null output and leaves the graph quiescent.
+     */
+    @Test
+    public void testBatchRestoresNodesQuietly() {
+        NodeGraph graph = new NodeGraph();
+        Node a = graph.add(new LoadNumber(-1));
+        Node name = graph.add(new NameOrNull());
+        graph.add(new NodeConnection(a,0,name,0));
+        graph.update();
+        assertNull(name.getVariable(1).getValue());
+        assertTrue(graph.isQuiescent());
+        int changes = name.getVariable(1).getChangeCount();
+
+        Map<NodeVariable<?>,Object> results = graph.evaluateBatch(Map.of(a,new double[] {5,6}));
+        assertArrayEquals(new Object[] {"v5","v6"},(Object[])results.get(name.getVariable(1)));
+        assertNull(name.getVariable(1).getValue());
+        assertEquals(changes,name.getVariable(1).getChangeCount());
+        assertTrue(graph.isQuiescent());
+    }
+
+    /**
+     * confirm cycles are found and a delay connection closes a feedback loop without making a cycle.
+     */
+    @Test
+    public void testCyclesAndDelayConnections() {
+        NodeGraph graph = new NodeGraph();
+        Node a = graph.add(new Add(0,1));
+        Node b = graph.add(new Multiply(1,1));
+        graph.add(new NodeConnection(a,2,b,0));
+        NodeConnection back = graph.add(new NodeConnection(b,2,a,0));
+        List<List<Node>> cycles = graph.getCycles();
+        assertEquals(1,cycles.size());
+        assertEquals(List.of(a,b),cycles.get(0));
+
+        // a counter: each tick adds 1 to the value from the previous tick.
+        back.setDelay(true);
+        graph.invalidateExecutionPlan();
+        assertTrue(graph.getCycles().isEmpty());
+        assertEquals(List.of(a,b),graph.getExecutionPlan().getOrder());
+        for(int i=1;i<=5;++i) {
+            graph.update();
+            assertEquals((double)i,b.getVariable(2).getValue());
+        }
+
+        NodeGraph copy = new NodeGraph();
+        copy.parseJSON(graph.toJSON());
+        assertTrue(copy.getCycles().isEmpty());
+        assertEquals(1,copy.getConnections().stream().filter(NodeConnection::isDelay).count());
+
+        Node self = graph.add(new Add(0,1));
+        graph.add(new NodeConnection(self,2,self,0));
+        assertEquals(List.of(List.of(self)),graph.getCycles());
+    }
+
+    /**
+     * confirm {@link GraphRunner} can load a saved graph and measure it.
+     */
+    @Test
+    public void testGraphRunner(@TempDir File dir) throws Exception {
+        NodeGraph graph = new NodeGraph();
+        Node a = graph.add(new LoadNumber(1));
+        Node b = graph.add(new LoadNumber(2));
+        Node add = graph.add(new Add());
+        graph.add(new NodeConnection(a,0,add,0));
+        graph.add(new NodeConnection(b,0,add,1));
+        File file = new File(dir,"test.graph");
+        Files.write(file.toPath(),graph.toJSON().toString().getBytes(StandardCharsets.UTF_8));
+
+        NodeGraph loaded = GraphRunner.load(file.getAbsolutePath());
+        assertEquals(3,loaded.getNodes().size());
+        GraphRunner.Report report = new GraphRunner(loaded).run(100,true);
+        assertEquals(1,report.getTicks());
+        assertTrue(report.getUpdates()>0);
+        assertTrue(report.getPercentileNanos(0.99)>=report.getPercentileNanos(0.5));
+        assertTrue(report.toString().contains("ticks/sec"));
+
+        report = new GraphRunner(loaded).run(10,false);
+        assertEquals(10,report.getTicks());
+        assertEquals(0,report.getUpdates());
+
+        assertThrows(IllegalArgumentException.class,()->GraphRunner.createExecutor("nonsense"));
+    }
+
+    /**
+     * confirm instances of one {@link GraphTemplate} keep their own values.
+     */
+    @Test
+    public void testGraphTemplate() {
+        NodeGraph graph = new NodeGraph();
+        Node a = graph.add(new LoadNumber(1));
+        Node b = graph.add(new LoadNumber(2));
+        Node add = graph.add(new Add());
+        graph.add(new NodeConnection(a,0,add,0));
+        graph.add(new NodeConnection(b,0,add,1));
+        GraphTemplate template = new GraphTemplate(graph);
+        assertEquals(5,template.getVariableCount());
+
+        GraphInstance first = template.newInstance();
+        GraphInstance second = template.newInstance();
+        assertTrue(first.isDirty());
+        first.update();
+        second.setValue(a.getVariable(0),10);
+        second.update();
+        assertFalse(first.isDirty());
+        assertEquals(3.0,((Number)first.getValue(add.getVariable(2))).doubleValue());
+        assertEquals(12.0,((Number)second.getValue(add.getVariable(2))).doubleValue());
+
+        first.setValue(b.getVariable(0),5);
+        assertTrue(first.isDirty());
+        first.update();
+        assertEquals(6.0,((Number)first.getValue(add.getVariable(2))).doubleValue());
+        assertEquals(12.0,((Number)second.getValue(add.getVariable(2))).doubleValue());
+
+        assertThrows(IllegalArgumentException.class,()->first.setValue(a.getVariable(0),"text"));
+        assertThrows(IllegalArgumentException.class,()->first.getValue(new LoadNumber(0).getVariable(0)));
+    }
+
+    /**
+     * confirm a null value in one {@link GraphInstance} is not replaced by the value of the instance updated before it.
+     */
+    @Test
+    public void testGraphTemplateRestoresNull() {
+        NodeGraph graph = new NodeGraph();
+        Node a = graph.add(new LoadNumber(-1));
+        Node name = graph.add(new NameOrNull());
+        graph.add(new NodeConnection(a,0,name,0));
+        graph.update();
+        assertNull(name.getVariable(1).getValue());
+        GraphTemplate template = new GraphTemplate(graph);
+
+        GraphInstance first = template.newInstance();
+        first.setValue(a.getVariable(0),5);
+        first.update();
+        assertEquals("v5",first.getValue(name.getVariable(1)));
+
+        GraphInstance second = template.newInstance();
+        second.update();
+        assertNull(second.getValue(name.getVariable(1)));
+        assertNull(template.copyOf(second).getNodes().get(1).getVariable(1).getValue());
+    }
+
+    /**
+     * confirm every {@link GraphInstance} gets its own copy of a mutable starting value.
+     */
+    @Test
+    public void testGraphTemplateCopiesStartingValues() {
+        NodeGraph graph = new NodeGraph();
+        Node a = graph.add(new LoadNumber(0));
+        Node paint = graph.add(new PaintsInPlace());
+        graph.add(new NodeConnection(a,0,paint,0));
+        NodeVariable<?> image = paint.getVariable(1);
+        Object original = image.getValue();
+        GraphTemplate template = new GraphTemplate(graph);
+
+        GraphInstance first = template.newInstance();
+        GraphInstance second = template.newInstance();
+        assertNotSame(original,first.getValue(image));
+        assertNotSame(first.getValue(image),second.getValue(image));
+
+        first.setValue(a.getVariable(0),7);
+        first.update();
+        second.update();
+        assertEquals(7,((BufferedImage)first.getValue(image)).getRGB(0,0) & 0xffffff);
+        assertEquals(0,((BufferedImage)second.getValue(image)).getRGB(0,0) & 0xffffff);
+        assertEquals(0,((BufferedImage)template.newInstance().getValue(image)).getRGB(0,0) & 0xffffff);
+    }
+
+    /**
+     * confirm instances of one {@link GraphTemplate} can be updated by many threads at once.
+     */
+    @Test
+    public void testGraphTemplateConcurrentInstances() throws Exception {
+        NodeGraph graph = new NodeGraph();
+        Node a = graph.add(new LoadNumber(0));
+        Node add = graph.add(new Add(0,1));
+        graph.add(new NodeConnection(a,0,add,0));
+        GraphTemplate template = new GraphTemplate(graph);
+
+        int threads = 4;
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Boolean>> results = new ArrayList<>();
+            for(int t=0;t<threads;++t) {
+                final int base = t*1000;
+                results.add(pool.submit(()->{
+                    GraphInstance instance = template.newInstance();
+                    for(int i=0;i<200;++i) {
+                        instance.setValue(a.getVariable(0),base+i);
+                        instance.update();
+                        if(((Number)instance.getValue(add.getVariable(2))).doubleValue()!=base+i+1) return false;
+                    }
+                    return true;
+                }));
+            }
+            for(Future<Boolean> f : results) assertTrue(f.get());
+        } finally {
+            pool.shutdown();
+        }
+        assertTrue(template.getWorkingCopyCount()>=1);
+        assertTrue(template.getWorkingCopyCount()<=threads);
+    }
+
+    /**
+     * confirm {@link NodeGraph#deepCopy()} copies values, connections and subgraphs without sharing mutable state.
+     */
+    @Test
+    public void testDeepCopy() {
+        NodeGraph graph = new NodeGraph();
+        Node a = graph.add(new LoadNumber(1));
+        Node b = graph.add(new LoadNumber(2));
+        Node add = graph.add(new Add());
+        graph.add(new NodeConnection(a,0,add,0));
+        graph.add(new NodeConnection(b,0,add,1,true));
+        add.setLabel("sum");
+        NodeVariable<BufferedImage> image = NodeVariable.newInstance("image",BufferedImage.class,new BufferedImage(3,2,BufferedImage.TYPE_INT_ARGB),false,false);
+
+        NodeGraph copy = graph.deepCopy();
+        assertEquals(graph.toJSON().toString(),copy.toJSON().toString());
+        assertEquals(3,copy.getNodes().size());
+        for(Node n : copy.getNodes()) {
+            assertFalse(graph.getNodes().contains(n));
+            assertSame(copy,n.getParentGraph());
+        }
+        for(NodeConnection c : copy.getConnections()) {
+            assertTrue(copy.getNodes().contains(c.getInNode()));
+            assertTrue(copy.getNodes().contains(c.getOutNode()));
+        }
+        assertTrue(copy.getConnections().get(1).isDelay());
+
+        NodeVariable<BufferedImage> imageCopy = NodeVariable.newInstance("image",BufferedImage.class,null,false,false);
+        imageCopy.copyFrom(image);
+        assertNotSame(image.getValue(),imageCopy.getValue());
+        assertEquals(3,imageCopy.getValue().getWidth());
+
+        Subgraph subgraph = new Subgraph(graph);
+        Subgraph subgraphCopy = (Subgraph)subgraph.deepCopy();
+        assertEquals(subgraph.getNumVariables(),subgraphCopy.getNumVariables());
+        assertEquals(3,subgraphCopy.getGraph().getNodes().size());
+        assertNotSame(subgraph.getGraph().getNodes().get(0),subgraphCopy.getGraph().getNodes().get(0));
+    }
+
+    /**
+     * confirm copies of a {@link Subgraph} share the inner graph until one is edited, keep their own values, and
+     * skip the inner graph when nothing has changed.
+     */
+    @Test
+    public void testSubgraphSharing() {
+        NodeGraph inner = new NodeGraph();
+        Node in = inner.add(new LoadNumber(1));
+        Node add = inner.add(new Add(0,10));
+        Node out = inner.add(new PrintToStdOut());
+        inner.add(new NodeConnection(in,0,add,0));
+        inner.add(new NodeConnection(add,2,out,0));
+
+        NodeGraph outer = new NodeGraph();
+        Subgraph first = (Subgraph)outer.add(new Subgraph(inner));
+        Subgraph second = (Subgraph)outer.add(first.deepCopy());
+        assertTrue(first.isShared());
+        assertTrue(second.isShared());
+        int inputIndex = -1;
+        for(int i=0;i<first.getNumVariables();++i) {
+            if(first.getVariable(i).getHasInput()) inputIndex = i;
+        }
+        assertNotEquals(-1,inputIndex);
+
+        first.getVariable(inputIndex).setValue(5);
+        second.getVariable(inputIndex).setValue(7);
+        outer.update();
+        assertTrue(outer.isQuiescent());
+        assertFalse(first.isDirty());
+
+        NodeGraph firstInner = first.getGraph();
+        assertFalse(first.isShared());
+        assertTrue(second.isShared());
+        assertEquals(15.0,((Number)firstInner.getNodes().get(1).getVariable(2).getValue()).doubleValue());
+
+        // editing the private copy does not change the shared one.
+        firstInner.getNodes().get(1).getVariable(1).setValue(100);
+        outer.update();
+        assertEquals(105.0,((Number)firstInner.getNodes().get(1).getVariable(2).getValue()).doubleValue());
+        NodeGraph secondInner = second.getGraph();
+        assertEquals(17.0,((Number)secondInner.getNodes().get(1).getVariable(2).getValue()).doubleValue());
+    }
+
+    /**
+     * confirm copying a {@link Subgraph} whose inner graph was handed out by {@link Subgraph#getGraph()} leaves that
+     * graph private, so later edits to it do not reach the copies.
+     */
+    @Test
+    public void testSubgraphCopyKeepsHandedOutGraphPrivate() {
+        NodeGraph inner = new NodeGraph();
+        Node in = inner.add(new LoadNumber(1));
+        Node add = inner.add(new Add(0,10));
+        Node out = inner.add(new ExposedNumber("result"));
+        inner.add(new NodeConnection(in,0,add,0));
+        inner.add(new NodeConnection(add,2,out,0));
+
+        Subgraph original = new Subgraph(inner);
+        NodeGraph held = original.getGraph();
+        Subgraph copy = (Subgraph)original.deepCopy();
+        assertFalse(original.isShared());
+        assertTrue(copy.isShared());
+        assertSame(held,original.getGraph());
+
+        held.getNodes().get(1).getVariable(1).setValue(100);
+        Subgraph later = (Subgraph)original.deepCopy();
+        copy.update();
+        later.update();
+        int result = exposedIndex(copy,"result",false);
+        assertEquals(11.0,((Number)copy.getVariable(result).getValue()).doubleValue());
+        assertEquals(101.0,((Number)later.getVariable(result).getValue()).doubleValue());
+    }
+
+    /**
+     * Draws its input into the same image every time it is updated.
+     */
+    private static class PaintsInPlace extends Node {
+        private final NodeVariable<Number> a = NodeVariable.newInstance("A",Number.class,0,true,false);
+        private final NodeVariable<BufferedImage> b = NodeVariable.newInstance("image",BufferedImage.class,new BufferedImage(1,1,BufferedImage.TYPE_INT_RGB),false,true);
+
+        public PaintsInPlace() {
+            super("PaintsInPlace");
+            addVariable(a);
+            addVariable(b);
+        }
+
+        @Override
+        public Node create() {
+            return new PaintsInPlace();
+        }
+
+        @Override
+        public void update() {
+            BufferedImage image = b.getValue();
+            image.setRGB(0,0,a.getValue().intValue());
+            b.setValue(image);
+            cleanAllInputs();
+        }
+    }
+
+    /**
+     * Exposes one image to the graph that holds its {@link Subgraph}.
+     */
+    private static class ExposedImage extends Node implements SupergraphOutput {
+        public ExposedImage() {
+            super("ExposedImage");
+            addVariable(NodeVariable.newInstance("image",BufferedImage.class,null,true,false));
+        }
+
+        @Override
+        public Node create() {
+            return new ExposedImage();
+        }
+
+        @Override
+        public void update() {
+            cleanAllInputs();
+        }
+    }
+
+    /**
+     * confirm a {@link Subgraph} passes on an inner value that was changed in place, private or shared.
+     */
+    @Test
+    public void testSubgraphPushesValueChangedInPlace() {
+        NodeGraph inner = new NodeGraph();
+        Node in = inner.add(new LoadNumber(1));
+        Node paint = inner.add(new PaintsInPlace());
+        Node out = inner.add(new ExposedImage());
+        inner.add(new NodeConnection(in,0,paint,0));
+        inner.add(new NodeConnection(paint,1,out,0));
+
+        Subgraph first = new Subgraph(inner);
+        Subgraph second = (Subgraph)new Subgraph(inner).deepCopy();
+        assertFalse(first.isShared());
+        assertTrue(second.isShared());
+        for(Subgraph s : List.of(first,second)) {
+            int input = exposedIndex(s,"value",true);
+            NodeVariable<?> image = s.getVariable(exposedIndex(s,"image",false));
+            s.update();
+            assertEquals(1,((BufferedImage)image.getValue()).getRGB(0,0) & 0xffffff);
+
+            int before = image.getChangeCount();
+            s.getVariable(input).setValue(2);
+            s.update();
+            assertTrue(image.getChangeCount()>before);
+            assertEquals(2,((BufferedImage)image.getValue()).getRGB(0,0) & 0xffffff);
+        }
+    }
+
+    /**
+     * Exposes one number to the graph that holds its {@link Subgraph}.
+     */
+    private static class ExposedNumber extends Node implements SupergraphOutput {
+        private final String name;
+
+        public ExposedNumber(String name) {
+            super("ExposedNumber");
+            this.name = name;
+            addVariable(NodeVariable.newDouble(name,0,true,false));
+        }
+
+        @Override
+        public Node create() {
+            return new ExposedNumber(name);
+        }
+
+        @Override
+        public void update() {
+            cleanAllInputs();
+        }
+    }
+
+    private static int exposedIndex(Node n,String name,boolean input) {
+        for(int i=0;i<n.getNumVariables();++i) {
+            NodeVariable<?> v = n.getVariable(i);
+            if(v.getName().equals(name) && (input ? v.getHasInput() : v.getHasOutput())) return i;
+        }
+        throw new AssertionError(name+" is not exposed");
+    }
+
+    /**
+     * Builds a graph that feeds a number through two nested {@link Subgraph}s, each adding 10, into an Add of 1.
+     * @return the outer graph.  Its third node is the final Add.
+     */
+    private NodeGraph buildNestedSubgraphs() {
+        NodeGraph inner = new NodeGraph();
+        Node in = inner.add(new LoadNumber(0));
+        Node add = inner.add(new Add(0,10));
+        Node out = inner.add(new ExposedNumber("innerResult"));
+        inner.add(new NodeConnection(in,0,add,0));
+        inner.add(new NodeConnection(add,2,out,0));
+
+        NodeGraph middle = new NodeGraph();
+        Node middleIn = middle.add(new LoadNumber(0));
+        Subgraph innerFold = (Subgraph)middle.add(new Subgraph(inner));
+        Node middleAdd = middle.add(new Add(0,10));
+        Node middleOut = middle.add(new ExposedNumber("middleResult"));
+        middle.add(new NodeConnection(middleIn,0,innerFold,exposedIndex(innerFold,"value",true)));
+        middle.add(new NodeConnection(innerFold,exposedIndex(innerFold,"innerResult",false),middleAdd,0));
+        middle.add(new NodeConnection(middleAdd,2,middleOut,0));
+
+        NodeGraph outer = new NodeGraph();
+        Node source = outer.add(new LoadNumber(3));
+        Subgraph middleFold = (Subgraph)outer.add(new Subgraph(middle));
+        Node sink = outer.add(new Add(0,1));
+        outer.add(new NodeConnection(source,0,middleFold,exposedIndex(middleFold,"value",true)));
+        outer.add(new NodeConnection(middleFold,exposedIndex(middleFold,"middleResult",false),sink,0));
+        return outer;
+    }
+
+    @Test
+    public void testInlineSubgraphs() {
+        NodeGraph folded = buildNestedSubgraphs();
+        NodeGraph inlined = buildNestedSubgraphs();
+        inlined.setInlineSubgraphs(true);
+
+        ExecutionPlan plan = inlined.getExecutionPlan();
+        for(Node n : plan.getOrder()) assertFalse(n instanceof Subgraph);
+        // 2 outer + 3 middle + 3 inner
+        assertEquals(8,plan.getOrder().size());
+        assertTrue(plan.getCycles().isEmpty());
+
+        folded.update();
+        inlined.update();
+        Node foldedSink = folded.getNodes().get(2);
+        Node inlinedSink = inlined.getNodes().get(2);
+        assertEquals(24.0,((Number)foldedSink.getVariable(2).getValue()).doubleValue());
+        assertEquals(24.0,((Number)inlinedSink.getVariable(2).getValue()).doubleValue());
+        assertTrue(inlined.isQuiescent());
+        // the folded Subgraph shows the value its inner graph made this tick.
+        Subgraph outerFold = (Subgraph)inlined.getNodes().get(1);
+        int middleResult = exposedIndex(outerFold,"middleResult",false);
+        assertEquals(23.0,((Number)outerFold.getVariable(middleResult).getValue()).doubleValue());
+
+        // a change upstream travels through both folds in one tick.
+        inlined.getNodes().get(0).getVariable(0).setValue(5);
+        inlined.update();
+        assertEquals(26.0,((Number)inlinedSink.getVariable(2).getValue()).doubleValue());
+        assertEquals(25.0,((Number)outerFold.getVariable(middleResult).getValue()).doubleValue());
+        assertTrue(inlined.isQuiescent());
+
+        // an edit inside a fold is scheduled by the outer graph.
+        Subgraph middleFold = (Subgraph)inlined.getNodes().get(1);
+        Node middleAdd = middleFold.getGraph().getNodes().get(2);
+        middleAdd.getVariable(1).setValue(100);
+        assertFalse(inlined.isQuiescent());
+        inlined.update();
+        assertEquals(116.0,((Number)inlinedSink.getVariable(2).getValue()).doubleValue());
+
+        // turning it off again runs the folds the usual way.
+        inlined.setInlineSubgraphs(false);
+        assertTrue(inlined.getExecutionPlan().getOrder().contains(middleFold));
+        inlined.getNodes().get(0).getVariable(0).setValue(6);
+        inlined.update();
+        assertEquals(117.0,((Number)inlinedSink.getVariable(2).getValue()).doubleValue());
+    }
+
+    /**
+     * confirm inlining a shared {@link Subgraph} does not stop later copies of it from sharing.
+     */
+    @Test
+    public void testInlineSubgraphsKeepsSharing() {
+        NodeGraph inner = new NodeGraph();
+        Node in = inner.add(new LoadNumber(1));
+        Node add = inner.add(new Add(0,10));
+        inner.add(new NodeConnection(in,0,add,0));
+
+        NodeGraph outer = new NodeGraph();
+        Subgraph first = (Subgraph)outer.add(new Subgraph(inner));
+        outer.add(first.deepCopy());
+        assertTrue(first.isShared());
+
+        outer.setInlineSubgraphs(true);
+        outer.update();
+        assertFalse(first.isShared());
+
+        outer.setInlineSubgraphs(false);
+        Subgraph later = (Subgraph)first.deepCopy();
+        assertTrue(first.isShared());
+        assertTrue(later.isShared());
+    }
+
+    @Test
+    public void testInlineSubgraphUnconnectedInput() {
+        NodeGraph inner = new NodeGraph();
+        Node in = inner.add(new LoadNumber(0));
+        Node add = inner.add(new Add(0,10));
+        inner.add(new NodeConnection(in,0,add,0));
+
+        NodeGraph outer = new NodeGraph();
+        outer.setInlineSubgraphs(true);
+        Subgraph fold = (Subgraph)outer.add(new Subgraph(inner));
+        outer.update();
+        Node innerAdd = fold.getGraph().getNodes().get(1);
+        assertEquals(10.0,((Number)innerAdd.getVariable(2).getValue()).doubleValue());
+
+        // the exposed input has no connection, so an edit to it is pushed inside.
+        fold.getVariable(exposedIndex(fold,"value",true)).setValue(4);
+        outer.update();
+        assertEquals(14.0,((Number)innerAdd.getVariable(2).getValue()).doubleValue());
+        assertTrue(outer.isQuiescent());
+    }
+
+    @Test
+    public void testGraphSnapshot() {
+        NodeGraph graph = new NodeGraph();
+        Node a = graph.add(new LoadNumber(2));
+        Node add = graph.add(new Add(0,3));
+        graph.add(new NodeConnection(a,0,add,0));
+        assertNull(graph.getSnapshot());
+
+        graph.setPublishSnapshots(true);
+        graph.update();
+        GraphSnapshot first = graph.getSnapshot();
+        assertNotNull(first);
+        assertEquals(5.0,((Number)first.getValue(add.getVariable(2))).doubleValue());
+        assertFalse(first.getIsDirty(add.getVariable(0)));
+        assertEquals(2,first.getNodes().size());
+        assertEquals(1,first.getConnections().size());
+        assertThrows(UnsupportedOperationException.class,()->first.getNodes().clear());
+
+        // the snapshot does not change with the graph.
+        a.getVariable(0).setValue(10);
+        assertEquals(2.0,((Number)first.getValue(a.getVariable(0))).doubleValue());
+        graph.update();
+        GraphSnapshot second = graph.getSnapshot();
+        assertNotSame(first,second);
+        assertEquals(13.0,((Number)second.getValue(add.getVariable(2))).doubleValue());
+        assertEquals(5.0,((Number)first.getValue(add.getVariable(2))).doubleValue());
+
+        // structure changes are visible in the version.
+        long version = graph.getStructureVersion();
+        assertEquals(version,second.getStructureVersion());
+        graph.add(new LoadNumber(1));
+        assertNotEquals(version,graph.getStructureVersion());
+
+        graph.setPublishSnapshots(false);
+        assertNull(graph.getSnapshot());
+    }
+
+    /**
+     * confirm a snapshot holds the values inside a private {@link Subgraph}, and that it cannot be taken from inside
+     * a tick, where it could see the tick half done.
+     */
+    @Test
+    public void testGraphSnapshotOfSubgraph() {
+        NodeGraph inner = new NodeGraph();
+        Node in = inner.add(new LoadNumber(1));
+        Node add = inner.add(new Add(0,10));
+        inner.add(new NodeConnection(in,0,add,0));
+
+        NodeGraph outer = new NodeGraph();
+        Subgraph fold = (Subgraph)outer.add(new Subgraph(inner));
+        outer.update();
+        Node innerAdd = fold.getGraph().getNodes().get(1);
+        GraphSnapshot s = outer.takeSnapshot();
+        assertEquals(11.0,((Number)s.getValue(innerAdd.getVariable(2))).doubleValue());
+
+        fold.getVariable(exposedIndex(fold,"value",true)).setValue(4);
+        outer.update();
+        assertEquals(14.0,((Number)innerAdd.getVariable(2).getValue()).doubleValue());
+        assertEquals(11.0,((Number)s.getValue(innerAdd.getVariable(2))).doubleValue());
+
+        AtomicReference<Throwable> thrown = new AtomicReference<>();
+        outer.add(new Node("TakesSnapshot") {
+            {
+                addVariable(NodeVariable.newInstance("in",Number.class,0,true,false));
+            }
+
+            @Override
+            public Node create() {
+                return this;
+            }
+
+            @Override
+            public void update() {
+                try {
+                    outer.takeSnapshot();
+                } catch(Throwable t) {
+                    thrown.set(t);
+                }
+            }
+        });
+        outer.update();
+        assertInstanceOf(IllegalStateException.class,thrown.get());
+    }
+
+    @Test
+    public void testConcurrentEdits() throws Exception {
+        NodeGraph graph = new NodeGraph();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread editor = new Thread(()->{
+            try {
+                for(int i=0;i<200;++i) {
+                    Node[] pair = new Node[2];
+                    // a node and its connection arrive together, like a paste.
+                    graph.edit(()->{
+                        pair[0] = graph.add(new LoadNumber(1));
+                        pair[1] = graph.add(new Add(0,1));
+                        graph.add(new NodeConnection(pair[0],0,pair[1],0));
+                    });
+                    if(i%2==0) graph.removeNodes(List.of(pair));
+                }
+            } catch(Throwable t) {
+                failure.set(t);
+            }
+        });
+        editor.start();
+        while(editor.isAlive()) {
+            graph.update();
+            GraphSnapshot s = graph.takeSnapshot();
+            assertEquals(s.getNodes().size(),2*s.getConnections().size());
+            for(Node n : graph.getNodes()) assertNotNull(n);
+        }
+        editor.join();
+        assertNull(failure.get());
+        assertEquals(200,graph.getNodes().size());
+        assertEquals(100,graph.getConnections().size());
+
+        Node first = graph.getNodes().get(0);
+        graph.moveNode(first,5);
+        assertSame(first,graph.getNodes().get(5));
+        assertThrows(IllegalArgumentException.class,()->graph.moveNode(first,200));
+    }
+
+    /**
+     * Tries to add a {@link Node} to its own graph while it is being updated.
+     */
+    private static class AddsToOwnGraph extends Node {
+        public AddsToOwnGraph() {
+            super("AddsToOwnGraph");
+            addVariable(NodeVariable.newDouble("A",0,true,false));
+        }
+
+        @Override
+        public Node create() {
+            return new AddsToOwnGraph();
+        }
+
+        @Override
+        public void update() {
+            getParentGraph().add(new LoadNumber(1));
+        }
+    }
+
+    /**
+     * confirm changing a graph from inside its own tick fails at once instead of waiting forever.
+     */
+    @Test
+    public void testEditFromInsideTickThrows() {
+        NodeGraph graph = new NodeGraph();
+        Node n = graph.add(new AddsToOwnGraph());
+        assertTimeoutPreemptively(Duration.ofSeconds(10),()->graph.update());
+        assertNotNull(n.getFailure());
+        assertTrue(n.getFailure().getException() instanceof IllegalStateException);
+        assertEquals(1,graph.getNodes().size());
+
+        // inside edit() the write lock is already held, so changes are allowed.
+        graph.edit(()->graph.add(new LoadNumber(2)));
+        assertEquals(2,graph.getNodes().size());
+    }
+
+    /**
+     * confirm {@link NodeGraph#remove(NodeConnection)} removes a connection given an equal one, and only that one.
+     */
+    @Test
+    public void testRemoveEqualConnection() {
+        NodeGraph graph = new NodeGraph();
+        Node a = graph.add(new LoadNumber(1));
+        Node b = graph.add(new LoadNumber(2));
+        Node add = graph.add(new Add());
+        graph.addConnections(List.of(new NodeConnection(a,0,add,0),new NodeConnection(b,0,add,1)));
+        assertEquals(2,graph.getConnectionsAttachedTo(add).size());
+
+        graph.remove(new NodeConnection(a,0,add,0));
+        assertEquals(1,graph.getConnections().size());
+        assertSame(b,graph.getConnections().get(0).getInNode());
+        assertEquals(1,graph.getConnectionsAttachedTo(add).size());
+        assertTrue(graph.getConnectionsAttachedTo(a).isEmpty());
+
+        // removing one that is not there changes nothing.
+        graph.remove(new NodeConnection(a,0,add,1));
+        assertEquals(1,graph.getConnections().size());
+    }
 }
@@ -0,0 +1,734 @@
+package com.marginallyclever.nodegraphcore;
+
+import com.marginallyclever.nodegraphcore.corenodes.LoadNumber;
+import com.marginallyclever.nodegraphcore.corenodes.PrintToStdOut;
+import com.marginallyclever.nodegraphcore.corenodes.math.Add;
+import com.marginallyclever.nodegraphcore.corenodes.math.GreaterThan;
+import com.marginallyclever.nodegraphcore.corenodes.math.Multiply;
+import com.marginallyclever.nodegraphcore.compiler.CompiledExecutor;
+import com.marginallyclever.nodegraphcore.executors.CriticalPathExecutor;
+import com.marginallyclever.nodegraphcore.executors.DataflowExecutor;
+import com.marginallyclever.nodegraphcore.executors.LevelParallelExecutor;
+import com.marginallyclever.nodegraphcore.executors.PipelinedExecutor;
+import com.marginallyclever.nodegraphcore.executors.PullExecutor;
+import com.marginallyclever.nodegraphcore.executors.SequentialExecutor;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Confirm every {@link NodeGraphExecutor} produces the same results as the {@link SequentialExecutor}.
+ */
+public class TestNodeGraphExecutors {
+    /**
+     * Passes A to output and counts how many times it has been updated.
+     */
+    private static class CountingNode extends Node {
+        private final NodeVariable<Number> a = NodeVariable.newInstance("A",Number.class,0,true,false);
+        private final NodeVariable<Number> b = NodeVariable.newInstance("output",Number.class,0,false,true);
+        public int count = 0;
+
+        public CountingNode() {
+            super("CountingNode");
+            addVariable(a);
+            addVariable(b);
+        }
+
+        @Override
+        public Node create() {
+            return new CountingNode();
+        }
+
+        @Override
+        public void update() {
+            count++;
+            b.setValue(a.getValue());
+            cleanAllInputs();
+        }
+    }
+
+    /**
+     * Sleeps for a while and records that it ran.
+     */
+    private static class SleepingNode extends Node {
+        private final NodeVariable<Number> a = NodeVariable.newInstance("A",Number.class,0,true,false);
+        private final List<Node> log;
+        private final long millis;
+
+        public SleepingNode(List<Node> log,long millis) {
+            super("SleepingNode");
+            this.log = log;
+            this.millis = millis;
+            addVariable(a);
+        }
+
+        @Override
+        public Node create() {
+            return new SleepingNode(log,millis);
+        }
+
+        @Override
+        public void update() throws Exception {
+            Thread.sleep(millis);
+            synchronized(log) {
+                log.add(this);
+            }
+            cleanAllInputs();
+        }
+    }
+
+    /**
+     * Doubles A on the I/O pool.
+     */
+    private static class SlowDoubler extends Node implements AsyncNode {
+        private final NodeVariable<Number> a = NodeVariable.newInstance("A",Number.class,0,true,false);
+        private final NodeVariable<Number> b = NodeVariable.newInstance("output",Number.class,0,false,true);
+
+        public SlowDoubler() {
+            super("SlowDoubler");
+            addVariable(a);
+            addVariable(b);
+        }
+
+        @Override
+        public Node create() {
+            return new SlowDoubler();
+        }
+
+        @Override
+        public void update() {
+            b.setValue(a.getValue().doubleValue()*2);
+            cleanAllInputs();
+        }
+
+        @Override
+        public CompletableFuture<Runnable> updateAsync(Executor ioPool) {
+            double value = a.getValue().doubleValue();
+            cleanAllInputs();
+            return CompletableFuture.supplyAsync(()->()->b.setValue(value*2),ioPool);
+        }
+    }
+
+    /**
+     * Build a wide graph: many independent branches of <code>(i+1)*2</code> that are summed at the end.
+     * @param graph the graph to fill.
+     * @param width the number of branches.
+     * @return the last {@link Add} in the sum.
+     */
+    private Node buildWideGraph(NodeGraph graph,int width) {
+        List<Node> branches = new ArrayList<>();
+        for(int i=0;i<width;++i) {
+            Node constant = graph.add(new LoadNumber(i));
+            Node add = graph.add(new Add(0,1));
+            Node multiply = graph.add(new Multiply(0,2));
+            graph.add(new NodeConnection(constant,0,add,0));
+            graph.add(new NodeConnection(add,2,multiply,0));
+            branches.add(multiply);
+        }
+        Node sum = graph.add(new LoadNumber(0));
+        for(Node b : branches) {
+            Node add = graph.add(new Add());
+            graph.add(new NodeConnection(sum,sum instanceof LoadNumber ? 0 : 2,add,0));
+            graph.add(new NodeConnection(b,2,add,1));
+            sum = add;
+        }
+        return sum;
+    }
+
+    private double expectedWideGraphSum(int width) {
+        double sum=0;
+        for(int i=0;i<width;++i) sum += (i+1)*2;
+        return sum;
+    }
+
+    /**
+     * confirm {@link ExecutionPlan#getLevels()} never puts a {@link Node} in the same level as something it depends on.
+     */
+    @Test
+    public void testLevelsRespectDependencies() {
+        NodeGraph graph = new NodeGraph();
+        buildWideGraph(graph,10);
+        ExecutionPlan plan = graph.getExecutionPlan();
+        List<List<Node>> levels = plan.getLevels();
+        for(int i=0;i<levels.size();++i) {
+            for(Node n : levels.get(i)) {
+                for(NodeConnection c : plan.getConnectionsInto(n)) {
+                    assertFalse(levels.get(i).contains(c.getInNode()));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testLevelParallelExecutor() {
+        NodeGraph graph = new NodeGraph();
+        graph.setExecutor(new LevelParallelExecutor());
+        Node sum = buildWideGraph(graph,50);
+        graph.update();
+        assertEquals(expectedWideGraphSum(50),sum.getVariable(2).getValue());
+    }
+
+    @Test
+    public void testDataflowExecutor() {
+        NodeGraph graph = new NodeGraph();
+        DataflowExecutor executor = new DataflowExecutor();
+        graph.setExecutor(executor);
+        Node sum = buildWideGraph(graph,50);
+        CountingNode counter = (CountingNode)graph.add(new CountingNode());
+        graph.add(new NodeConnection(sum,2,counter,0));
+        graph.update();
+        assertEquals(expectedWideGraphSum(50),sum.getVariable(2).getValue());
+        assertEquals(1,counter.count);
+        assertTrue(executor.getLastCriticalPathNanos()>0);
+        assertTrue(executor.getLastCriticalPathNanos()<=executor.getLastTickNanos());
+    }
+
+    /**
+     * confirm constant {@link Node}s are found, folded once, and folded again when one of them is edited.
+     */
+    @Test
+    public void testConstantFolding() {
+        NodeGraph graph = new NodeGraph();
+        graph.setExecutor(new LevelParallelExecutor());
+        Node sum = buildWideGraph(graph,10);
+        CountingNode counter = (CountingNode)graph.add(new CountingNode());
+        graph.add(new NodeConnection(sum,2,counter,0));
+
+        ExecutionPlan plan = graph.getExecutionPlan();
+        assertTrue(plan.isConstant(sum));
+        assertFalse(plan.isConstant(counter));
+        assertEquals(List.of(counter),plan.getDynamicOrder());
+        assertTrue(plan.isFoldPending());
+
+        graph.update();
+        assertFalse(plan.isFoldPending());
+        assertEquals(expectedWideGraphSum(10),counter.getVariable(1).getValue());
+
+        graph.update();
+        assertFalse(plan.isFoldPending());
+        assertEquals(1,counter.count);
+
+        graph.getNodes().get(0).getVariable(0).setValue(10);
+        assertTrue(plan.isFoldPending());
+        graph.update();
+        assertFalse(plan.isFoldPending());
+        assertEquals(expectedWideGraphSum(10)+20.0,counter.getVariable(1).getValue());
+        assertEquals(2,counter.count);
+    }
+
+    /**
+     * confirm a compiled graph matches the interpreter, follows changes to its inputs, and still runs
+     * {@link Node}s that have no template.
+     */
+    @Test
+    public void testCompiledExecutor() {
+        NodeGraph graph = new NodeGraph();
+        graph.setExecutor(new CompiledExecutor());
+        Node sum = buildWideGraph(graph,20);
+        CountingNode counter = (CountingNode)graph.add(new CountingNode());
+        graph.add(new NodeConnection(sum,2,counter,0));
+
+        graph.update();
+        assertEquals(expectedWideGraphSum(20),sum.getVariable(2).getValue());
+        assertEquals(expectedWideGraphSum(20),counter.getVariable(1).getValue());
+        assertEquals(1,counter.count);
+
+        graph.update();
+        assertEquals(1,counter.count);
+
+        LoadNumber first = (LoadNumber)graph.getNodes().get(0);
+        first.getVariable(0).setValue(10);
+        graph.update();
+        assertEquals(expectedWideGraphSum(20)+20.0,sum.getVariable(2).getValue());
+        assertEquals(2,counter.count);
+    }
+
+    /**
+     * confirm the first tick of a compiled graph publishes every output, even one that equals the default of its field.
+     */
+    @Test
+    public void testCompiledExecutorPublishesDefaultValues() {
+        NodeGraph graph = new NodeGraph();
+        graph.setExecutor(new CompiledExecutor());
+        Node a = graph.add(new LoadNumber(0));
+        Node b = graph.add(new LoadNumber(0));
+        Node add = graph.add(new Add());
+        graph.add(new NodeConnection(a,0,add,0));
+        graph.add(new NodeConnection(b,0,add,1));
+        add.getVariable(2).setValue(7.0);
+
+        graph.update();
+        assertEquals(0.0,add.getVariable(2).getValue());
+
+        // compiling again must publish again.
+        add.getVariable(2).setValue(7.0);
+        graph.add(new LoadNumber(5));
+        graph.update();
+        assertEquals(0.0,add.getVariable(2).getValue());
+    }
+
+    /**
+     * confirm a comparison outputs an {@link Integer} 1 or 0, whether it is interpreted or compiled.
+     */
+    @Test
+    public void testComparisonOutputsInteger() {
+        for(NodeGraphExecutor executor : new NodeGraphExecutor[]{ new SequentialExecutor(), new CompiledExecutor() }) {
+            NodeGraph graph = new NodeGraph();
+            graph.setExecutor(executor);
+            Node a = graph.add(new LoadNumber(5));
+            Node b = graph.add(new LoadNumber(3));
+            Node compare = graph.add(new GreaterThan());
+            graph.add(new NodeConnection(a,0,compare,0));
+            graph.add(new NodeConnection(b,0,compare,1));
+            graph.update();
+            assertEquals(1,compare.getVariable(2).getValue());
+
+            a.getVariable(0).setValue(1);
+            graph.update();
+            assertEquals(0,compare.getVariable(2).getValue());
+        }
+    }
+
+    /**
+     * confirm the pull executor ignores a branch that feeds no sink.
+     */
+    @Test
+    public void testPullExecutorSkipsUnobservedBranches() {
+        NodeGraph graph = new NodeGraph();
+        PullExecutor executor = new PullExecutor();
+        graph.setExecutor(executor);
+        Node constant = graph.add(new LoadNumber(3));
+        Node add = graph.add(new Add(0,4));
+        Node print = graph.add(new PrintToStdOut());
+        CountingNode abandoned = (CountingNode)graph.add(new CountingNode());
+        graph.add(new NodeConnection(constant,0,add,0));
+        graph.add(new NodeConnection(add,2,print,0));
+        graph.add(new NodeConnection(constant,0,abandoned,0));
+
+        graph.update();
+        assertEquals(7.0,print.getVariable(0).getValue());
+        assertEquals(0,abandoned.count);
+        assertEquals(List.of(constant,add,print),executor.getNeededNodes());
+
+        Node print2 = graph.add(new PrintToStdOut());
+        graph.add(new NodeConnection(abandoned,1,print2,0));
+        graph.update();
+        assertEquals(1,abandoned.count);
+        assertEquals(3,print2.getVariable(0).getValue());
+    }
+
+    /**
+     * confirm a branch that was not needed while its source changed starts from the current value once a sink is
+     * connected to it.
+     */
+    @Test
+    public void testPullExecutorCatchesUpNewlyNeededBranches() {
+        NodeGraph graph = new NodeGraph();
+        graph.setExecutor(new PullExecutor());
+        Node constant = graph.add(new LoadNumber(3));
+        Node print = graph.add(new PrintToStdOut());
+        CountingNode abandoned = (CountingNode)graph.add(new CountingNode());
+        graph.add(new NodeConnection(constant,0,print,0));
+        graph.add(new NodeConnection(constant,0,abandoned,0));
+        graph.update();
+
+        constant.getVariable(0).setValue(10);
+        graph.update();
+        assertEquals(10,print.getVariable(0).getValue());
+
+        Node print2 = graph.add(new PrintToStdOut());
+        graph.add(new NodeConnection(abandoned,1,print2,0));
+        graph.update();
+        assertEquals(10,print2.getVariable(0).getValue());
+    }
+
+    /**
+     * confirm a dirty branch that is not needed does not keep the graph busy.
+     */
+    @Test
+    public void testPullExecutorSettlesWithUnneededBranches() {
+        NodeGraph graph = new NodeGraph();
+        graph.setExecutor(new PullExecutor());
+        Node constant = graph.add(new LoadNumber(3));
+        Node print = graph.add(new PrintToStdOut());
+        CountingNode abandoned = (CountingNode)graph.add(new CountingNode());
+        graph.add(new NodeConnection(constant,0,print,0));
+        graph.add(new NodeConnection(constant,0,abandoned,0));
+
+        graph.update();
+        graph.update();
+        assertTrue(abandoned.isDirty());
+        assertTrue(graph.isQuiescent());
+    }
+
+    /**
+     * confirm a {@link Subgraph} is only a sink when something inside it is.
+     */
+    @Test
+    public void testPullExecutorSubgraphSinks() {
+        NodeGraph quiet = new NodeGraph();
+        quiet.add(new Add());
+        NodeGraph loud = new NodeGraph();
+        loud.add(new PrintToStdOut());
+
+        NodeGraph graph = new NodeGraph();
+        PullExecutor executor = new PullExecutor();
+        graph.setExecutor(executor);
+        Node a = graph.add(new Subgraph(quiet));
+        Node b = graph.add(new Subgraph(loud));
+        Node c = graph.add(a.deepCopy());
+        graph.update();
+        assertEquals(List.of(b),executor.getNeededNodes());
+        assertTrue(((Subgraph)c).isShared());
+    }
+
+    /**
+     * confirm batch evaluation matches row by row evaluation, through both array kernels and the row fallback.
+     */
+    @Test
+    public void testEvaluateBatch() {
+        NodeGraph graph = new NodeGraph();
+        Node x = graph.add(new LoadNumber(0));
+        Node y = graph.add(new LoadNumber(0));
+        Node product = graph.add(new Multiply());
+        Node sum = graph.add(new Add());
+        CountingNode counter = (CountingNode)graph.add(new CountingNode());
+        Node compare = graph.add(new GreaterThan(0,10));
+        graph.add(new NodeConnection(x,0,product,0));
+        graph.add(new NodeConnection(x,0,product,1));
+        graph.add(new NodeConnection(product,2,sum,0));
+        graph.add(new NodeConnection(y,0,sum,1));
+        graph.add(new NodeConnection(sum,2,counter,0));
+        graph.add(new NodeConnection(counter,1,compare,0));
+
+        int rows = 100;
+        double[] xs = new double[rows];
+        double[] ys = new double[rows];
+        for(int i=0;i<rows;++i) {
+            xs[i] = i*0.1;
+            ys[i] = i%3;
+        }
+        Map<Node,Object> inputs = new HashMap<>();
+        inputs.put(x,xs);
+        inputs.put(y,ys);
+        Map<NodeVariable<?>,Object> results = graph.evaluateBatch(inputs);
+
+        double[] sums = (double[])results.get(sum.getVariable(2));
+        double[] compares = (double[])results.get(compare.getVariable(2));
+        double[] counted = (double[])results.get(counter.getVariable(1));
+        assertEquals(rows,counter.count);
+        for(int i=0;i<rows;++i) {
+            double expected = xs[i]*xs[i]+ys[i];
+            assertEquals(expected,sums[i]);
+            assertEquals(expected,counted[i]);
+            assertEquals(expected>10 ? 1.0 : 0.0,compares[i]);
+        }
+
+        inputs.put(y,new double[3]);
+        assertThrows(IllegalArgumentException.class,()->graph.evaluateBatch(inputs));
+    }
+
+    /**
+     * confirm a pipelined chain delivers one result per tick, in tick order, with the inputs each tick started with.
+     */
+    @Test
+    public void testPipelinedExecutor() {
+        NodeGraph graph = new NodeGraph();
+        Node source = graph.add(new LoadNumber(0));
+        Node last = source;
+        for(int i=0;i<3;++i) {
+            Node add = graph.add(new Add(0,1));
+            graph.add(new NodeConnection(last,last==source ? 0 : 2,add,0));
+            last = add;
+        }
+        List<Object> seen = new ArrayList<>();
+        Node recorder = graph.add(new CountingNode() {
+            @Override
+            public void update() {
+                seen.add(getVariable(0).getValue());
+                super.update();
+            }
+        });
+        graph.add(new NodeConnection(last,2,recorder,0));
+
+        try(PipelinedExecutor executor = new PipelinedExecutor(4)) {
+            graph.setExecutor(executor);
+            for(int i=0;i<50;++i) {
+                source.getVariable(0).setValue(i);
+                graph.update();
+            }
+            executor.flush();
+            assertEquals(4,executor.getStageCount());
+            assertEquals(50,executor.getCompletedTicks());
+        }
+        assertEquals(50,seen.size());
+        for(int i=0;i<50;++i) assertEquals(i+3.0,seen.get(i));
+    }
+
+    /**
+     * confirm the pipelined executor carries values over delay connections, both a node fed back into itself and a
+     * loop of two nodes, the same as the {@link SequentialExecutor}.
+     */
+    @Test
+    public void testPipelinedExecutorDelays() {
+        for(NodeGraphExecutor executor : new NodeGraphExecutor[]{ new SequentialExecutor(), new PipelinedExecutor(4) }) {
+            NodeGraph graph = new NodeGraph();
+            graph.setExecutor(executor);
+            Node one = graph.add(new LoadNumber(1));
+            Node accumulator = graph.add(new Add());
+            graph.add(new NodeConnection(one,0,accumulator,0));
+            graph.add(new NodeConnection(accumulator,2,accumulator,1,true));
+
+            Node first = graph.add(new Add());
+            Node second = graph.add(new Add(0,1));
+            graph.add(new NodeConnection(one,0,first,0));
+            graph.add(new NodeConnection(first,2,second,0));
+            graph.add(new NodeConnection(second,2,first,1,true));
+
+            for(int i=0;i<5;++i) graph.update();
+            executor.flush();
+            assertEquals(5.0,accumulator.getVariable(2).getValue(),executor.getClass().getSimpleName());
+            assertEquals(10.0,second.getVariable(2).getValue(),executor.getClass().getSimpleName());
+            if(executor instanceof PipelinedExecutor) ((PipelinedExecutor)executor).close();
+        }
+    }
+
+    /**
+     * confirm an edit waits for every pipelined tick that is still running, and that discarding the plan while they
+     * run does not leave a tick waiting on the editor.
+     */
+    @Test
+    public void testPipelinedExecutorEditWaitsForTicks() {
+        NodeGraph graph = new NodeGraph();
+        Node source = graph.add(new LoadNumber(0));
+        Node last = source;
+        for(int i=0;i<3;++i) {
+            Node sleeper = graph.add(new CountingNode() {
+                @Override
+                public void update() {
+                    try {
+                        Thread.sleep(2);
+                    } catch(InterruptedException ignored) {}
+                    super.update();
+                }
+            });
+            graph.add(new NodeConnection(last,last==source ? 0 : 1,sleeper,0));
+            last = sleeper;
+        }
+
+        try(PipelinedExecutor executor = new PipelinedExecutor(3)) {
+            graph.setExecutor(executor);
+            for(int i=0;i<10;++i) {
+                source.getVariable(0).setValue(i);
+                graph.update();
+            }
+            assertTimeoutPreemptively(Duration.ofSeconds(10),()->{
+                graph.invalidateExecutionPlan();
+                graph.add(new LoadNumber(0));
+            });
+            assertEquals(10,executor.getCompletedTicks());
+            assertEquals(9,last.getVariable(1).getValue());
+        }
+    }
+
+    /**
+     * confirm the default executor only visits the part of the graph downstream of a change.
+     */
+    @Test
+    public void testWorklistOnlyVisitsChangedSubgraph() {
+        NodeGraph graph = new NodeGraph();
+        LoadNumber constantA = (LoadNumber)graph.add(new LoadNumber(1));
+        LoadNumber constantB = (LoadNumber)graph.add(new LoadNumber(2));
+        CountingNode countA = (CountingNode)graph.add(new CountingNode());
+        CountingNode countB = (CountingNode)graph.add(new CountingNode());
+        graph.add(new NodeConnection(constantA,0,countA,0));
+        graph.add(new NodeConnection(constantB,0,countB,0));
+
+        graph.update();
+        assertEquals(1,countA.count);
+        assertEquals(1,countB.count);
+        assertTrue(graph.isQuiescent());
+
+        graph.update();
+        assertEquals(1,countA.count);
+        assertEquals(1,countB.count);
+
+        constantA.getVariable(0).setValue(5);
+        assertFalse(graph.isQuiescent());
+        graph.update();
+        assertEquals(2,countA.count);
+        assertEquals(1,countB.count);
+        assertEquals(5,countA.getVariable(1).getValue());
+        assertTrue(graph.isQuiescent());
+    }
+
+    /**
+     * confirm an {@link AsyncNode} does not hold up the rest of the graph and its result reaches downstream
+     * {@link Node}s on the tick after it arrives.
+     */
+    @Test
+    public void testAsyncNode() {
+        Queue<Runnable> ioPool = new ArrayDeque<>();
+        NodeGraph graph = new NodeGraph();
+        graph.setIOPool(ioPool::add);
+        LoadNumber slowInput = (LoadNumber)graph.add(new LoadNumber(3));
+        Node slow = graph.add(new SlowDoubler());
+        CountingNode afterSlow = (CountingNode)graph.add(new CountingNode());
+        LoadNumber fastInput = (LoadNumber)graph.add(new LoadNumber(1));
+        CountingNode fast = (CountingNode)graph.add(new CountingNode());
+        graph.add(new NodeConnection(slowInput,0,slow,0));
+        graph.add(new NodeConnection(slow,1,afterSlow,0));
+        graph.add(new NodeConnection(fastInput,0,fast,0));
+
+        graph.update();
+        assertEquals(1,ioPool.size());
+        assertEquals(1,graph.getPendingAsyncCount());
+        assertFalse(graph.isQuiescent());
+        assertEquals(1,fast.getVariable(1).getValue());
+
+        // the slow work has not finished but the rest of the graph keeps going.
+        fastInput.getVariable(0).setValue(2);
+        graph.update();
+        assertEquals(2,fast.getVariable(1).getValue());
+        assertEquals(0,afterSlow.getVariable(1).getValue());
+
+        ioPool.poll().run();
+        graph.update();
+        assertEquals(6.0,afterSlow.getVariable(1).getValue());
+        assertEquals(0,graph.getPendingAsyncCount());
+        assertTrue(graph.isQuiescent());
+    }
+
+    /**
+     * confirm {@link CriticalPathExecutor} gets the same answer and learns to start the slow branch first.
+     */
+    @Test
+    public void testCriticalPathExecutor() {
+        NodeGraph graph = new NodeGraph();
+        Node last = buildWideGraph(graph,20);
+        try(CriticalPathExecutor executor = new CriticalPathExecutor()) {
+            graph.setExecutor(executor);
+            graph.update();
+            assertEquals(expectedWideGraphSum(20),last.getVariable(2).getValue());
+        }
+
+        List<Node> log = new ArrayList<>();
+        NodeGraph timed = new NodeGraph();
+        Node fast = timed.add(new SleepingNode(log,0));
+        Node slow = timed.add(new SleepingNode(log,20));
+        try(CriticalPathExecutor executor = new CriticalPathExecutor(1,0.5)) {
+            timed.setExecutor(executor);
+            timed.update();
+            assertEquals(List.of(fast,slow),log);
+            assertTrue(executor.getEstimatedNanos(slow)>executor.getEstimatedNanos(fast));
+
+            log.clear();
+            fast.getVariable(0).setValue(1);
+            slow.getVariable(0).setValue(1);
+            timed.update();
+            assertEquals(List.of(slow,fast),log);
+            assertTrue(executor.getLastCriticalPathNanos()>=20_000_000L*0.5);
+        }
+    }
+
+    /**
+     * Copies its input to its output, but throws while the input is negative.
+     */
+    private static class FailsIfNegative extends Node {
+        private final NodeVariable<Number> a = NodeVariable.newInstance("A",Number.class,0,true,false);
+        private final NodeVariable<Number> b = NodeVariable.newInstance("output",Number.class,0,false,true);
+        int attempts = 0;
+
+        public FailsIfNegative() {
+            super("FailsIfNegative");
+            addVariable(a);
+            addVariable(b);
+        }
+
+        @Override
+        public Node create() {
+            return new FailsIfNegative();
+        }
+
+        @Override
+        public void update() {
+            attempts++;
+            if(a.getValue().doubleValue()<0) throw new IllegalStateException("negative");
+            b.setValue(a.getValue());
+            cleanAllInputs();
+        }
+    }
+
+    /**
+     * confirm a failing {@link Node} does not stop the graph, is quarantined after too many failures in a row, and is
+     * tried again when its input changes.
+     */
+    @Test
+    public void testFailureBackoffAndQuarantine() {
+        NodeGraph graph = new NodeGraph();
+        graph.setFailureBackoff(0,0,3);
+        Node source = graph.add(new LoadNumber(-1));
+        FailsIfNegative node = (FailsIfNegative)graph.add(new FailsIfNegative());
+        graph.add(new NodeConnection(source,0,node,0));
+
+        graph.update();
+        assertEquals(1,node.attempts);
+        assertEquals(List.of(node),graph.getFailedNodes());
+        assertEquals(1,node.getFailure().getCount());
+        assertTrue(node.getFailure().getException() instanceof IllegalStateException);
+        assertFalse(node.getFailure().isQuarantined());
+
+        graph.update();
+        graph.update();
+        assertEquals(3,node.attempts);
+        assertTrue(node.getFailure().isQuarantined());
+        // quarantined nodes are not tried again and do not keep the graph busy.
+        assertTrue(graph.isQuiescent());
+        graph.update();
+        assertEquals(3,node.attempts);
+
+        // a new input value gets one more try.
+        source.getVariable(0).setValue(-2);
+        graph.update();
+        assertEquals(4,node.attempts);
+        assertTrue(node.getFailure().isQuarantined());
+
+        source.getVariable(0).setValue(5);
+        graph.update();
+        assertEquals(5,node.attempts);
+        assertNull(node.getFailure());
+        assertTrue(graph.getFailedNodes().isEmpty());
+        assertEquals(5.0,((Number)node.getVariable(1).getValue()).doubleValue());
+    }
+
+    /**
+     * confirm a failed {@link Node} is not tried again until its delay has passed or the failure is cleared.
+     */
+    @Test
+    public void testFailureBackoffWaits() {
+        NodeGraph graph = new NodeGraph();
+        graph.setFailureBackoff(3_600_000,3_600_000,10);
+        FailsIfNegative node = (FailsIfNegative)graph.add(new FailsIfNegative());
+        node.getVariable(0).setValue(-1);
+
+        graph.update();
+        graph.update();
+        graph.update();
+        assertEquals(1,node.attempts);
+        assertTrue(node.isBackingOff());
+        assertFalse(graph.isQuiescent());
+
+        graph.clearFailures();
+        graph.update();
+        assertEquals(2,node.attempts);
+        assertEquals(1,node.getFailure().getCount());
+
+        assertThrows(IllegalArgumentException.class,()->graph.setFailureBackoff(10,5,1));
+        assertThrows(IllegalArgumentException.class,()->graph.setFailureBackoff(0,0,0));
+    }
+}